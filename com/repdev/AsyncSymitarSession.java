@@ -0,0 +1,270 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Runs SymitarSession calls off the UI thread, so a slow host doesn't freeze the whole IDE.
+ *
+ * Each sym gets its own I/O thread (local files share one more), and calls for a sym run in the order
+ * they were made, so a save followed by an install or an error check always sees the saved file.
+ *
+ * Every method returns a Future for code that wants to wait, and takes an optional Callback
+ * that is run on the UI thread with the result once the call is done.
+ * A call that throws completes with null, same as the session methods do on errors.
+ *
+ */
+public class AsyncSymitarSession {
+	private static final int LOCAL = -1;
+	private static final HashMap<Integer, AsyncSymitarSession> sessions = new HashMap<Integer, AsyncSymitarSession>();
+
+	private final int sym;
+	private final ExecutorService executor;
+
+	/**
+	 * Gets the result of an async call on the UI thread
+	 */
+	public interface Callback<T> {
+		void done(T result);
+	}
+
+	private AsyncSymitarSession(final int sym) {
+		this.sym = sym;
+
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory(){
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, sym == LOCAL ? "Local I/O" : "Sym " + sym + " I/O");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public static AsyncSymitarSession forSym(int sym) {
+		synchronized (sessions) {
+			AsyncSymitarSession session = sessions.get(sym);
+
+			if( session == null ) {
+				session = new AsyncSymitarSession(sym);
+				sessions.put(sym, session);
+			}
+
+			return session;
+		}
+	}
+
+	/**
+	 * @return Queue for the sym this file is on, or the local disk queue
+	 */
+	public static AsyncSymitarSession forFile(SymitarFile file) {
+		return forSym(file.isLocal() ? LOCAL : file.getSym());
+	}
+
+	private SymitarSession getSession() {
+		return RepDevMain.SYMITAR_SESSIONS.get(sym);
+	}
+
+	private <T> Future<T> submit(final Callable<T> call, final Callback<T> callback) {
+		final Display display = Display.getCurrent() != null ? Display.getCurrent() : Display.getDefault();
+
+		return executor.submit(new Callable<T>(){
+			public T call() {
+				T result = null;
+
+				try {
+					result = call.call();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+
+				if( callback != null && !display.isDisposed() ) {
+					final T done = result;
+
+					display.asyncExec(new Runnable(){
+						public void run() {
+							callback.done(done);
+						}
+					});
+				}
+
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * Contents of the file, through the file content cache for remote files, null on errors
+	 */
+	public Future<String> getFile(final SymitarFile file, Callback<String> callback) {
+		return submit(new Callable<String>(){
+			public String call() {
+				return file.getData();
+			}
+		}, callback);
+	}
+
+	/**
+	 * Same as SymitarFile.saveFile, but errors are only returned, not shown, since we aren't on the UI thread
+	 */
+	public Future<SessionError> saveFile(final SymitarFile file, final String text, Callback<SessionError> callback) {
+		return submit(new Callable<SessionError>(){
+			public SessionError call() {
+				return save(file, text);
+			}
+		}, callback);
+	}
+
+	private static SessionError save(SymitarFile file, String text) {
+		if( file.isLocal() )
+			return file.saveFile(text);
+
+		return RepDevMain.SYMITAR_SESSIONS.get(file.getSym()).saveFile(file, file.fixData(text));
+	}
+
+	/**
+	 * Reads source and saves it as destination, both can be local or on any sym.
+	 * Use the destination's queue, it's the one being changed.
+	 */
+	public Future<SessionError> copyFile(final SymitarFile source, final SymitarFile destination, Callback<SessionError> callback) {
+		return submit(new Callable<SessionError>(){
+			public SessionError call() {
+				String data = source.getData();
+
+				if( data == null )
+					return SessionError.IO_ERROR;
+
+				return save(destination, data);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Copies sources.get(i) to destinations.get(i) for every i. Remote sources are pulled down in one batch per sym
+	 * instead of a round trip each. Use the destinations' queue.
+	 *
+	 * @return Destinations that were saved, errors are printed and left out
+	 */
+	public Future<ArrayList<SymitarFile>> copyFiles(final List<SymitarFile> sources, final List<SymitarFile> destinations, Callback<ArrayList<SymitarFile>> callback) {
+		return submit(new Callable<ArrayList<SymitarFile>>(){
+			public ArrayList<SymitarFile> call() {
+				HashMap<Integer, ArrayList<SymitarFile>> remote = new HashMap<Integer, ArrayList<SymitarFile>>();
+				HashMap<SymitarFile, String> data = new HashMap<SymitarFile, String>();
+				ArrayList<SymitarFile> copied = new ArrayList<SymitarFile>();
+
+				for( SymitarFile source : sources )
+					if( !source.isLocal() ) {
+						if( remote.get(source.getSym()) == null )
+							remote.put(source.getSym(), new ArrayList<SymitarFile>());
+
+						remote.get(source.getSym()).add(source);
+					}
+
+				for( int sourceSym : remote.keySet() ) {
+					SymitarSession session = RepDevMain.SYMITAR_SESSIONS.get(sourceSym);
+
+					if( session != null && session.isConnected() )
+						data.putAll(session.getFiles(remote.get(sourceSym)));
+				}
+
+				for( int i = 0; i < sources.size(); i++ ) {
+					SymitarFile source = sources.get(i), destination = destinations.get(i);
+					String text = data.containsKey(source) ? data.get(source) : source.getData();
+					SessionError error = text == null ? SessionError.IO_ERROR : save(destination, text);
+
+					if( error == SessionError.NONE )
+						copied.add(destination);
+					else
+						System.out.println("Copying " + source.getName() + " to " + destination.getName() + " failed: " + error);
+				}
+
+				return copied;
+			}
+		}, callback);
+	}
+
+	/**
+	 * @return The files that are already there, local or on their sym
+	 */
+	public Future<HashSet<SymitarFile>> findExisting(final Collection<SymitarFile> files, Callback<HashSet<SymitarFile>> callback) {
+		return submit(new Callable<HashSet<SymitarFile>>(){
+			public HashSet<SymitarFile> call() {
+				HashSet<SymitarFile> existing = new HashSet<SymitarFile>();
+
+				for( SymitarFile file : files )
+					if( Util.fileExists(file) )
+						existing.add(file);
+
+				return existing;
+			}
+		}, callback);
+	}
+
+	public Future<ArrayList<SymitarFile>> getFileList(final FileType type, final String search, Callback<ArrayList<SymitarFile>> callback) {
+		return submit(new Callable<ArrayList<SymitarFile>>(){
+			public ArrayList<SymitarFile> call() {
+				return getSession().getFileList(type, search);
+			}
+		}, callback);
+	}
+
+	public Future<ErrorCheckResult> errorCheckRepGen(final String filename, Callback<ErrorCheckResult> callback) {
+		return submit(new Callable<ErrorCheckResult>(){
+			public ErrorCheckResult call() {
+				return getSession().errorCheckRepGen(filename);
+			}
+		}, callback);
+	}
+
+	public Future<ErrorCheckResult> installRepgen(final String filename, Callback<ErrorCheckResult> callback) {
+		return submit(new Callable<ErrorCheckResult>(){
+			public ErrorCheckResult call() {
+				return getSession().installRepgen(filename);
+			}
+		}, callback);
+	}
+
+	public Future<ArrayList<PrintItem>> getPrintItems(final String query, final int limit, Callback<ArrayList<PrintItem>> callback) {
+		return submit(new Callable<ArrayList<PrintItem>>(){
+			public ArrayList<PrintItem> call() {
+				return getSession().getPrintItems(query, limit);
+			}
+		}, callback);
+	}
+
+	public Future<ArrayList<PrintItem>> getPrintItems(final Sequence seq, Callback<ArrayList<PrintItem>> callback) {
+		return submit(new Callable<ArrayList<PrintItem>>(){
+			public ArrayList<PrintItem> call() {
+				return getSession().getPrintItems(seq);
+			}
+		}, callback);
+	}
+}
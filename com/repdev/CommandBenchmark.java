@@ -0,0 +1,252 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.repdev.DirectSymitarSession.Command;
+
+/**
+ * Frames/sec for DirectSymitarSession's Command codec, on the frames in a recorded transcript (see SymitarTranscript).
+ *
+ * Everything the host sent is cut into frames up front and then parsed over and over, and every command we sent is
+ * rebuilt and encoded over and over, so only the codec is timed, not the socket or the frame reader.
+ * The old regex/split parser and String concatenation encoder are run on the same frames for comparison.
+ *
+ * Usage: CommandBenchmark transcript.rdt [seconds per run, default 5]
+ *
+ * To get a transcript, start RepDev with -Drepdev.transcripts=dir and use a sym (MockSymitarHost works too).
+ *
+ */
+public class CommandBenchmark {
+	private static final Pattern commandPattern = Pattern.compile("(.*?)~.*");
+
+	//Keeps the JIT from throwing the work away
+	private static volatile long sink;
+
+	public static void main(String[] args) throws IOException {
+		if( args.length < 1 ) {
+			System.out.println("Usage: CommandBenchmark transcript.rdt [seconds]");
+			return;
+		}
+
+		long millis = (args.length > 1 ? Integer.parseInt(args[1]) : 5) * 1000L;
+		ArrayList<SymitarTranscript.Record> records = SymitarTranscript.load(new File(args[0]));
+
+		final String[] inbound = inboundFrames(records);
+		final String[] outbound = outboundFrames(records);
+		final ArrayList<Command> commands = new ArrayList<Command>();
+
+		for( String frame : outbound ) {
+			Command cmd = Command.parse(frame);
+			HashMap<String, String> params = new HashMap<String, String>(cmd.getParameters());
+
+			params.remove("MsgId");
+			commands.add(new Command(cmd.getCommand(), params, ""));
+		}
+
+		System.out.println(inbound.length + " frames from the host, " + commands.size() + " sent, " + (millis / 1000) + "s per run");
+
+		//Both encoders write into this, like they did into the socket's PrintWriter
+		final Writer discard = new Writer(){
+			public void write(char[] cbuf, int off, int len) {
+			}
+
+			public void write(String str) {
+			}
+
+			public void write(String str, int off, int len) {
+			}
+
+			public void write(int c) {
+			}
+
+			public void flush() {
+			}
+
+			public void close() {
+			}
+		};
+
+		report("parse", inbound.length, millis, new Runnable(){
+			public void run() {
+				for( String frame : inbound )
+					sink += Command.parse(frame).getCommand().length();
+			}
+		});
+
+		report("parse + parameters", inbound.length, millis, new Runnable(){
+			public void run() {
+				for( String frame : inbound )
+					sink += Command.parse(frame).getParameters().size();
+			}
+		});
+
+		report("old parse (regex/split)", inbound.length, millis, new Runnable(){
+			public void run() {
+				for( String frame : inbound )
+					sink += oldParse(frame).size();
+			}
+		});
+
+		report("encode", commands.size(), millis, new Runnable(){
+			public void run() {
+				try {
+					for( Command cmd : commands )
+						cmd.writeTo(discard);
+				} catch (IOException e) {
+					//Can't happen, discard never throws
+				}
+			}
+		});
+
+		report("old encode (concatenation)", commands.size(), millis, new Runnable(){
+			public void run() {
+				try {
+					for( Command cmd : commands )
+						discard.write(oldSendStr(cmd.getCommand(), cmd.getParameters()));
+				} catch (IOException e) {
+					//Can't happen, discard never throws
+				}
+			}
+		});
+	}
+
+	/**
+	 * Runs round for millis to warm up, then for millis again timed, and prints frames/sec
+	 */
+	private static void report(String name, int frames, long millis, Runnable round) {
+		if( frames == 0 ) {
+			System.out.println(name + ": no frames");
+			return;
+		}
+
+		long end = System.currentTimeMillis() + millis;
+
+		while( System.currentTimeMillis() < end )
+			round.run();
+
+		long rounds = 0, start = System.nanoTime(), elapsed;
+
+		do {
+			round.run();
+			rounds++;
+			elapsed = System.nanoTime() - start;
+		} while( elapsed < millis * 1000000L );
+
+		System.out.println(name + ": " + Math.round(rounds * frames / (elapsed / 1e9)) + " frames/sec");
+	}
+
+	private static String[] inboundFrames(ArrayList<SymitarTranscript.Record> records) throws IOException {
+		ArrayList<String> frames = new ArrayList<String>();
+		SymitarFrameReader reader = new SymitarFrameReader(new StringReader(text(records, SymitarTranscript.IN)));
+
+		try {
+			while( true )
+				frames.add(reader.readFrame());
+		} catch (IOException e) {
+			//End of the transcript
+		}
+
+		return frames.toArray(new String[frames.size()]);
+	}
+
+	/**
+	 * @return Bodies of the 0x07 LENGTH \r BODY commands we sent, leaving out the plain text login and PROT parts
+	 */
+	private static String[] outboundFrames(ArrayList<SymitarTranscript.Record> records) throws IOException {
+		ArrayList<String> frames = new ArrayList<String>();
+		String text = text(records, SymitarTranscript.OUT);
+		int pos = 0;
+
+		while( (pos = text.indexOf(0x07, pos)) != -1 ) {
+			int cr = text.indexOf('\r', pos);
+
+			try {
+				int length = Integer.parseInt(text.substring(pos + 1, cr));
+
+				frames.add(text.substring(cr + 1, cr + 1 + length));
+				pos = cr + 1 + length;
+			} catch (RuntimeException e) {
+				//Just a stray 0x07
+				pos++;
+			}
+		}
+
+		return frames.toArray(new String[frames.size()]);
+	}
+
+	private static String text(ArrayList<SymitarTranscript.Record> records, byte direction) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		for( SymitarTranscript.Record record : records )
+			if( record.direction == direction )
+				bytes.write(record.data);
+
+		return bytes.toString("ISO-8859-1");
+	}
+
+	/**
+	 * Command.parse as it was before the lazy parser, eager parameters
+	 */
+	private static HashMap<String, String> oldParse(String data) {
+		HashMap<String, String> parameters = new HashMap<String, String>();
+
+		if (data.indexOf("~") != -1 && data.indexOf(253) == -1) {
+			Matcher match = commandPattern.matcher(data);
+			match.matches();
+
+			for (String cur : data.substring(match.group(1).length() + 1).split("~")) {
+				if (cur.indexOf("=") == -1)
+					parameters.put(cur, "");
+				else
+					parameters.put(cur.substring(0, cur.indexOf("=")), cur.substring(cur.indexOf("=") + 1));
+			}
+		}
+
+		return parameters;
+	}
+
+	/**
+	 * Command.sendStr as it was before writeTo
+	 */
+	private static String oldSendStr(String command, HashMap<String, String> parameters) {
+		String data = "";
+		data += command + "~";
+
+		for (String key : parameters.keySet())
+			if (parameters.get(key).equals(""))
+				data += key + "~";
+			else
+				data += key + "=" + parameters.get(key) + "~";
+
+		data = data.substring(0, data.length() - 1);
+
+		return Character.toString((char) 0x07) + data.length() + "\r" + data;
+	}
+}
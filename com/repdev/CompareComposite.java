@@ -23,6 +23,7 @@ import java.util.*;
 
 import org.eclipse.swt.*;
 import org.eclipse.swt.custom.*;
+import org.eclipse.swt.events.*;
 import org.eclipse.swt.graphics.*;
 import org.eclipse.swt.widgets.*;
 import org.swtcompare.*;
@@ -47,6 +48,16 @@ public class CompareComposite extends BasicCompareComposite implements TabView {
 		this.leftFile = leftFile;
 		this.rightFile = rightFile;
 		
+		//Let go of the shared include cache entries the parsers picked up
+		addDisposeListener(new DisposeListener(){
+			public void widgetDisposed(DisposeEvent e) {
+				if( leftParser != null )
+					leftParser.cleanupTokenCache();
+				if( rightParser != null )
+					rightParser.cleanupTokenCache();
+			}
+		});
+		
 		//Setup custom stuff on the styled texts for our application
 		String sData = leftFile.getData();
 		
@@ -35,6 +35,11 @@ public class Config implements Serializable {
 	private ArrayList<Integer> syms = new ArrayList<Integer>();
 	private String server = "127.0.0.1";
 	private int port = 23;
+	private int sessionPoolSize = 1;
+	private int saveWindow = 1;
+	private int retrieveWindow = 1;
+	private int fileCacheSize = 50; // MB
+	private int includeCacheSize = 32; // MB
 	private int tabSize = 0; // 0 = Regular tab
 	private String lastUsername = "", lastPassword = "", lastUserID;
 	private boolean runOptionsAskForPrompts = true;
@@ -49,7 +54,7 @@ public class Config implements Serializable {
 	 * different, then a popup will notify the user and will launch the OptionsShell so that
 	 * the users can config the new options.
 	 */
-	public final static int REVISION = 3; // Modify this everytime we add new options to prompt the user.
+	public final static int REVISION = 4; // Modify this everytime we add new options to prompt the user.
 	private int revision=-1;
 	private boolean windowMaximized;
 	private Point windowSize;
@@ -129,6 +134,21 @@ public class Config implements Serializable {
 		
 		if( me.port == 0 )
 			me.port = 23; // default to 23 if 0 or unset.
+		
+		if( me.sessionPoolSize < 1 )
+			me.sessionPoolSize = 1; // older config files, one connection per sym
+		
+		if( me.saveWindow < 1 )
+			me.saveWindow = 1;
+		
+		if( me.retrieveWindow < 1 )
+			me.retrieveWindow = 1; // older config files, one retrieve at a time
+		
+		if( me.fileCacheSize < 1 )
+			me.fileCacheSize = 50;
+		
+		if( me.includeCacheSize < 1 )
+			me.includeCacheSize = 32;
 	}
 
 	public static void setServer(String server) {
@@ -217,6 +237,87 @@ public class Config implements Serializable {
 		me.port = p;
 	}
 	
+	/**
+	 * Returns how many connections to open to each sym, 1 means a single DirectSymitarSession
+	 * @return size
+	 */
+	public static int getSessionPoolSize() {
+		return me.sessionPoolSize;
+	}
+	
+	/**
+	 * Set how many connections to open to each sym. Takes effect the next time a sym is logged in.
+	 * @param size
+	 */
+	public static void setSessionPoolSize(int size) {
+		me.sessionPoolSize = Math.max(1, size);
+	}
+	
+	/**
+	 * Returns how many 4k parts of a file being saved can be sent before waiting for the host to ack them
+	 * @return window
+	 */
+	public static int getSaveWindow() {
+		return me.saveWindow;
+	}
+	
+	/**
+	 * Set how many parts of a file being saved can be sent before waiting on acks, 1 waits on every part.
+	 * Only turn this up on hosts saves have been checked against.
+	 * @param window
+	 */
+	public static void setSaveWindow(int window) {
+		me.saveWindow = Math.max(1, window);
+	}
+	
+	/**
+	 * Returns how many File Retrieves can be sent at once on one connection, 1 waits for each file before asking for the next
+	 * @return window
+	 */
+	public static int getRetrieveWindow() {
+		return me.retrieveWindow;
+	}
+	
+	/**
+	 * Set how many File Retrieves can be sent at once. Only turn this up if the host handles overlapping commands.
+	 * @param window
+	 */
+	public static void setRetrieveWindow(int window) {
+		me.retrieveWindow = Math.max(1, window);
+	}
+	
+	/**
+	 * Returns the most space, in MB, the local copies of remote files can take up
+	 * @return size
+	 */
+	public static int getFileCacheSize() {
+		return me.fileCacheSize;
+	}
+	
+	/**
+	 * Set the most space, in MB, the local copies of remote files can take up
+	 * @param size
+	 */
+	public static void setFileCacheSize(int size) {
+		me.fileCacheSize = Math.max(1, size);
+	}
+	
+	/**
+	 * Returns the most memory, in MB, parsed include files nobody has open can take up
+	 * @return size
+	 */
+	public static int getIncludeCacheSize() {
+		return me.includeCacheSize;
+	}
+	
+	/**
+	 * Set the most memory, in MB, parsed include files nobody has open can take up
+	 * @param size
+	 */
+	public static void setIncludeCacheSize(int size) {
+		me.includeCacheSize = Math.max(1, size);
+	}
+	
 	public static String getStyle() {
 	    return me.style;
 	}
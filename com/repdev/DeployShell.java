@@ -0,0 +1,299 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.FormAttachment;
+import org.eclipse.swt.layout.FormData;
+import org.eclipse.swt.layout.FormLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.TableItem;
+
+/**
+ * Saves and installs one repgen on several syms at once, for promoting a finished repgen everywhere it runs.
+ *
+ * Every logged in sym is listed, check the ones to deploy to. Syms are done in parallel (up to MAX_PARALLEL at a time),
+ * each through its own AsyncSymitarSession queue, so the whole thing takes about as long as the slowest sym.
+ * Results for each sym end up in the same table.
+ *
+ */
+public class DeployShell {
+	private static final int MAX_PARALLEL = 10;
+
+	private final SymitarFile source;
+	private Shell shell;
+	private Table table;
+	private Label status;
+	private Button deployButton;
+
+	private int remaining, failed;
+	private long started;
+
+	private DeployShell(SymitarFile source) {
+		this.source = source;
+	}
+
+	private void create(Shell parent) {
+		shell = new Shell(parent, SWT.SHELL_TRIM);
+		shell.setText("Deploy " + source.getName());
+
+		FormLayout layout = new FormLayout();
+		layout.marginTop = 5;
+		layout.marginBottom = 5;
+		layout.marginLeft = 5;
+		layout.marginRight = 5;
+		layout.spacing = 5;
+		shell.setLayout(layout);
+
+		Label info = new Label(shell, SWT.NONE);
+		info.setText("Save and install " + source.getName() + " from " + (source.isLocal() ? source.getDir() : "Sym " + source.getSym()) + " on the checked syms:");
+
+		table = new Table(shell, SWT.BORDER | SWT.CHECK | SWT.FULL_SELECTION);
+		table.setHeaderVisible(true);
+		table.setLinesVisible(true);
+
+		TableColumn symCol = new TableColumn(table, SWT.NONE);
+		symCol.setText("Sym");
+		symCol.setWidth(60);
+
+		TableColumn statusCol = new TableColumn(table, SWT.NONE);
+		statusCol.setText("Status");
+		statusCol.setWidth(110);
+
+		TableColumn timeCol = new TableColumn(table, SWT.NONE);
+		timeCol.setText("Time");
+		timeCol.setWidth(60);
+
+		TableColumn resultCol = new TableColumn(table, SWT.NONE);
+		resultCol.setText("Result");
+		resultCol.setWidth(380);
+
+		for( int sym : Config.getSyms() ) {
+			SymitarSession session = RepDevMain.SYMITAR_SESSIONS.get(sym);
+
+			if( session == null || !session.isConnected() )
+				continue;
+
+			TableItem item = new TableItem(table, SWT.NONE);
+			item.setText(0, "" + sym);
+			item.setData(sym);
+			item.setChecked(source.isLocal() || sym != source.getSym());
+		}
+
+		status = new Label(shell, SWT.NONE);
+		status.setText(table.getItemCount() + " syms logged in");
+
+		deployButton = new Button(shell, SWT.PUSH);
+		deployButton.setText("&Deploy");
+		deployButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				deploy();
+			}
+		});
+
+		Button closeButton = new Button(shell, SWT.PUSH);
+		closeButton.setText("&Close");
+		closeButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				shell.close();
+			}
+		});
+
+		FormData data = new FormData();
+		data.left = new FormAttachment(0);
+		data.right = new FormAttachment(100);
+		data.top = new FormAttachment(0);
+		info.setLayoutData(data);
+
+		data = new FormData();
+		data.left = new FormAttachment(0);
+		data.right = new FormAttachment(100);
+		data.top = new FormAttachment(info);
+		data.bottom = new FormAttachment(closeButton);
+		data.height = 250;
+		table.setLayoutData(data);
+
+		data = new FormData();
+		data.right = new FormAttachment(100);
+		data.bottom = new FormAttachment(100);
+		closeButton.setLayoutData(data);
+
+		data = new FormData();
+		data.right = new FormAttachment(closeButton);
+		data.bottom = new FormAttachment(100);
+		deployButton.setLayoutData(data);
+
+		data = new FormData();
+		data.left = new FormAttachment(0);
+		data.right = new FormAttachment(deployButton);
+		data.top = new FormAttachment(deployButton, 0, SWT.CENTER);
+		status.setLayoutData(data);
+
+		shell.setDefaultButton(deployButton);
+		shell.pack();
+		shell.open();
+	}
+
+	private void deploy() {
+		final ArrayList<TableItem> targets = new ArrayList<TableItem>();
+
+		for( TableItem item : table.getItems() ) {
+			if( item.getChecked() ) {
+				targets.add(item);
+				item.setText(1, "Waiting");
+				item.setText(2, "");
+				item.setText(3, "");
+			}
+		}
+
+		if( targets.isEmpty() )
+			return;
+
+		deployButton.setEnabled(false);
+		status.setText("Reading " + source.getName() + "...");
+
+		//Read it once, every sym gets the same text
+		AsyncSymitarSession.forFile(source).getFile(source, new AsyncSymitarSession.Callback<String>(){
+			public void done(String data) {
+				if( shell.isDisposed() )
+					return;
+
+				if( data == null ) {
+					status.setText("Could not read " + source.getName());
+					deployButton.setEnabled(true);
+					return;
+				}
+
+				start(targets, data);
+			}
+		});
+	}
+
+	private void start(ArrayList<TableItem> targets, final String data) {
+		final Display display = shell.getDisplay();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_PARALLEL, targets.size()), new ThreadFactory(){
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Deploy " + source.getName());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		remaining = targets.size();
+		failed = 0;
+		started = System.currentTimeMillis();
+		status.setText("Deploying to " + remaining + " syms...");
+
+		for( final TableItem item : targets ) {
+			final int sym = (Integer) item.getData();
+
+			executor.execute(new Runnable(){
+				public void run() {
+					long start = System.currentTimeMillis();
+					AsyncSymitarSession session = AsyncSymitarSession.forSym(sym);
+					String result;
+					boolean ok = false;
+
+					update(display, item, "Saving", null, -1);
+
+					try {
+						SessionError error = SessionError.NONE;
+
+						//Same file, nothing to upload
+						if( source.isLocal() || source.getSym() != sym )
+							error = session.saveFile(new SymitarFile(sym, source.getName(), FileType.REPGEN), data, null).get();
+
+						if( error != SessionError.NONE ) {
+							result = "Save failed: " + error;
+						}
+						else {
+							update(display, item, "Installing", null, -1);
+
+							ErrorCheckResult install = session.installRepgen(source.getName(), null).get();
+
+							if( install == null )
+								result = "Install failed, lost the connection?";
+							else if( install.getType() == ErrorCheckResult.Type.INSTALLED_SUCCESSFULLY ) {
+								result = "Installed, Size: " + install.getInstallSize();
+								ok = true;
+							}
+							else
+								result = install.getErrorMessage() + (install.getLineNumber() > 0 ? " (Line " + install.getLineNumber() + ")" : "");
+						}
+					} catch (Exception e) {
+						e.printStackTrace();
+						result = "Error: " + e.getMessage();
+					}
+
+					update(display, item, ok ? "Done" : "Failed", result, System.currentTimeMillis() - start);
+				}
+			});
+		}
+
+		//Threads go away once the queue is done
+		executor.shutdown();
+	}
+
+	private void update(Display display, final TableItem item, final String state, final String result, final long time) {
+		if( display.isDisposed() )
+			return;
+
+		display.asyncExec(new Runnable(){
+			public void run() {
+				if( item.isDisposed() )
+					return;
+
+				item.setText(1, state);
+
+				if( result == null )
+					return;
+
+				item.setText(2, String.format("%.1fs", time / 1000.0));
+				item.setText(3, result);
+
+				remaining--;
+
+				if( !state.equals("Done") )
+					failed++;
+
+				if( remaining == 0 ) {
+					status.setText("Finished in " + String.format("%.1fs", (System.currentTimeMillis() - started) / 1000.0) + (failed == 0 ? ", no errors" : ", " + failed + " failed"));
+					deployButton.setEnabled(true);
+				}
+			}
+		});
+	}
+
+	public static void show(Shell parent, SymitarFile source) {
+		new DeployShell(source).create(parent);
+	}
+}
@@ -19,25 +19,32 @@
 
 package com.repdev;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.MessageBox;
 import org.eclipse.swt.widgets.ProgressBar;
 import org.eclipse.swt.widgets.Text;
 
@@ -54,12 +61,18 @@ import org.eclipse.swt.widgets.Text;
  */
 public class DirectSymitarSession extends SymitarSession {
 	Socket socket;
-	BufferedReader in;
+	SymitarFrameReader in;
 	PrintWriter out;
 	boolean connected = false;
-	Thread keepAlive;
-	private final int NO_ACTIVITY_DELAY = 20;
-	private final int KEEP_ALIVE_WARNING = 30;
+	private volatile boolean broken = false; //Lost the connection to the host, see isBroken()
+	private volatile long lastTraffic = System.currentTimeMillis();
+	
+	//Timed public calls wrap a private lockedXxx method, so the wait for the lock is counted apart from time on the wire
+	private final SessionMetrics metrics = new SessionMetrics();
+	
+	//Set to record the raw traffic of the next connect, see SymitarTranscript
+	private File transcriptFile;
+	private SymitarTranscript transcript;
 
 	private String log(String str) {
 		System.out.println(str);
@@ -71,11 +84,32 @@ public class DirectSymitarSession extends SymitarSession {
 	}
 	
 	/**
-	 * Updates the lastActivity variable in RepDevMain so that the Keep Alive Thread will not terminate
-	 * if there has been activity, from any of the SYMs, within the minutes specified by NO_ACTIVITY_DELAY.
+	 * Updates the lastActivity variable in RepDevMain so that Keep Alive will not terminate
+	 * if there has been activity, from any of the SYMs, within the minutes specified by KeepAlive.NO_ACTIVITY_DELAY.
 	 */
 	private void setLastActivity(){
-		RepDevMain.setLastActivity(new GregorianCalendar());		
+		RepDevMain.setLastActivity(System.currentTimeMillis());
+	}
+
+	/**
+	 * @return True if the host closed the connection or it failed under us, the session is no good anymore
+	 */
+	boolean isBroken() {
+		return broken || !connected || (out != null && out.checkError());
+	}
+
+	/**
+	 * @return Counters for this connection, the pool adds its lease waits here
+	 */
+	SessionMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return Last time anything was sent or received on this connection, keep alive skips the WakeUp if it's recent
+	 */
+	long getLastTraffic() {
+		return lastTraffic;
 	}
 
 	@Override
@@ -91,11 +125,10 @@ public class DirectSymitarSession extends SymitarSession {
 		this.aixUsername = aixUsername;
 		this.aixPassword = aixPassword;
 		this.userID = userID;
-		final int tmpSym = this.sym;
 
 		try {
-			socket = new Socket(server, Config.getPort());
-			socket.setKeepAlive(true);
+			broken = false;
+			open(server);
 		
 			// Constant commands, these are the basic telnet establishment
 			// stuffs, which really don't change, so I just send them directly
@@ -104,9 +137,6 @@ public class DirectSymitarSession extends SymitarSession {
 			char init3[] = { 0xff, 0xfd, 0x01 };
 			char init4[] = { 0xff, 0xfd, 0x03, 0xff, 0xfc, 0x1f, 0xff, 0xfc, 0x01 };
 
-			in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-			out = new PrintWriter(socket.getOutputStream());
-
 			out.print(init1);
 			out.print(init2);
 			out.print(init3);
@@ -174,6 +204,11 @@ public class DirectSymitarSession extends SymitarSession {
 					}
 				}
 				log(current1.toString());
+
+				//Keep the retyped one out of the recording too
+				if( transcript != null )
+					transcript.addSecret(newpass);
+
 				write(newpass + "\r");
 				if (current1.getCommand().equals("SymLogonInvalidUser")){
 					System.out.println("Console Blocked");
@@ -216,60 +251,9 @@ public class DirectSymitarSession extends SymitarSession {
 			connected = true;
 			log("Connected to Symitar!");
 			
-			//Establish keepalive timer, every 55 seconds send an empty command
-			keepAlive = new Thread(new Runnable(){
-				public void run() {
-					Calendar cal = new GregorianCalendar();
-					int terminateTime;
-					int lastActivityTime = (RepDevMain.getLastActivity().get(Calendar.HOUR_OF_DAY)*60)+RepDevMain.getLastActivity().get(Calendar.MINUTE)+NO_ACTIVITY_DELAY;
-					int termOptionTime = (Config.getTerminateHour()*60)+Config.getTerminateMinute();
-					int curTime = (cal.get(Calendar.HOUR_OF_DAY)*60)+cal.get(Calendar.MINUTE);
-					boolean neverTerminate;
-					
-					terminateTime = (lastActivityTime > termOptionTime ? lastActivityTime : termOptionTime);
-					neverTerminate = Config.getNeverTerminate();
-					
-					boolean firstRun = true;
-					try{
-						while(terminateTime > curTime || neverTerminate){
-							firstRun = false;
-							Thread.sleep(55000);
-							wakeUp();
-							
-							cal = Calendar.getInstance();
-							curTime = (cal.get(Calendar.HOUR_OF_DAY)*60)+cal.get(Calendar.MINUTE);
-							lastActivityTime = (RepDevMain.getLastActivity().get(Calendar.HOUR_OF_DAY)*60)+RepDevMain.getLastActivity().get(Calendar.MINUTE)+NO_ACTIVITY_DELAY;
-							terminateTime = (lastActivityTime > termOptionTime ? lastActivityTime : termOptionTime);
-							if (terminateTime-curTime < KEEP_ALIVE_WARNING && !neverTerminate){
-								log(cal.getTime().toString().substring(11, 19)+" Keep Alive (SYM "+tmpSym+") will terminate in "+(terminateTime-curTime)+" minutes");
-							}
-							else{
-								log(cal.getTime().toString().substring(11, 19)+" Keep Alive (SYM "+tmpSym+") ");
-							}
-						}
-						
-						log(cal.getTime().toString().substring(11, 19)+" Keep Alive (SYM "+tmpSym+") Terminated");
-						if (!firstRun){
-							Display.getDefault().syncExec(new Runnable(){
-								public void run(){
-									MessageBox msg = new MessageBox(RepDevMain.mainShell.getShell(), SWT.ICON_WARNING);
-									msg.setText("Keep Alive");
-									msg.setMessage("Keep Alive has terminated for SYM "+tmpSym+".  Please take proper measures to avoid the lost of work.");
-									msg.open();
-								}
-							});
-						}
-					}
-					catch(InterruptedException e){
-						System.out.println("Terminating keepalive thread");
-					}
-					catch(Exception e){
-						e.printStackTrace();
-					}
-				}
-				
-			});
-			keepAlive.start();
+			//Shared timer sends WakeUps whenever we go quiet
+			if( useKeepAlive() )
+				KeepAlive.register(this);
 			
 		} catch (UnknownHostException e) {
 			e.printStackTrace();
@@ -284,17 +268,28 @@ public class DirectSymitarSession extends SymitarSession {
 		return SessionError.NONE;
 	}
 
-	private static class Command {
+	/**
+	 * One ~ delimited message, either built by us to send, or read from the host.
+	 * 
+	 * Inbound frames are cheap to create: only the command name is picked out up front, the
+	 * parameters are split the first time somebody asks for them. Parameter names we see all the
+	 * time share one String instance instead of a new one per frame. 
+	 * 
+	 * Package private for CommandBenchmark.
+	 */
+	static class Command {
 		String command = "";
-		HashMap<String, String> parameters = new HashMap<String, String>();
+		HashMap<String, String> parameters;
 		String data = "";
-		static Pattern commandPattern = Pattern.compile("(.*?)~.*");
-		static int currentMessageId = 10000;
+		private static final AtomicInteger currentMessageId = new AtomicInteger(10000);
+		private static final char FILE_DATA_START = 253, FILE_DATA_END = 254;
+		
+		//Parameter names the host sends on nearly every frame
+		private static final String[] KNOWN_KEYS = { "MsgId", "Action", "Name", "Done", "Status", "Type", "Text", "Line", "Col", "Size", "Date", "Time",
+			"Seq", "Queue", "Stat", "HelpCode", "Prompt", "FileName", "Sequence", "Title", "PageCount", "BatchSeq", "Warning", "Error", "BadCharList" };
 
 		public Command(String command) {
-			parameters.put("MsgId", String.valueOf(currentMessageId));
-			currentMessageId++;
-
+			this();
 			this.command = command;
 		}
 
@@ -304,63 +299,143 @@ public class DirectSymitarSession extends SymitarSession {
 			this.parameters = parameters;
 			this.data = data;
 
-			parameters.put("MsgId", String.valueOf(currentMessageId));
-			currentMessageId++;
+			parameters.put("MsgId", String.valueOf(currentMessageId.getAndIncrement()));
 		}
 
 		public Command() {
-			parameters.put("MsgId", String.valueOf(currentMessageId));
-			currentMessageId++;
+			parameters = new HashMap<String, String>();
+			parameters.put("MsgId", String.valueOf(currentMessageId.getAndIncrement()));
+		}
+		
+		/**
+		 * For parsed frames, no MsgId of our own and parameters left for later
+		 */
+		private Command(String command, String data) {
+			this.command = command;
+			this.data = data;
 		}
 
 		// Returns string containing any file data sent in this message
 		public String getFileData() {
+			int start = data.indexOf(FILE_DATA_START), end = data.indexOf(FILE_DATA_END);
 			
-			if( data.indexOf(Character.toString((char) 253)) != -1 && data.indexOf(Character.toString((char) 254)) != -1)
-				return data.substring(data.indexOf(Character.toString((char) 253)) + 1, data.indexOf(Character.toString((char) 254)));
+			if( start != -1 && end != -1)
+				return data.substring(start + 1, end);
 			else
 				return "";
 		}
 
-		public String sendStr() {
-			String data = "";
-			data += command + "~";
-
-			for (String key : parameters.keySet())
-				if (parameters.get(key).equals(""))
-					data += key + "~";
-				else
-					data += key + "=" + parameters.get(key) + "~";
-
-			data = data.substring(0, data.length() - 1);
-
-			return Character.toString((char) 0x07) + data.length() + "\r" + data;
+		/**
+		 * MsgId the host sent this frame with, or null if it didn't. Read from the raw frame,
+		 * since file data frames are never split into parameters
+		 */
+		public String getMsgId() {
+			int start = data.indexOf("~MsgId=");
+			int dataStart = data.indexOf(FILE_DATA_START);
+			
+			if( start == -1 || (dataStart != -1 && start > dataStart) )
+				return null;
+			
+			start += 7;
+			int end = data.indexOf("~", start);
+			
+			if( end == -1 || (dataStart != -1 && end > dataStart) )
+				end = dataStart != -1 ? dataStart : data.length();
+			
+			return data.substring(start, end);
 		}
 
-		public static Command parse(String data) {
-			String[] sep;
-
-			Command command = new Command();
-			command.setData(data);
+		/**
+		 * Writes the framed command straight to the output, length header first, without building it up as a String 
+		 * @param out
+		 */
+		public void writeTo(Writer out) throws IOException {
+			HashMap<String, String> params = getParameters();
+			int length = command.length();
 
-			if (data.indexOf("~") != -1 && data.indexOf(253) == -1) {
-				Matcher match;
-				match = commandPattern.matcher(data);
-				match.matches();
+			for (Map.Entry<String, String> entry : params.entrySet()) {
+				length += 1 + entry.getKey().length();
+				
+				if( entry.getValue().length() > 0 )
+					length += 1 + entry.getValue().length();
+			}
 
-				command.setCommand(match.group(1));
-				sep = data.substring(match.group(1).length() + 1).split("~");
+			out.write(0x07);
+			out.write(Integer.toString(length));
+			out.write('\r');
+			out.write(command);
 
-				for (String cur : sep) {
-					if (cur.indexOf("=") == -1)
-						command.getParameters().put(cur, "");
-					else
-						command.getParameters().put(cur.substring(0, cur.indexOf("=")), cur.substring(cur.indexOf("=") + 1));
+			for (Map.Entry<String, String> entry : params.entrySet()) {
+				out.write('~');
+				out.write(entry.getKey());
+				
+				if( entry.getValue().length() > 0 ){
+					out.write('=');
+					out.write(entry.getValue());
 				}
-			} else
-				command.setCommand(data);
+			}
+		}
 
-			return command;
+		public String sendStr() {
+			StringWriter str = new StringWriter();
+			
+			try {
+				writeTo(str);
+			} catch (IOException e) {
+				//Can't happen writing to a string
+			}
+			
+			return str.toString();
+		}
+
+		public static Command parse(String data) {
+			int tilde = data.indexOf('~');
+
+			if (tilde != -1 && data.indexOf(FILE_DATA_START) == -1)
+				return new Command(data.substring(0, tilde), data);
+			else{
+				Command command = new Command(data, data);
+				command.parameters = new HashMap<String, String>();
+				return command;
+			}
+		}
+		
+		/**
+		 * Splits "Command~Key=Value~Flag~..." into the parameter map
+		 */
+		private void parseParameters() {
+			parameters = new HashMap<String, String>();
+			
+			int pos = command.length() + 1;
+			
+			while (pos < data.length()) {
+				int end = data.indexOf('~', pos);
+				
+				if( end == -1 )
+					end = data.length();
+				
+				int equals = data.indexOf('=', pos);
+				
+				if( equals == -1 || equals > end )
+					parameters.put(key(pos, end), "");
+				else
+					parameters.put(key(pos, equals), data.substring(equals + 1, end));
+				
+				pos = end + 1;
+			}
+		}
+		
+		/**
+		 * Name of the parameter at data[start, end), reusing the shared instance if it is a common one
+		 */
+		private String key(int start, int end) {
+			int length = end - start;
+			
+			for (String known : KNOWN_KEYS)
+				if( known.length() == length && data.regionMatches(start, known, 0, length) )
+					return known;
+			
+			return data.substring(start, end);
 		}
 
 		public String toString() {
@@ -384,6 +459,9 @@ public class DirectSymitarSession extends SymitarSession {
 		}
 
 		public HashMap<String, String> getParameters() {
+			if( parameters == null )
+				parseParameters();
+			
 			return parameters;
 		}
 
@@ -395,10 +473,19 @@ public class DirectSymitarSession extends SymitarSession {
 	private void write(String str) {
 		out.write(str);
 		out.flush();
+		lastTraffic = System.currentTimeMillis();
 	}
 
 	private void write(Command cmd) {
-		write(cmd.sendStr());
+		lastTraffic = System.currentTimeMillis();
+		metrics.frameOut();
+		
+		try {
+			cmd.writeTo(out);
+		} catch (IOException e) {
+			//PrintWriter never throws, it just sets its error flag
+		}
+		out.flush();
 	}
 
 	private String writeLog(String command, String... waitFor) throws IOException {
@@ -407,10 +494,17 @@ public class DirectSymitarSession extends SymitarSession {
 	}
 
 	private Command readNextCommand() throws IOException {
-		readUntil(Character.toString((char) 0x1b) + Character.toString((char) 0xfe));
-		String data = readUntil(Character.toString((char) 0xfc));
-
-		Command cmd = Command.parse(data.substring(0, data.length() - 1));
+		Command cmd;
+		
+		try {
+			cmd = Command.parse(in.readFrame());
+		} catch (IOException e) {
+			broken = true;
+			throw e;
+		}
+		
+		lastTraffic = System.currentTimeMillis();
+		metrics.frameIn();
 		
 		//Filter out Messages that come in asychronously and fuck everything up
 		if( cmd.getCommand().equals("MsgDlg") && cmd.getParameters().get("Text").contains("From PID") )
@@ -426,24 +520,74 @@ public class DirectSymitarSession extends SymitarSession {
 	
 	}
 
-	private String readUntil(String... strs) throws IOException {
-		String buf = "";
-
-		while (true) {
-			int cur = in.read();
-			buf += (char) cur;
-			for (String str : strs)
-				if (buf.indexOf(str) != -1)
-					return buf;
+	/**
+	 * Opens the socket and sets up in and out, recording if we were asked to.
+	 * ReplaySymitarSession overrides this to talk to a transcript instead.
+	 * 
+	 * @param server
+	 * @throws IOException
+	 */
+	protected void open(String server) throws IOException {
+		socket = new Socket(server, Config.getPort());
+		socket.setKeepAlive(true);
+		
+		InputStream rawIn = socket.getInputStream();
+		OutputStream rawOut = socket.getOutputStream();
+		
+		if( transcriptFile == null && System.getProperty("repdev.transcripts") != null )
+			transcriptFile = new File(System.getProperty("repdev.transcripts"), "sym" + sym + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()) + ".rdt");
+		
+		if( transcriptFile != null ) {
+			transcriptFile.getAbsoluteFile().getParentFile().mkdirs();
+			transcript = new SymitarTranscript(transcriptFile);
+			transcript.addSecret(aixPassword);
+			transcript.addSecret(userID);
+			rawIn = transcript.recordIn(rawIn);
+			rawOut = transcript.recordOut(rawOut);
+			
+			log("Recording Sym " + sym + " traffic to " + transcriptFile.getAbsolutePath());
+			transcriptFile = null;
 		}
+		
+		setStreams(rawIn, rawOut);
+	}
+	
+	/**
+	 * @return False if connect() shouldn't sign this session up for keep alive WakeUps
+	 */
+	protected boolean useKeepAlive() {
+		return true;
+	}
+	
+	/**
+	 * Wraps the raw connection streams in our metrics, decoder and writer
+	 */
+	protected void setStreams(InputStream rawIn, OutputStream rawOut) {
+		metrics.register(sym);
+		in = new SymitarFrameReader(new InputStreamReader(metrics.countIn(rawIn)));
+		out = new PrintWriter(metrics.countOut(rawOut));
+	}
+	
+	/**
+	 * Records the raw traffic of the next connect() to this file, for ReplaySymitarSession.
+	 * Starting RepDev with -Drepdev.transcripts=dir records every connection into that folder instead.
+	 * 
+	 * @param file
+	 */
+	public void setTranscript(File file) {
+		transcriptFile = file;
+	}
+	
+	private String readUntil(String... strs) throws IOException {
+		return in.readUntil(strs);
 	}
 
 	@Override
 	public SessionError disconnect() {
+		KeepAlive.unregister(this);
+		metrics.unregister();
+		
 		try {
-			if( keepAlive != null)
-				keepAlive.interrupt();
-			
 			if( in != null)
 				in.close();
 			
@@ -452,19 +596,40 @@ public class DirectSymitarSession extends SymitarSession {
 			
 			if( socket != null)
 				socket.close();
+			
+			if( transcript != null ){
+				transcript.close();
+				transcript = null;
+			}
 		} catch (Exception e) {
 			return SessionError.IO_ERROR;
 		}
 		connected = false;
+		FileListCache.forSym(sym).clear();
 		return SessionError.NONE;
 	}
 
-	private synchronized void wakeUp(){
+	synchronized void wakeUp(){
 		write(new Command("WakeUp"));
 	}
 	
 	@Override
-	public synchronized ErrorCheckResult errorCheckRepGen(String filename) {
+	public ErrorCheckResult errorCheckRepGen(String filename) {
+		long requested = System.nanoTime();
+		
+		synchronized (this) {
+			long start = metrics.acquired(requested);
+			
+			try {
+				return lockedErrorCheckRepGen(filename);
+			}
+			finally {
+				metrics.record("Error Check", start);
+			}
+		}
+	}
+	
+	private ErrorCheckResult lockedErrorCheckRepGen(String filename) {
 		Command cur;
 		String error = "", errFile = "";
 		int line = -1, column = -1;
@@ -525,21 +690,87 @@ public class DirectSymitarSession extends SymitarSession {
 		return null;
 	}
 
+	//Not synchronized, the getFileList calls time their own wait for the lock
 	@Override
-	public synchronized boolean fileExists(SymitarFile file){
+	public boolean fileExists(SymitarFile file){
+		FileListCache cache = FileListCache.forSym(sym);
+		
+		//One full listing answers every fileExists after it, instead of a List per file
+		if( file.getType() != FileType.REPORT && !cache.hasFullListing(file.getType()) )
+			getFileList(file.getType(), "+");
+		
 		return getFileList(file.getType(), file.getName()).size() > 0;
 	}
 	
+	//Not synchronized, getFiles times its own wait for the lock
 	@Override
-	public synchronized String getFile(SymitarFile file) {
-		StringBuilder data = new StringBuilder();
-		final long maxSize = 2097152; //Don't download more than 2MB, otherwise things get ugly
-		boolean wroteSizeWarning = false;
-		
+	public String getFile(SymitarFile file) {
 		if( !connected )
 			return null;
-		setLastActivity();
-		Command current;
+		
+		return getFiles(Collections.singletonList(file), null).get(file);
+	}
+
+	@Override
+	public SessionError getFile(SymitarFile file, FileChunkListener listener) {
+		long requested = System.nanoTime();
+		
+		synchronized (this) {
+			long start = metrics.acquired(requested);
+			
+			try {
+				return lockedGetFile(file, listener);
+			}
+			finally {
+				metrics.record("File Retrieve", start);
+			}
+		}
+	}
+	
+	private SessionError lockedGetFile(SymitarFile file, FileChunkListener listener) {
+		if( !connected )
+			return SessionError.NOT_CONNECTED;
+		
+		if( file == null || listener == null )
+			return SessionError.ARGUMENT_ERROR;
+		
+		ArrayList<PendingRetrieve> done = retrieve(Collections.singletonList(file), null, listener);
+		
+		if( done.isEmpty() )
+			return SessionError.IO_ERROR;
+		
+		return done.get(0).error;
+	}
+
+	/**
+	 * One outstanding File~Action=Retrieve in a getFiles batch
+	 */
+	private static class PendingRetrieve {
+		final SymitarFile file;
+		final String msgId;
+		final StringBuilder data = new StringBuilder();
+		boolean wroteSizeWarning = false;
+		SessionError error = SessionError.NONE;
+		
+		PendingRetrieve(SymitarFile file, String msgId) {
+			this.file = file;
+			this.msgId = msgId;
+		}
+		
+		/**
+		 * @return What getFile returns for this file
+		 */
+		String getResult() {
+			if( error == SessionError.ARGUMENT_ERROR )
+				return "";
+			else if( error != SessionError.NONE )
+				return null;
+			else
+				return data.toString();
+		}
+	}
+	
+	private Command retrieveCommand(SymitarFile file) {
 		Command retrieve = new Command();
 		retrieve.setCommand("File");
 		retrieve.getParameters().put("Action", "Retrieve");
@@ -553,49 +784,156 @@ public class DirectSymitarSession extends SymitarSession {
 		else if( file.getType() == FileType.REPORT)
 			retrieve.getParameters().put("Type", "Report");
 
-		
 		retrieve.getParameters().put("Name", file.getName());
+		
+		return retrieve;
+	}
 
-		write(retrieve);
+	@Override
+	public HashMap<SymitarFile, String> getFiles(Collection<SymitarFile> files, FileRetrieveListener listener) {
+		long requested = System.nanoTime();
+		
+		synchronized (this) {
+			long start = metrics.acquired(requested);
+			
+			try {
+				return lockedGetFiles(files, listener);
+			}
+			finally {
+				metrics.record("File Retrieve", start);
+			}
+		}
+	}
+	
+	private HashMap<SymitarFile, String> lockedGetFiles(Collection<SymitarFile> files, FileRetrieveListener listener) {
+		HashMap<SymitarFile, String> results = new HashMap<SymitarFile, String>();
+		
+		if( !connected )
+			return results;
+		
+		for( PendingRetrieve request : retrieve(files, listener, null) )
+			results.put(request.file, request.getResult());
+		
+		return results;
+	}
+
+	/**
+	 * Keeps up to Config.getRetrieveWindow() retrieves going at once, and sorts the replies back out by their MsgId.
+	 * Anything that comes back without one is given to the oldest request still going, which is
+	 * also exactly what happens if the host answers them one at a time in order.
+	 * 
+	 * The window is 1 unless the user turns it up, then each file is asked for only after the last one
+	 * is Done, exactly like the old one file at a time getFile, so hosts that don't handle overlapping commands still work.
+	 * 
+	 * With a sink, file data is handed straight to it as it arrives and never buffered, so there is no size limit.
+	 * Otherwise it is collected in memory, up to 2MB a file.
+	 * 
+	 * @return Every request that finished, requests cut off by an IO error are left out
+	 */
+	private ArrayList<PendingRetrieve> retrieve(Collection<SymitarFile> files, FileRetrieveListener listener, FileChunkListener sink) {
+		final long maxSize = 2097152; //Don't download more than 2MB, otherwise things get ugly
+		ArrayList<PendingRetrieve> finished = new ArrayList<PendingRetrieve>();
+		
+		setLastActivity();
+		
+		Iterator<SymitarFile> toSend = files.iterator();
+		HashMap<String, PendingRetrieve> pending = new HashMap<String, PendingRetrieve>();
+		LinkedList<PendingRetrieve> order = new LinkedList<PendingRetrieve>();
+		Command current;
+		int window = Config.getRetrieveWindow();
 		
 		try {
-			while (true) {
+			while (toSend.hasNext() || !order.isEmpty()) {
+				while (toSend.hasNext() && order.size() < window) {
+					SymitarFile file = toSend.next();
+					Command retrieve = retrieveCommand(file);
+					PendingRetrieve request = new PendingRetrieve(file, retrieve.getParameters().get("MsgId"));
+					
+					pending.put(request.msgId, request);
+					order.add(request);
+					write(retrieve);
+				}
+				
 				current = readNextCommand();
-
+				
+				PendingRetrieve request = pending.get(current.getMsgId());
+				
+				if( request == null )
+					request = order.getFirst();
+				
 				if (current.getParameters().get("Status") != null && current.getParameters().get("Status").contains("No such file or directory"))
-					return "";
+					request.error = SessionError.ARGUMENT_ERROR;
 				else if( current.getParameters().get("Status") != null )
-					return null;
-
-				if (current.getParameters().get("Done") != null){
-					return data.toString();
-				}
-
-				if( data.length() < maxSize){
-					data.append(current.getFileData());
+					request.error = SessionError.IO_ERROR;
+				else if (current.getParameters().get("Done") == null) {
+					if( sink != null ){
+						//Cancelled, just read the rest so the session stays in step
+						if( sink.isCancelled() )
+							continue;
+						
+						sink.chunk(request.file, current.getFileData());
+						
+						if( request.file.getType() == FileType.REPORT )
+							sink.chunk(request.file, "\n");
+					}
+					else if( request.data.length() < maxSize){
+						request.data.append(current.getFileData());
+						
+						if( request.file.getType() == FileType.REPORT )
+							request.data.append( "\n");
+					}
+					else if( !request.wroteSizeWarning ){
+						request.data.insert(0,"WARNING - This file exceeds the 2MB limit that RepDev has for loading files. This text should only be used as a preview!\n\n");
+						request.data.append("\n\nWARNING - This file exceeds the 2MB limit that RepDev has for loading files. This text should only be used as a preview!");
+						request.wroteSizeWarning = true;
+					}
 					
-					if( file.getType() == FileType.REPORT )
-						data.append( "\n");
-				}
-				else if( !wroteSizeWarning ){
-					data.insert(0,"WARNING - This file exceeds the 2MB limit that RepDev has for loading files. This text should only be used as a preview!\n\n");
-					data.append("\n\nWARNING - This file exceeds the 2MB limit that RepDev has for loading files. This text should only be used as a preview!");
-					wroteSizeWarning = true;
+					continue;
 				}
+				
+				pending.remove(request.msgId);
+				order.remove(request);
+				finished.add(request);
+				
+				if( listener != null )
+					listener.fileRetrieved(request.file, request.getResult());
 			}
 		} catch (IOException e) {
-			return null;
+			e.printStackTrace();
 		}
+		
+		return finished;
 	}
 
 	@Override
-	public synchronized ArrayList<SymitarFile> getFileList(FileType type, String search) {
+	public ArrayList<SymitarFile> getFileList(FileType type, String search) {
+		long requested = System.nanoTime();
+		
+		synchronized (this) {
+			long start = metrics.acquired(requested);
+			
+			try {
+				return lockedGetFileList(type, search);
+			}
+			finally {
+				metrics.record("File List", start);
+			}
+		}
+	}
+	
+	private ArrayList<SymitarFile> lockedGetFileList(FileType type, String search) {
 		ArrayList<SymitarFile> toRet = new ArrayList<SymitarFile>();
 		Command current;
 		setLastActivity();
 		if( !connected )
 			return toRet;
+		
+		ArrayList<SymitarFile> cached = FileListCache.forSym(sym).get(type, search);
+		
+		if( cached != null )
+			return cached;
 
+		int changes = FileListCache.forSym(sym).getChanges();
 		Command list = new Command("File");
 
 		if (type == FileType.REPGEN)
@@ -631,6 +969,8 @@ public class DirectSymitarSession extends SymitarSession {
 				break;
 		}
 
+		FileListCache.forSym(sym).put(type, search, toRet, changes);
+
 		return toRet;
 	}
 
@@ -640,9 +980,24 @@ public class DirectSymitarSession extends SymitarSession {
 		return connected;
 	}
 
-	//TODO: Add more error checking
 	@Override
 	public SessionError printFileLPT(SymitarFile file, int queue, boolean formsOverride, int formLength, int startPage, int endPage, int copies, boolean landscape, boolean duplex, int queuePriority) {
+		long requested = System.nanoTime();
+		
+		synchronized (this) {
+			long start = metrics.acquired(requested);
+			
+			try {
+				return lockedPrintFileLPT(file, queue, formsOverride, formLength, startPage, endPage, copies, landscape, duplex, queuePriority);
+			}
+			finally {
+				metrics.record("Print LPT", start);
+			}
+		}
+	}
+	
+	//TODO: Add more error checking
+	private SessionError lockedPrintFileLPT(SymitarFile file, int queue, boolean formsOverride, int formLength, int startPage, int endPage, int copies, boolean landscape, boolean duplex, int queuePriority) {
 		Command cur;
 		
 		if( !connected )
@@ -774,6 +1129,22 @@ public class DirectSymitarSession extends SymitarSession {
 
 	@Override
 	public SessionError removeFile(SymitarFile file) {
+		long requested = System.nanoTime();
+		
+		synchronized (this) {
+			long start = metrics.acquired(requested);
+			
+			try {
+				return lockedRemoveFile(file);
+			}
+			finally {
+				metrics.record("File Delete", start);
+				fileChanged(file);
+			}
+		}
+	}
+	
+	private SessionError lockedRemoveFile(SymitarFile file) {
 		Command delete = new Command();
 		delete.setCommand("File");
 		delete.getParameters().put("Action", "Delete");
@@ -811,7 +1182,22 @@ public class DirectSymitarSession extends SymitarSession {
 	}
 
 	@Override
-	public synchronized RunFMResult runBatchFM(String searchTitle, int searchDays, FMFile file, int queue) {
+	public RunFMResult runBatchFM(String searchTitle, int searchDays, FMFile file, int queue) {
+		long requested = System.nanoTime();
+		
+		synchronized (this) {
+			long start = metrics.acquired(requested);
+			
+			try {
+				return lockedRunBatchFM(searchTitle, searchDays, file, queue);
+			}
+			finally {
+				metrics.record("FM Run", start);
+			}
+		}
+	}
+	
+	private RunFMResult lockedRunBatchFM(String searchTitle, int searchDays, FMFile file, int queue) {
 		RunFMResult result = new RunFMResult();
 		int[] queueCounts = new int[10000];
 		boolean[] queueAvailable = new boolean[10000];
@@ -985,7 +1371,22 @@ public class DirectSymitarSession extends SymitarSession {
 	 * This allows for amodal dialogs for running, and also the option to cancel
 	 * Non polling would be nice, but maybe tricky to implement, I will look into it.
 	 */
-	public synchronized RunRepgenResult runRepGen(String name, int queue, ProgressBar progress, Text text, PromptListener prompter) {
+	public RunRepgenResult runRepGen(String name, int queue, ProgressBar progress, Text text, PromptListener prompter) {
+		long requested = System.nanoTime();
+		
+		synchronized (this) {
+			long start = metrics.acquired(requested);
+			
+			try {
+				return lockedRunRepGen(name, queue, progress, text, prompter);
+			}
+			finally {
+				metrics.record("RepGen Run", start);
+			}
+		}
+	}
+	
+	private RunRepgenResult lockedRunRepGen(String name, int queue, ProgressBar progress, Text text, PromptListener prompter) {
 		Command cur, old;
 		boolean isError = false;
 		int[] queueCounts = new int[10000];
@@ -1002,6 +1403,8 @@ public class DirectSymitarSession extends SymitarSession {
 		
 		setProgress(progress,0, text, "Queuing batch run, please wait...");
 		
+		long phase = System.nanoTime();
+		
 		try{
 			write("mm0" + (char)27);
 			
@@ -1023,6 +1426,8 @@ public class DirectSymitarSession extends SymitarSession {
 				log(cur);
 			
 			setProgress(progress,15, text, "Please answer prompts");
+			metrics.record("RepGen Menus", phase);
+			phase = System.nanoTime();
 			
 			write( name + "\r");
 			
@@ -1073,10 +1478,14 @@ public class DirectSymitarSession extends SymitarSession {
 					return new RunRepgenResult(-1,0);
 				}
 				else if( cur.getCommand().equals("Batch") && cur.getParameters().get("Action").equals("DisplayLine")){
-					setProgress(null, 0, text, text.getText() + "\n" + cur.getParameters().get("Text"));
+					appendOutput(text, cur.getParameters().get("Text"));
 				}
 			}
 			
+			//Includes the time the user spends answering
+			metrics.record("RepGen Prompts", phase);
+			phase = System.nanoTime();
+			
 			write( "\r" );
 			
 			while( !(cur = readNextCommand()).getCommand().equals("Input") )
@@ -1194,16 +1603,87 @@ public class DirectSymitarSession extends SymitarSession {
 			return new RunRepgenResult(-1,0);
 		}
 		
+		metrics.record("RepGen Queue", phase);
 		setProgress(progress,50, text, "Repgen queued\nWaiting for batch job to finish");	
 		
 		return new RunRepgenResult(seq,time);
 	}
 
 
+	/**
+	 * Removes every char in the host's BadCharList in one pass, compacting the array in place
+	 * 
+	 * @param data
+	 * @param badCharList comma separated char codes
+	 * @return New length of the data
+	 */
+	private static int stripBadChars(char[] data, String badCharList) {
+		BitSet bad = new BitSet();
+		int length = 0;
+		
+		for (String cur : badCharList.split(","))
+			if( cur.trim().length() > 0 )
+				bad.set(Integer.parseInt(cur.trim()));
+		
+		for (int i = 0; i < data.length; i++)
+			if( !bad.get(data[i]) )
+				data[length++] = data[i];
+		
+		return length;
+	}
+	
+	/**
+	 * Writes one PROT part straight out of the data array
+	 * @param part part number, offset, length
+	 */
+	private void writePart(int[] part, char[] data, DecimalFormat f3, DecimalFormat f5) {
+		out.write("PROT" + f3.format(part[0]) + "DATA" + f5.format(part[2]));
+		out.write(data, part[1], part[2]);
+		out.flush();
+		lastTraffic = System.currentTimeMillis();
+		metrics.partOut();
+	}
+	
+	/**
+	 * Sends the file in PROT parts, keeping up to Config.getSaveWindow() of them on the wire
+	 * before waiting on acks. The host acks parts in the order it gets them, so each ack is
+	 * for the oldest part still out. After a NAK the replies for the parts behind it are read and
+	 * thrown away, and sending starts over from the NAK'd part, so the host always gets parts in order.
+	 * The window is 1 unless the user turns it up, which is the old wait on every part save.
+	 */
 	@Override
-	public synchronized SessionError saveFile(SymitarFile file, String text) {
+	public SessionError saveFile(SymitarFile file, String text) {
+		long requested = System.nanoTime();
+		
+		synchronized (this) {
+			long start = metrics.acquired(requested);
+			
+			try {
+				return lockedSaveFile(file, text);
+			}
+			finally {
+				metrics.record("File Store", start);
+				fileChanged(file);
+			}
+		}
+	}
+
+	/**
+	 * Forgets what we know about a file once the host has saved, deleted or renamed it. Not before, another
+	 * pooled connection could list the sym in between and put the old state back. Failures count too,
+	 * the host may have gotten part way.
+	 */
+	private void fileChanged(SymitarFile file) {
+		if( file == null )
+			return;
+
+		FileListCache.forSym(sym).invalidate(file.getType());
+		FileContentCache.remove(sym, file.getType(), file.getName());
+	}
+	
+	private SessionError lockedSaveFile(SymitarFile file, String text) {
 		int partSize = 3996;
-		int curPart = 0;
+		int window = Config.getSaveWindow();
 		DecimalFormat f3 = new DecimalFormat("000");
 		DecimalFormat f5 = new DecimalFormat("00000");
 		char[] buf = new char[16];
@@ -1267,25 +1747,39 @@ public class DirectSymitarSession extends SymitarSession {
 			if( current.getParameters().get("Status") != null && current.getParameters().get("Status").contains("Filename is too long") )
 				return SessionError.FILENAME_TOO_LONG;
 
-			String[] badList = current.getParameters().get("BadCharList").split(",");
-
-			for (String cur : badList) {
-				text = text.replaceAll(Character.toString((char) Integer.parseInt(cur)), "");
+			char[] data = text.toCharArray();
+			int length = stripBadChars(data, current.getParameters().get("BadCharList"));
+			
+			LinkedList<int[]> inFlight = new LinkedList<int[]>();
+			int offset = 0, curPart = 0;
+			
+			//Always at least one part, even for an empty file
+			while (offset < length || curPart == 0 || !inFlight.isEmpty()) {
+				while (inFlight.size() < window && (offset < length || curPart == 0)) {
+					int[] part = { curPart, offset, Math.min(length - offset, partSize) };
+					
+					writePart(part, data, f3, f5);
+					inFlight.add(part);
+					
+					offset += part[2];
+					curPart++;
+				}
+				
+				in.read(buf, 0, 16);
+				int[] part = inFlight.removeFirst();
+				
+				if (buf[7] == 'N') { // Go back and resend from this part if we get a NAK message
+					metrics.nak();
+					
+					for (int i = inFlight.size(); i > 0; i--)
+						in.read(buf, 0, 16);
+					
+					inFlight.clear();
+					curPart = part[0];
+					offset = part[1];
+				}
 			}
 
-			String toSend = "";
-			do {
-				do {
-					toSend = text.substring(0, Math.min(text.length(), partSize));
-					write("PROT" + f3.format(curPart) + "DATA" + f5.format(toSend.length()));
-					write(toSend);
-					in.read(buf, 0, 16);
-				} while (buf[7] == 'N'); // Resend if we get a NAK message
-
-				curPart++;
-				text = text.substring(toSend.length());
-			} while (text.length() > 0);
-
 			write("PROT" + f3.format(curPart) + "EOF" + pad20);
 			in.read(buf, 0, 16);
 
@@ -1298,7 +1792,22 @@ public class DirectSymitarSession extends SymitarSession {
 	}
 
 	@Override
-	public synchronized ErrorCheckResult installRepgen(String filename) {
+	public ErrorCheckResult installRepgen(String filename) {
+		long requested = System.nanoTime();
+		
+		synchronized (this) {
+			long start = metrics.acquired(requested);
+			
+			try {
+				return lockedInstallRepgen(filename);
+			}
+			finally {
+				metrics.record("Install", start);
+			}
+		}
+	}
+	
+	private ErrorCheckResult lockedInstallRepgen(String filename) {
 		Command cur;
 		String error = "", errFile = "";
 		int line = -1, column = -1;
@@ -1366,12 +1875,34 @@ public class DirectSymitarSession extends SymitarSession {
 	/**
 	 * Remeber that batch queue sequence numbers are not related to print queue ones!
 	 */
-	public synchronized boolean isSeqRunning(int seq) {
+	public boolean isSeqRunning(int seq) {
+		HashSet<Integer> running = getRunningSeqs();
+		
+		return running != null && running.contains(seq);
+	}
+	
+	@Override
+	public HashSet<Integer> getRunningSeqs() {
+		long requested = System.nanoTime();
+		
+		synchronized (this) {
+			long start = metrics.acquired(requested);
+			
+			try {
+				return lockedGetRunningSeqs();
+			}
+			finally {
+				metrics.record("Misc BatchQueues", start);
+			}
+		}
+	}
+	
+	private HashSet<Integer> lockedGetRunningSeqs() {
 		Command cur;
-		boolean running = false;
+		HashSet<Integer> running = new HashSet<Integer>();
 		
 		if( !connected )
-			return false;
+			return null;
 		
 		//Batch queue selection
 		Command getQueues = new Command("Misc");
@@ -1382,12 +1913,12 @@ public class DirectSymitarSession extends SymitarSession {
 			while( (cur = readNextCommand()).getParameters().get("Done") == null ){
 				log(cur);
 				
-				if( cur.getParameters().get("Action").equals("QueueEntry") && Integer.parseInt(cur.getParameters().get("Seq"))==seq)
-					running = true;
+				if( "QueueEntry".equals(cur.getParameters().get("Action")) )
+					running.add(Integer.parseInt(cur.getParameters().get("Seq")));
 			}
 		}
 		catch(IOException e){
-			return false;
+			return null;
 		}
 		
 		return running;
@@ -1401,7 +1932,22 @@ public class DirectSymitarSession extends SymitarSession {
 	}
 
 	@Override
-	public synchronized ArrayList<PrintItem> getPrintItems(String query, int limit) {
+	public ArrayList<PrintItem> getPrintItems(String query, int limit) {
+		long requested = System.nanoTime();
+		
+		synchronized (this) {
+			long start = metrics.acquired(requested);
+			
+			try {
+				return lockedGetPrintItems(query, limit);
+			}
+			finally {
+				metrics.record("Print List", start);
+			}
+		}
+	}
+	
+	private ArrayList<PrintItem> lockedGetPrintItems(String query, int limit) {
 		ArrayList<PrintItem> items = new ArrayList<PrintItem>();
 		Command cur;
 		
@@ -1442,7 +1988,22 @@ public class DirectSymitarSession extends SymitarSession {
 	}
 
 	@Override
-	public synchronized ArrayList<PrintItem> getPrintItems(Sequence seq) {
+	public ArrayList<PrintItem> getPrintItems(Sequence seq) {
+		long requested = System.nanoTime();
+		
+		synchronized (this) {
+			long start = metrics.acquired(requested);
+			
+			try {
+				return lockedGetPrintItems(seq);
+			}
+			finally {
+				metrics.record("Print List", start);
+			}
+		}
+	}
+	
+	private ArrayList<PrintItem> lockedGetPrintItems(Sequence seq) {
 		ArrayList<PrintItem> items = new ArrayList<PrintItem>();
 		
 		Command cur;
@@ -1492,7 +2053,26 @@ public class DirectSymitarSession extends SymitarSession {
 	}
 
 	@Override
-	public synchronized SessionError renameFile(SymitarFile file, String newName) {
+	public SessionError renameFile(SymitarFile file, String newName) {
+		long requested = System.nanoTime();
+		
+		synchronized (this) {
+			long start = metrics.acquired(requested);
+			
+			try {
+				return lockedRenameFile(file, newName);
+			}
+			finally {
+				metrics.record("File Rename", start);
+				fileChanged(file);
+
+				if( file != null && newName != null )
+					FileContentCache.remove(sym, file.getType(), newName);
+			}
+		}
+	}
+	
+	private SessionError lockedRenameFile(SymitarFile file, String newName) {
 		Command retrieve = new Command();
 		retrieve.setCommand("File");
 		retrieve.getParameters().put("Action", "Rename");
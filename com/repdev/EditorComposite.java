@@ -22,6 +22,7 @@ package com.repdev;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Stack;
+import java.util.concurrent.Future;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.CTabFolder;
@@ -68,15 +69,17 @@ import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Menu;
 import org.eclipse.swt.widgets.MenuItem;
 import org.eclipse.swt.widgets.MessageBox;
+import org.eclipse.swt.widgets.Shell;
 
 import com.repdev.parser.Formatter;
 import com.repdev.parser.Include;
+import com.repdev.parser.IncludeSummary;
 import com.repdev.parser.RepgenParser;
 import com.repdev.parser.Token;
+import com.repdev.parser.TokenList;
 import com.repdev.parser.BackgroundSectionParser;
 import com.repdev.parser.SectionInfo;
 import com.repdev.parser.Variable;
-import com.repdev.parser.Token.TokenType;
 
 /**
  * Main editor for repgen, help, and letter files
@@ -109,6 +112,7 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 	private SyntaxHighlighter highlighter;
 	private RepgenParser parser;
 	private boolean modified = false;
+	private boolean loaded = false;
 	private boolean doParse = true;
 
 	//Snippet Mode Variables
@@ -491,6 +495,7 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 		setLayout(new FormLayout());
 
 		txt = new StyledText(this, SWT.H_SCROLL | SWT.V_SCROLL);
+		txt.setContent(new PieceTableContent());
 
 		if (file.getType() == FileType.REPGEN){
 			doParse=true;
@@ -518,7 +523,7 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 		final EditorComposite tempEditor = this;
 
 		// Load the Section Info
-		sec = new BackgroundSectionParser(parser.getLtokens(),txt.getText());
+		sec = new BackgroundSectionParser(parser.copyTokens(),PieceTableContent.snapshot(txt));
 
 		txt.addDisposeListener(new DisposeListener(){
 
@@ -1169,19 +1174,6 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 
 		txt.setMenu(contextMenu);
 
-		String str = file.getData();
-
-		if (str == null){
-			tabItem.dispose();
-			return;
-		}
-
-		txt.setText(str);
-		handleCaretChange();
-		// Drop Navigation Position
-		//RepDevMain.mainShell.addToNavHistory(file, txt.getLineAtOffset(txt.getCaretOffset()));
-		suggest.close();
-
 		/*		FormData frmBar = new FormData();
 		frmBar.top = new FormAttachment(0);
 		frmBar.left = new FormAttachment(0);
@@ -1195,11 +1187,50 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 		frmTxt.bottom = new FormAttachment(100);
 		txt.setLayoutData(frmTxt);
 
+		if( file.isLocal() ) {
+			fileLoaded(file.getData());
+			return;
+		}
+
+		//Don't hold up the UI waiting on the host, the tab opens empty and read only until the file gets here
+		txt.setEditable(false);
+
+		AsyncSymitarSession.forFile(file).getFile(file, new AsyncSymitarSession.Callback<String>(){
+			public void done(String str) {
+				if( isDisposed() )
+					return;
+
+				if( str == null ){
+					MessageBox dialog = new MessageBox(getShell(), SWT.ICON_ERROR | SWT.OK);
+					dialog.setMessage("There has been an error loading this file, the filename is probably too long");
+					dialog.setText("Error");
+					dialog.open();
+				}
+
+				txt.setEditable(true);
+				fileLoaded(str);
+			}
+		});
+	}
+
+	private void fileLoaded(String str) {
+		if (str == null){
+			tabItem.dispose();
+			return;
+		}
+
+		txt.setText(str);
+		handleCaretChange();
+		// Drop Navigation Position
+		//RepDevMain.mainShell.addToNavHistory(file, txt.getLineAtOffset(txt.getCaretOffset()));
+		suggest.close();
+
 		if( parser != null && !file.isLocal())
 			parser.errorCheck();
 
 		undoMode = 1;
 		modified = false;
+		loaded = true;
 		updateModified();
 		highlight(doParse,true);
 	}
@@ -1208,7 +1239,7 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 		
 		CTabFolder mainfolder = RepDevMain.mainShell.getMainfolder();
 			
-		HashMap<String, ArrayList<Token>> incTokenCache = parser.getIncludeTokenChache();
+		HashMap<String, IncludeSummary> incTokenCache = parser.getIncludeTokenChache();
 		String selString=txt.getSelectionText();
 		if(selString.length() == 0)
 			selString=getTokenAt(txt.getCaretOffset()) != null ? getTokenAt(txt.getCaretOffset()).getStr() : "";
@@ -1226,12 +1257,14 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 			return;
 		}
 		for( String key : incTokenCache.keySet()){
-			for(Token token : incTokenCache.get(key)){
-				if(matchTokenAndGoto(token, key, selString))
+			IncludeSummary summary = incTokenCache.get(key);
+
+			for(int i = 0; i < summary.getDefinitionCount(); i++){
+				if(matchDefinitionAndGoto(summary, i, key, selString))
 					return;
 			}
 		}
-		for(Variable var : parser.getLvars()){
+		for(Variable var : parser.getSymbols().getAll()){
 			if(matchVarAndGoto(var, selString))
 				return;
 		}
@@ -1250,12 +1283,14 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 						return;
 					}
 					for( String key2 : incTokenCache.keySet()){
-						for(Token token : incTokenCache.get(key2)){
-							if(matchTokenAndGoto(token, key2, selString))
+						IncludeSummary summary = incTokenCache.get(key2);
+
+						for(int i = 0; i < summary.getDefinitionCount(); i++){
+							if(matchDefinitionAndGoto(summary, i, key2, selString))
 								return;
 						}
 					}
-					for(Variable var : ec.parser.getLvars()){
+					for(Variable var : ec.parser.getSymbols().getAll()){
 						if(matchVarAndGoto(var, selString))
 							return;
 					}
@@ -1295,17 +1330,10 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 		}
 		return false;
 	}
-	private Boolean matchTokenAndGoto(Token token, String key, String nameToMAtch){
+	private Boolean matchDefinitionAndGoto(IncludeSummary summary, int index, String key, String nameToMAtch){
 		Object o;
-		int i = 0;
-		if(token.getTokenType() != null && token.getTokenType().equals(TokenType.DEFINED_VARIABLE)){
-			i = 1;
-		}
 				
-		if(token.getTokenType() != null &&
-			(token.getTokenType().equals(TokenType.PROCEDURE) || 
-				token.getTokenType().equals(TokenType.DEFINED_VARIABLE)) &&
-			token.getStr().equalsIgnoreCase(nameToMAtch)){
+		if(summary.getDefinitionName(index).equalsIgnoreCase(nameToMAtch)){
 			if( file.isLocal() )
 				o = RepDevMain.mainShell.openFile(new SymitarFile(file.getDir(), key, file.getType()));
 			else	
@@ -1321,7 +1349,7 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 					StyledText newTxt = editor.getStyledText();
 					newTxt.setCaretOffset(newTxt.getText().length());
 					newTxt.showSelection();
-					newTxt.setCaretOffset(token.getBefore().getStart());
+					newTxt.setCaretOffset(summary.getDefinitionPos(index));
 					editor.handleCaretChange();
 					// Drop Navigation Position
 					RepDevMain.mainShell.addToNavHistory(file, txt.getLineAtOffset(txt.getCaretOffset()));
@@ -1535,15 +1563,33 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 	// Bruce - End
 
 	/**
-	 * Saves the currently open report
+	 * Saves the currently open report, remote files are saved in the background
 	 * @param errorCheck Flag to check errors with symitar
+	 * @return The save, for callers that have to wait for it (closing), null if there was nothing to save yet
 	 */
-	public void saveFile( boolean errorCheck ){
-		file.saveFile(txt.getText());
+	public Future<SessionError> saveFile( final boolean errorCheck ){
+		//Still waiting on the host, what's in the box isn't the file
+		if( !loaded )
+			return null;
+
+		Future<SessionError> save = AsyncSymitarSession.forFile(file).saveFile(file, txt.getText(), new AsyncSymitarSession.Callback<SessionError>(){
+			public void done(SessionError error) {
+				if( error != null && error != SessionError.NONE )
+					error.showError();
+
+				if( !isDisposed() )
+					fileSaved(errorCheck);
+			}
+		});
+
 		commitUndo();
 		modified = false;
 		updateModified();
 
+		return save;
+	}
+
+	private void fileSaved( boolean errorCheck ){
 		//If this was an include file to some other files we are currently ediditing, we must update those
 		//We also want to do it before the error checker, so any errors with include files get put in asap
 		if( parser.needRefreshIncludes() )
@@ -1609,7 +1655,6 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 		}
 
 		MessageBox dialog = new MessageBox(Display.getCurrent().getActiveShell(),SWT.YES | SWT.NO | SWT.ICON_QUESTION);
-		MessageBox dialog2 = null;
 
 		dialog.setText("Confirm Repgen Installation");
 		dialog.setMessage("Are you sure you want to save this file and install this repgen?");
@@ -1617,22 +1662,35 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 		if( !confirm || dialog.open() == SWT.YES ){
 			getShell().setCursor(getDisplay().getSystemCursor(SWT.CURSOR_WAIT));
 
+			//The sym's queue runs these in order, so the install sees the save
 			if(modified) saveFile(true);
-			ErrorCheckResult result = RepDevMain.SYMITAR_SESSIONS.get(sym).installRepgen(file.getName());
-
-			getShell().setCursor(getDisplay().getSystemCursor(SWT.CURSOR_ARROW));
 
+			AsyncSymitarSession.forSym(sym).installRepgen(file.getName(), new AsyncSymitarSession.Callback<ErrorCheckResult>(){
+				public void done(ErrorCheckResult result) {
+					if( !getShell().isDisposed() )
+						getShell().setCursor(getDisplay().getSystemCursor(SWT.CURSOR_ARROW));
 
-			dialog2 = new MessageBox(Display.getCurrent().getActiveShell(),SWT.OK | ( result.getType() == ErrorCheckResult.Type.INSTALLED_SUCCESSFULLY ? SWT.ICON_INFORMATION : SWT.ICON_ERROR ));
-			dialog2.setText("Installation Result");
+					showInstallResult(getShell(), result);
+				}
+			});
+		}
+	}
 
-			if( result.getType() != ErrorCheckResult.Type.INSTALLED_SUCCESSFULLY )
-				dialog2.setMessage("Error Installing Repgen: \n" + result.getErrorMessage());
-			else
-				dialog2.setMessage("Repgen Installed, Size: " + result.getInstallSize());
+	/**
+	 * Result box for installs, shared with the project tree's install
+	 */
+	public static void showInstallResult(Shell shell, ErrorCheckResult result) {
+		MessageBox dialog = new MessageBox(shell,SWT.OK | ( result != null && result.getType() == ErrorCheckResult.Type.INSTALLED_SUCCESSFULLY ? SWT.ICON_INFORMATION : SWT.ICON_ERROR ));
+		dialog.setText("Installation Result");
+
+		if( result == null )
+			dialog.setMessage("Error Installing RepGen: \nThe File may not, currently exist on Symitar");
+		else if( result.getType() != ErrorCheckResult.Type.INSTALLED_SUCCESSFULLY )
+			dialog.setMessage("Error Installing Repgen: \n" + result.getErrorMessage());
+		else
+			dialog.setMessage("Repgen Installed, Size: " + result.getInstallSize());
 
-			dialog2.open();
-		}
+		dialog.open();
 	}
 
 	public void surroundEachLineWith(String start, String end, boolean escapeBadChars) {
@@ -1735,7 +1793,7 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 		boolean found = false;
 		Token cur = null;
 		int tokloc = 0;
-		ArrayList<Token> tokens = null;
+		TokenList tokens = null;
 		ArrayList<Token> redrawTokens = new ArrayList<Token>();
 
 		RepDevMain.mainShell.setLineColumn();
@@ -1755,15 +1813,13 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 
 		tokens = parser.getLtokens();
 
-		//Find your current token
-		for( Token tok: tokens ) {
-			tokloc++;
+		//Find your current token, tokloc ends up just past it
+		tokloc = tokens.firstEndingAt(txt.getCaretOffset());
 
-			if(txt.getCaretOffset() >= tok.getStart()  && txt.getCaretOffset() <= tok.getEnd()) {
-				cur = tok;
-				break;
-			}
-		}
+		if( tokloc < tokens.size() && txt.getCaretOffset() >= tokens.get(tokloc).getStart() )
+			cur = tokens.get(tokloc);
+
+		tokloc++;
 
 		//Clear all other special backgrounds, possibly move this up to previous loop in future to make faster
 		for( Token tok : tokens){
@@ -1776,7 +1832,7 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 
 		// Refresh the Section Info
 		if(prevTxtLine != txt.getLineAtOffset(txt.getCaretOffset())){
-			sec.refreshList(tokens, txt.getText());
+			sec.refreshList(parser.copyTokens(), PieceTableContent.snapshot(txt));
 			prevTxtLine = txt.getLineAtOffset(txt.getCaretOffset());
 		}
 
@@ -1795,17 +1851,19 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 				//tokloc is already set at next token since it was set before the break in the for loop above
 				//All this messy code is to differentiate between starts and ends that are the same
 				while( tokloc < tokens.size() ) {
-					if( tokens.get(tokloc).isHead() && 
-							(tokens.get(tokloc).getCDepth() == 0 ||tokens.get(tokloc).getStr().equals("["))&&
-							((!tokens.get(tokloc).inDate() || tokens.get(tokloc).getStr().equals("'")) && tStack.size() == 0 || !tStack.peek().getStr().equals("\'")) && 
-							((!tokens.get(tokloc).inString() || tokens.get(tokloc).getStr().equals("\"")) && tStack.size() == 0 || !tStack.peek().getStr().equals("\"")))
+					Token tok = tokens.get(tokloc);
+
+					if( tok.isHead() && 
+							(tok.getCDepth() == 0 ||tok.getStr().equals("["))&&
+							((!tok.inDate() || tok.getStr().equals("'")) && tStack.size() == 0 || !tStack.peek().getStr().equals("\'")) && 
+							((!tok.inString() || tok.getStr().equals("\"")) && tStack.size() == 0 || !tStack.peek().getStr().equals("\"")))
 					{
-						tStack.push(tokens.get(tokloc));
+						tStack.push(tok);
 					}
-					else if( tokens.get(tokloc).isEnd() && 
-							( tokens.get(tokloc).getCDepth() == 0 ||  tokens.get(tokloc).getStr().equals("]")) && 
-							(!tokens.get(tokloc).inDate() ||  tokens.get(tokloc).getStr().equals("'")) &&
-							(!tokens.get(tokloc).inString() ||  tokens.get(tokloc).getStr().equals("\"")) && tStack.size() > 0)
+					else if( tok.isEnd() && 
+							( tok.getCDepth() == 0 ||  tok.getStr().equals("]")) && 
+							(!tok.inDate() ||  tok.getStr().equals("'")) &&
+							(!tok.inString() ||  tok.getStr().equals("\"")) && tStack.size() > 0)
 					{
 						tStack.pop();						
 					}
@@ -1841,17 +1899,19 @@ public class EditorComposite extends Composite implements TabTextEditorView {
 
 				//All this messy code is to differentiate between starts and ends that are the same
 				while( tokloc >=0 ) {
-					if( tokens.get(tokloc).isEnd() && 
-							( tokens.get(tokloc).getCDepth() == 0 ||  tokens.get(tokloc).getStr().equals("]")) && 
-							((!tokens.get(tokloc).inDate() ||  tokens.get(tokloc).getStr().equals("'")) && tStack.size() == 0 || !tStack.peek().getStr().equals("\'")) &&
-							((!tokens.get(tokloc).inString() ||  tokens.get(tokloc).getStr().equals("\"")) && tStack.size() == 0 || !tStack.peek().getStr().equals("\"")))
+					Token tok = tokens.get(tokloc);
+
+					if( tok.isEnd() && 
+							( tok.getCDepth() == 0 ||  tok.getStr().equals("]")) && 
+							((!tok.inDate() ||  tok.getStr().equals("'")) && tStack.size() == 0 || !tStack.peek().getStr().equals("\'")) &&
+							((!tok.inString() ||  tok.getStr().equals("\"")) && tStack.size() == 0 || !tStack.peek().getStr().equals("\"")))
 					{
-						tStack.push(tokens.get(tokloc));					
+						tStack.push(tok);					
 					}
-					else if( tokens.get(tokloc).isHead() && 
-							(tokens.get(tokloc).getCDepth() == 0 ||tokens.get(tokloc).getStr().equals("["))&&
-							((!tokens.get(tokloc).inDate() || tokens.get(tokloc).getStr().equals("'"))) && 
-							((!tokens.get(tokloc).inString() || tokens.get(tokloc).getStr().equals("\""))) && tStack.size() > 0)
+					else if( tok.isHead() && 
+							(tok.getCDepth() == 0 ||tok.getStr().equals("["))&&
+							((!tok.inDate() || tok.getStr().equals("'"))) && 
+							((!tok.inString() || tok.getStr().equals("\""))) && tStack.size() > 0)
 					{
 						tStack.pop();	
 					}
@@ -19,7 +19,11 @@
 
 package com.repdev;
 
+import java.util.ArrayList;
+
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.events.FocusEvent;
 import org.eclipse.swt.events.FocusListener;
 import org.eclipse.swt.events.MouseAdapter;
@@ -281,30 +285,40 @@ public class FMShell {
 				if( seq != -1){
 					stillRunning = true;
 					
-					shell.getDisplay().timerExec(500, new Runnable(){
-						public void run() {
-							if( shell == null || shell.isDisposed() )
-								return;
+					final Display display = shell.getDisplay();
+					
+					final JobMonitor.JobListener listener = new JobMonitor.JobListener(){
+						public void jobFinished(final int sym, int seq) {
+							System.out.println("Done, loading FM Sequence result");
+							
+							//Work around, ugh: For some reason, requesting the whole result.getTitle() that we created before doesn't ever return any results, even though it works manually in Epysis
+							//So, we just parse out the last few unique digits of it to look for
+							final ArrayList<Sequence> seqs = RepDevMain.SYMITAR_SESSIONS.get(sym).getFMSeqs(result.getResultTitle(), 10,1);
 							
-							if( RepDevMain.SYMITAR_SESSIONS.get(sym).isSeqRunning(seq) ){
-								shell.getDisplay().timerExec(1000, this);
-							}
-							else
-							{
-								stillRunning = false;
-								
-								System.out.println("Done, loading FM Sequence result");
-								
-								//Work around, ugh: For some reason, requesting the whole result.getTitle() that we created before doesn't ever return any results, even though it works manually in Epysis
-								//So, we just parse out the last few unique digits of it to look for
-								for( Sequence seq : RepDevMain.SYMITAR_SESSIONS.get(sym).getFMSeqs(result.getResultTitle(), 10,1) ){	
-									RepDevMain.mainShell.openFile(seq, sym);
+							display.asyncExec(new Runnable(){
+								public void run() {
+									stillRunning = false;
+									
+									if( shell.isDisposed() )
+										return;
+									
+									for( Sequence seq : seqs ){	
+										RepDevMain.mainShell.openFile(seq, sym);
+									}
+									
+									shell.setCursor(shell.getDisplay().getSystemCursor(SWT.CURSOR_ARROW));
+									shell.close();
 								}
-								
-								
-								shell.setCursor(shell.getDisplay().getSystemCursor(SWT.CURSOR_ARROW));
-								shell.close();
-							}
+							});
+						}
+					};
+					
+					JobMonitor.forSym(sym).watch(seq, listener);
+					
+					//Nobody left to tell once the dialog is gone
+					shell.addDisposeListener(new DisposeListener(){
+						public void widgetDisposed(DisposeEvent e) {
+							JobMonitor.forSym(sym).unwatch(seq, listener);
 						}
 					});
 				}
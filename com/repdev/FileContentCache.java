@@ -0,0 +1,342 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * On disk copy of remote files, so opening or parsing a file that hasn't changed on the host doesn't download it again.
+ *
+ * A copy is only used if the modified date and size the host lists for the file still match what they were when
+ * we saved it. The listing comes from FileListCache, so a change someone else made on the host can take up to its
+ * TTL to show up, our own saves clear it. Both are part of the file name on disk: cache/sym/TYPE/NAME.modified.size, so the whole index
+ * can be rebuilt from a directory listing. Least recently used copies are thrown away once the cache goes over
+ * Config.getFileCacheSize().
+ *
+ * The host only lists modified times to the minute, so two saves of the same size in the same minute look the same.
+ * A copy isn't kept until the file has gone SETTLE_TIME without changing, after that any change gets a later minute.
+ *
+ * Reports are never cached.
+ *
+ */
+public class FileContentCache {
+	private static final String CACHE_DIR = "cache";
+	private static final String ENCODING = "UTF-8";
+	private static final long SETTLE_TIME = 120000; //ms, a minute for the listing's resolution and one for the host's clock
+
+	//sym/TYPE/NAME -> file on disk, in least to most recently used order
+	private static LinkedHashMap<String, File> entries;
+	private static long totalSize = 0;
+	private static int hits = 0, misses = 0;
+
+	private static String key(int sym, FileType type, String name) {
+		return sym + "/" + type + "/" + name;
+	}
+
+	/**
+	 * Builds the index from whatever is in the cache folder, oldest access first
+	 */
+	private static void load() {
+		if( entries != null )
+			return;
+
+		entries = new LinkedHashMap<String, File>(64, 0.75f, true);
+		totalSize = 0;
+
+		ArrayList<File> found = new ArrayList<File>();
+		File[] syms = new File(CACHE_DIR).listFiles();
+
+		if( syms != null )
+			for( File sym : syms ) {
+				File[] types = sym.listFiles();
+
+				if( types != null )
+					for( File type : types ) {
+						File[] files = type.listFiles();
+
+						if( files != null )
+							found.addAll(Arrays.asList(files));
+					}
+			}
+
+		File[] sorted = found.toArray(new File[found.size()]);
+		Arrays.sort(sorted, new Comparator<File>(){
+			public int compare(File a, File b) {
+				return a.lastModified() < b.lastModified() ? -1 : (a.lastModified() == b.lastModified() ? 0 : 1);
+			}
+		});
+
+		for( File file : sorted ) {
+			String name = stripStamp(file.getName());
+			String key;
+
+			try {
+				key = key(Integer.parseInt(file.getParentFile().getParentFile().getName()), FileType.valueOf(file.getParentFile().getName()), name);
+			} catch (Exception e) {
+				name = null;
+				key = null;
+			}
+
+			//Not something we put there
+			if( name == null ) {
+				file.delete();
+				continue;
+			}
+
+			File old = entries.put(key, file);
+
+			if( old != null ) {
+				totalSize -= old.length();
+				old.delete();
+			}
+
+			totalSize += file.length();
+		}
+	}
+
+	/**
+	 * @return File name without the trailing .modified.size, or null if it doesn't have one
+	 */
+	private static String stripStamp(String fileName) {
+		int size = fileName.lastIndexOf('.');
+
+		if( size <= 0 )
+			return null;
+
+		int modified = fileName.lastIndexOf('.', size - 1);
+
+		if( modified <= 0 )
+			return null;
+
+		return fileName.substring(0, modified);
+	}
+
+	private static File stampedFile(int sym, FileType type, String name, long modified, long size) {
+		return new File(CACHE_DIR + File.separator + sym + File.separator + type + File.separator + name + "." + modified + "." + size);
+	}
+
+	/**
+	 * Contents of a remote file, from the cache if the host says it hasn't changed, otherwise from the host
+	 *
+	 * @param file
+	 * @return Same as SymitarSession.getFile
+	 */
+	public static String getData(SymitarFile file) {
+		return getData(Collections.singletonList(file)).get(file);
+	}
+
+	/**
+	 * Same as getData for each file, but the ones that aren't in the cache are downloaded in one getFiles batch
+	 * instead of a round trip each. The files all have to be on the same sym.
+	 *
+	 * @return File -> contents, null for files that couldn't be read
+	 */
+	public static HashMap<SymitarFile, String> getData(Collection<SymitarFile> files) {
+		HashMap<SymitarFile, String> results = new HashMap<SymitarFile, String>();
+		HashMap<SymitarFile, SymitarFile> listings = new HashMap<SymitarFile, SymitarFile>();
+		ArrayList<SymitarFile> fetch = new ArrayList<SymitarFile>();
+		SymitarSession session = null;
+
+		for( SymitarFile file : files ) {
+			session = RepDevMain.SYMITAR_SESSIONS.get(file.getSym());
+
+			if( file.getType() == FileType.REPORT ) {
+				fetch.add(file);
+				continue;
+			}
+
+			//Goes by the listing cache, only asks the host if it has nothing recent for this type
+			SymitarFile listed = null;
+
+			for( SymitarFile cur : session.getFileList(file.getType(), file.getName()) )
+				if( cur.getName().equals(file.getName()) )
+					listed = cur;
+
+			String data = null;
+
+			if( listed != null && listed.getModified() != null ) {
+				listings.put(file, listed);
+				data = lookup(file, listed.getModified().getTime(), listed.getSize());
+			}
+
+			if( data != null )
+				results.put(file, data);
+			else
+				fetch.add(file);
+		}
+
+		if( fetch.isEmpty() )
+			return results;
+
+		HashMap<SymitarFile, String> fetched = session.getFiles(fetch);
+
+		for( SymitarFile file : fetch ) {
+			SymitarFile listed = listings.get(file);
+			String data = fetched.get(file);
+
+			results.put(file, data);
+
+			//Over 2MB we only get a preview, don't keep that. Recently changed files could still change without a new stamp.
+			if( data != null && listed != null && listed.getSize() < 2097152 && System.currentTimeMillis() - listed.getModified().getTime() >= SETTLE_TIME )
+				store(file, listed.getModified().getTime(), listed.getSize(), data);
+		}
+
+		return results;
+	}
+
+	private static synchronized String lookup(SymitarFile file, long modified, long size) {
+		load();
+
+		File cached = entries.get(key(file.getSym(), file.getType(), file.getName()));
+
+		if( cached == null || !cached.equals(stampedFile(file.getSym(), file.getType(), file.getName(), modified, size)) ) {
+			misses++;
+			return null;
+		}
+
+		StringBuilder data = new StringBuilder((int) cached.length());
+		char[] buf = new char[8192];
+		int read;
+
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(cached), ENCODING));
+
+			try {
+				while( (read = in.read(buf)) != -1 )
+					data.append(buf, 0, read);
+			}
+			finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			remove(file.getSym(), file.getType(), file.getName());
+			misses++;
+			return null;
+		}
+
+		cached.setLastModified(System.currentTimeMillis());
+		hits++;
+
+		return data.toString();
+	}
+
+	private static synchronized void store(SymitarFile file, long modified, long size, String data) {
+		load();
+		remove(file.getSym(), file.getType(), file.getName());
+
+		File cached = stampedFile(file.getSym(), file.getType(), file.getName(), modified, size);
+		cached.getParentFile().mkdirs();
+
+		try {
+			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(cached), ENCODING));
+
+			try {
+				out.write(data);
+			}
+			finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			cached.delete();
+			return;
+		}
+
+		entries.put(key(file.getSym(), file.getType(), file.getName()), cached);
+		totalSize += cached.length();
+
+		trim();
+	}
+
+	/**
+	 * Throws out least recently used files until we are under the size limit
+	 */
+	private static void trim() {
+		long max = Config.getFileCacheSize() * 1024L * 1024L;
+		Iterator<Map.Entry<String, File>> eldest = entries.entrySet().iterator();
+
+		while( totalSize > max && eldest.hasNext() ) {
+			File file = eldest.next().getValue();
+
+			totalSize -= file.length();
+			file.delete();
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Drop the cached copy of a file, call whenever it is saved, renamed or deleted on the host
+	 */
+	public static synchronized void remove(int sym, FileType type, String name) {
+		load();
+
+		File cached = entries.remove(key(sym, type, name));
+
+		if( cached != null ) {
+			totalSize -= cached.length();
+			cached.delete();
+		}
+	}
+
+	public static synchronized void clear() {
+		load();
+
+		for( File file : entries.values() )
+			file.delete();
+
+		entries.clear();
+		totalSize = 0;
+	}
+
+	public static synchronized int getFileCount() {
+		load();
+		return entries.size();
+	}
+
+	public static synchronized long getTotalSize() {
+		load();
+		return totalSize;
+	}
+
+	public static synchronized int getHits() {
+		return hits;
+	}
+
+	public static synchronized int getMisses() {
+		return misses;
+	}
+}
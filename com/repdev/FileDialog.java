@@ -54,6 +54,7 @@ public class FileDialog {
 	enum TABLE_COLUMN{NAME, SIZE, DATE};
 	
 	boolean listLoaded = false;
+	private int listRequest = 0;
 
 	public enum Mode {
 		SAVE, OPEN,
@@ -175,29 +176,11 @@ public class FileDialog {
 
 		nameText.addSelectionListener(new SelectionAdapter() {
 			public void widgetDefaultSelected(SelectionEvent e) {
- 				createList();
-
-				if (table.getItemCount() == 1 && !isTemplate()) {
-					if (mode == Mode.SAVE) {
-						MessageBox dialog = new MessageBox(shell, SWT.ICON_QUESTION | SWT.OK | SWT.CANCEL);
-						dialog.setText("Confirm Overwrite");
-						dialog.setMessage("This file already exists, are you sure you want to overwrite it?");
-
-						if (dialog.open() == SWT.CANCEL)
-							return;
+ 				createList(new Runnable(){
+					public void run() {
+						listEntered();
 					}
-
-					files.add((SymitarFile) (table.getItems()[0].getData()));
-					shell.close();
-				} else if (mode == Mode.SAVE && nameText.getText().trim().length() > 0 && !isTemplate()) {
-					if( dir == null)
-						files.add(new SymitarFile(sym,nameText.getText().trim(), FileType.valueOf(typeCombo.getText())));
-					else
-						files.add(new SymitarFile(dir,nameText.getText().trim(), FileType.valueOf(typeCombo.getText())));
-					
-					shell.close();
-				}
-
+				});
 			}
 		});
 
@@ -219,37 +202,13 @@ public class FileDialog {
 		ok.addSelectionListener(new SelectionAdapter() {
 			public void widgetSelected(SelectionEvent e) {
 				if (!listLoaded)
-					createList();
-
-				if (mode == Mode.OPEN && table.getSelectionIndex() != -1 ) {
-					for (TableItem cur : table.getSelection())
-						files.add((SymitarFile) cur.getData());
-
-					shell.close();
-				}
-				
-				if( mode == Mode.SAVE){
-					if( table.getSelectionIndex() != -1 ){
-						MessageBox dialog = new MessageBox(shell, SWT.ICON_QUESTION | SWT.OK | SWT.CANCEL);
-						dialog.setText("Confirm Overwrite");
-						dialog.setMessage("This file already exists, are you sure you want to overwrite it?");
-
-						if (dialog.open() == SWT.CANCEL)
-							return;
-						
-						files.add((SymitarFile)table.getSelection()[0].getData());
-						shell.close();
-					}
-					else
-					{
-						if( dir == null)
-							files.add(new SymitarFile(sym,nameText.getText().trim(), FileType.valueOf(typeCombo.getText())));
-						else
-							files.add(new SymitarFile(dir,nameText.getText().trim(),  FileType.valueOf(typeCombo.getText())));
-						
-						shell.close();
-					}
-				}
+					createList(new Runnable(){
+						public void run() {
+							okPressed();
+						}
+					});
+				else
+					okPressed();
 			}
 		});
 
@@ -306,26 +265,111 @@ public class FileDialog {
 		shell.open();
 	}
 
+	/**
+	 * Enter in the name box, once the list for it is in
+	 */
+	private void listEntered() {
+		if (table.getItemCount() == 1 && !isTemplate()) {
+			if (mode == Mode.SAVE) {
+				MessageBox dialog = new MessageBox(shell, SWT.ICON_QUESTION | SWT.OK | SWT.CANCEL);
+				dialog.setText("Confirm Overwrite");
+				dialog.setMessage("This file already exists, are you sure you want to overwrite it?");
+
+				if (dialog.open() == SWT.CANCEL)
+					return;
+			}
+
+			files.add((SymitarFile) (table.getItems()[0].getData()));
+			shell.close();
+		} else if (mode == Mode.SAVE && nameText.getText().trim().length() > 0 && !isTemplate()) {
+			if( dir == null)
+				files.add(new SymitarFile(sym,nameText.getText().trim(), FileType.valueOf(typeCombo.getText())));
+			else
+				files.add(new SymitarFile(dir,nameText.getText().trim(), FileType.valueOf(typeCombo.getText())));
+			
+			shell.close();
+		}
+	}
+
+	private void okPressed() {
+		if (mode == Mode.OPEN && table.getSelectionIndex() != -1 ) {
+			for (TableItem cur : table.getSelection())
+				files.add((SymitarFile) cur.getData());
+
+			shell.close();
+		}
+		
+		if( mode == Mode.SAVE){
+			if( table.getSelectionIndex() != -1 ){
+				MessageBox dialog = new MessageBox(shell, SWT.ICON_QUESTION | SWT.OK | SWT.CANCEL);
+				dialog.setText("Confirm Overwrite");
+				dialog.setMessage("This file already exists, are you sure you want to overwrite it?");
+
+				if (dialog.open() == SWT.CANCEL)
+					return;
+				
+				files.add((SymitarFile)table.getSelection()[0].getData());
+				shell.close();
+			}
+			else
+			{
+				if( dir == null)
+					files.add(new SymitarFile(sym,nameText.getText().trim(), FileType.valueOf(typeCombo.getText())));
+				else
+					files.add(new SymitarFile(dir,nameText.getText().trim(),  FileType.valueOf(typeCombo.getText())));
+				
+				shell.close();
+			}
+		}
+	}
+
 	// TODO: Finish up with other template forms
 	private boolean isTemplate() {
 		return nameText.getText().contains("+");
 	}
 
 	private void createList() {
+		createList(null);
+	}
+
+	/**
+	 * Refills the table, sym listings come back in the background so the dialog doesn't hang on the host
+	 * @param then Run once the new list is in, if the dialog is still open
+	 */
+	private void createList(final Runnable then) {
+		shell.setCursor(shell.getDisplay().getSystemCursor(SWT.CURSOR_WAIT));
+
+		if( dir == null ){
+			final int request = ++listRequest;
+
+			AsyncSymitarSession.forSym(sym).getFileList(FileType.valueOf(typeCombo.getText()), nameText.getText(), new AsyncSymitarSession.Callback<ArrayList<SymitarFile>>(){
+				public void done(ArrayList<SymitarFile> fileList) {
+					//Closed, or a newer list was asked for since
+					if( shell.isDisposed() || request != listRequest )
+						return;
+
+					fillList(fileList);
+
+					if( then != null )
+						then.run();
+				}
+			});
+		}
+		else{
+			fillList(Util.getFileList(dir, nameText.getText()));
+
+			if( then != null )
+				then.run();
+		}
+	}
+
+	private void fillList(ArrayList<SymitarFile> fileList) {
 		table.removeAll();
-		ArrayList<SymitarFile> fileList = new ArrayList<SymitarFile>();
-		
 		table.setRedraw(false);
-		shell.setCursor(shell.getDisplay().getSystemCursor(SWT.CURSOR_WAIT));
 		
 		try{
-			if( dir == null ){
-				SymitarSession session = RepDevMain.SYMITAR_SESSIONS.get(sym);
-				fileList = session.getFileList(FileType.valueOf(typeCombo.getText()), nameText.getText());
-			}
-			else{
-				fileList = Util.getFileList(dir, nameText.getText());
-			}
+			if( fileList == null )
+				fileList = new ArrayList<SymitarFile>();
 			
 			// If the table sort column and direction has not been set, set them to default.
 			if(table.getSortColumn() == null){
@@ -0,0 +1,207 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Short lived cache of file listings for one sym, so things like fileExists don't need a List round trip every time.
+ *
+ * Listings are kept by type and search pattern. Once we have the full "+" listing for a type,
+ * any other pattern for that type is answered from it. Saving, removing or renaming a file throws
+ * away everything we have for that type, once the host has done it. A listing that was being taken
+ * while that happened isn't kept, it could be from before the change.
+ *
+ * There is one cache per sym, shared by all the connections to it.
+ *
+ */
+public class FileListCache {
+	private static final HashMap<Integer, FileListCache> caches = new HashMap<Integer, FileListCache>();
+	private static final long TTL = 60000; //ms a listing is trusted for
+
+	private final HashMap<String, Listing> listings = new HashMap<String, Listing>();
+	private int hits = 0, misses = 0;
+	private int changes = 0; //Bumped by invalidate() and clear()
+
+	private static class Listing {
+		final long time = System.currentTimeMillis();
+		final ArrayList<SymitarFile> files;
+
+		Listing(ArrayList<SymitarFile> files) {
+			this.files = files;
+		}
+
+		boolean isFresh() {
+			return System.currentTimeMillis() - time < TTL;
+		}
+	}
+
+	public static synchronized FileListCache forSym(int sym) {
+		FileListCache cache = caches.get(sym);
+
+		if( cache == null ) {
+			cache = new FileListCache();
+			caches.put(sym, cache);
+		}
+
+		return cache;
+	}
+
+	private static String normalize(String pattern) {
+		if( pattern == null || pattern.trim().equals("") )
+			return "+";
+
+		return pattern.trim();
+	}
+
+	private static String key(FileType type, String pattern) {
+		return type + "~" + pattern;
+	}
+
+	/**
+	 * Symitar style match, + is any number of any chars, everything else is literal and case doesn't matter
+	 *
+	 * @param pattern
+	 * @param name
+	 * @return
+	 */
+	public static boolean matches(String pattern, String name) {
+		return matches(pattern.toUpperCase(), 0, name.toUpperCase(), 0);
+	}
+
+	private static boolean matches(String pattern, int p, String name, int n) {
+		while( p < pattern.length() ) {
+			char cur = pattern.charAt(p);
+
+			if( cur == '+' ) {
+				//Collapse runs of +, then try every place the rest could start
+				while( p < pattern.length() && pattern.charAt(p) == '+' )
+					p++;
+
+				if( p == pattern.length() )
+					return true;
+
+				for( int i = n; i < name.length(); i++ )
+					if( matches(pattern, p, name, i) )
+						return true;
+
+				return false;
+			}
+
+			if( n >= name.length() || name.charAt(n) != cur )
+				return false;
+
+			p++;
+			n++;
+		}
+
+		return n == name.length();
+	}
+
+	/**
+	 * @param type
+	 * @param pattern
+	 * @return Copy of the cached listing, or null if we have to ask the host
+	 */
+	public synchronized ArrayList<SymitarFile> get(FileType type, String pattern) {
+		pattern = normalize(pattern);
+
+		Listing exact = listings.get(key(type, pattern));
+
+		if( exact != null && exact.isFresh() ) {
+			hits++;
+			return new ArrayList<SymitarFile>(exact.files);
+		}
+
+		Listing all = listings.get(key(type, "+"));
+
+		if( all != null && all.isFresh() ) {
+			ArrayList<SymitarFile> result = new ArrayList<SymitarFile>();
+
+			for( SymitarFile file : all.files )
+				if( matches(pattern, file.getName()) )
+					result.add(file);
+
+			hits++;
+			return result;
+		}
+
+		misses++;
+		return null;
+	}
+
+	/**
+	 * @param type
+	 * @return true if the full listing for this type is cached, so any pattern can be answered locally
+	 */
+	public synchronized boolean hasFullListing(FileType type) {
+		Listing all = listings.get(key(type, "+"));
+
+		return all != null && all.isFresh();
+	}
+
+	/**
+	 * @return Get this before asking the host for a listing, and pass it to put()
+	 */
+	public synchronized int getChanges() {
+		return changes;
+	}
+
+	/**
+	 * @param changes getChanges() from before the listing was asked for
+	 */
+	public synchronized void put(FileType type, String pattern, ArrayList<SymitarFile> files, int changes) {
+		//Files changed while the host was listing, this could be from before that
+		if( changes != this.changes )
+			return;
+
+		listings.put(key(type, normalize(pattern)), new Listing(new ArrayList<SymitarFile>(files)));
+	}
+
+	/**
+	 * Forget every listing of this type, call after anything that changes files on the host
+	 * @param type
+	 */
+	public synchronized void invalidate(FileType type) {
+		Iterator<String> keys = listings.keySet().iterator();
+		String prefix = type + "~";
+
+		changes++;
+
+		while( keys.hasNext() )
+			if( keys.next().startsWith(prefix) )
+				keys.remove();
+	}
+
+	public synchronized void clear() {
+		changes++;
+		listings.clear();
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+}
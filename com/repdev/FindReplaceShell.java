@@ -317,11 +317,9 @@ public class FindReplaceShell {
 		if( !replace )
 			return false;
 		
-		String text = txt.getText();
 		String find = findText.getText(), replace = replaceText.getText(), selection = txt.getSelectionText();
 
 		if( !caseButton.getSelection() ){
-			text = text.toLowerCase();
 			find = find.toLowerCase();
 			selection = selection.toLowerCase();			
 		}
@@ -344,25 +342,43 @@ public class FindReplaceShell {
 		infoLabel.setText("");
 	}
 
+	/**
+	 * String.indexOf that works on the editor's text in place, instead of copying (and lower casing) the whole document
+	 */
+	private static int indexOf(CharSequence text, String find, int from, boolean ignoreCase) {
+		int last = text.length() - find.length();
+
+		for( int i = Math.max(0, from); i <= last; i++ ) {
+			int j = 0;
+
+			while( j < find.length() && same(text.charAt(i + j), find.charAt(j), ignoreCase) )
+				j++;
+
+			if( j == find.length() )
+				return i;
+		}
+
+		return -1;
+	}
+
+	private static boolean same(char a, char b, boolean ignoreCase) {
+		return a == b || (ignoreCase && Character.toLowerCase(a) == Character.toLowerCase(b));
+	}
+
 	protected boolean find() {
 		init();
 				
-		String text = txt.getText();
-		String find = findText.getText(), replace = replaceText.getText();
+		CharSequence text = PieceTableContent.getCharSequence(txt);
+		String find = findText.getText();
+		boolean ignoreCase = !caseButton.getSelection();
 		int nextPos, lastPos;
 		
-		if( !caseButton.getSelection() ){
-			text = text.toLowerCase();
-			find = find.toLowerCase();
-			replace = replace.toLowerCase();
-		}
-		
 		if( forwardButton.getSelection() )
 		{
-			nextPos = text.indexOf(find, txt.getCaretOffset());
+			nextPos = indexOf(text, find, txt.getCaretOffset(), ignoreCase);
 			
 			if( nextPos == -1 && wrapButton.getSelection() ){
-				nextPos = text.indexOf(find);
+				nextPos = indexOf(text, find, 0, ignoreCase);
 				
 				if( nextPos >= txt.getCaretOffset() )
 					nextPos = -1;
@@ -374,7 +390,7 @@ public class FindReplaceShell {
 			lastPos = -1;
 			
 			while(true){
-				nextPos = text.indexOf(find, nextPos + 1);
+				nextPos = indexOf(text, find, nextPos + 1, ignoreCase);
 				
 				if( nextPos + find.length() >= txt.getCaretOffset() || nextPos == -1)
 				{
@@ -390,7 +406,7 @@ public class FindReplaceShell {
 				lastPos = -1;
 				
 				while(true){
-					nextPos = text.indexOf(find, txt.getCaretOffset());
+					nextPos = indexOf(text, find, txt.getCaretOffset(), ignoreCase);
 					
 					if( nextPos + find.length() < txt.getCaretOffset() || nextPos == lastPos)
 					{
@@ -0,0 +1,248 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches batch jobs we started until they leave the batch queues, and tells whoever asked when they are done.
+ *
+ * All the jobs on a sym are checked with one batch queue listing per interval, from a background thread, instead of
+ * every dialog polling its own seq from the UI thread. Jobs that just started are checked every second, the interval
+ * stretches out the longer the newest job on the sym has been running, up to MAX_INTERVAL.
+ *
+ * Listeners are called from their own thread pool, not the one thread that checks every sym, so a listener that
+ * looks things up on the host doesn't hold up the checks. Use Display.asyncExec to touch widgets.
+ *
+ */
+public class JobMonitor {
+	private static final long MIN_INTERVAL = 1000, MAX_INTERVAL = 15000; //ms
+
+	private static final HashMap<Integer, JobMonitor> monitors = new HashMap<Integer, JobMonitor>();
+
+	private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Job Monitor");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private static final ExecutorService notifier = Executors.newCachedThreadPool(new ThreadFactory(){
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Job Listener");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final int sym;
+	private final HashMap<Integer, Job> jobs = new HashMap<Integer, Job>();
+	private final HashMap<Integer, Job> notifying = new HashMap<Integer, Job>(); //Finished, listeners not called yet
+	private ScheduledFuture<?> next;
+	private long nextTime;
+
+	public interface JobListener {
+		void jobFinished(int sym, int seq);
+	}
+
+	private static class Job {
+		final int seq;
+		final long started = System.currentTimeMillis();
+		final ArrayList<JobListener> listeners = new ArrayList<JobListener>();
+
+		Job(int seq) {
+			this.seq = seq;
+		}
+	}
+
+	private JobMonitor(int sym) {
+		this.sym = sym;
+	}
+
+	public static synchronized JobMonitor forSym(int sym) {
+		JobMonitor monitor = monitors.get(sym);
+
+		if( monitor == null ) {
+			monitor = new JobMonitor(sym);
+			monitors.put(sym, monitor);
+		}
+
+		return monitor;
+	}
+
+	/**
+	 * Starts watching a batch seq, the listener is called once when it is no longer in any batch queue
+	 *
+	 * @param seq
+	 * @param listener
+	 */
+	public synchronized void watch(int seq, JobListener listener) {
+		Job job = jobs.get(seq);
+
+		if( job == null ) {
+			job = new Job(seq);
+			jobs.put(seq, job);
+		}
+
+		job.listeners.add(listener);
+		schedule(MIN_INTERVAL);
+	}
+
+	/**
+	 * Stops calling listener about seq, say when the dialog waiting on it is closed.
+	 * The seq is dropped once nobody is listening for it anymore.
+	 */
+	public synchronized void unwatch(int seq, JobListener listener) {
+		Job job = jobs.get(seq);
+
+		if( job != null ) {
+			job.listeners.remove(listener);
+
+			if( job.listeners.isEmpty() )
+				jobs.remove(seq);
+		}
+
+		job = notifying.get(seq);
+
+		if( job != null )
+			job.listeners.remove(listener);
+	}
+
+	/**
+	 * @return Number of jobs still being watched on this sym
+	 */
+	public synchronized int getJobCount() {
+		return jobs.size();
+	}
+
+	/**
+	 * Makes sure a check happens within delay ms, leaves an earlier one alone
+	 */
+	private void schedule(long delay) {
+		long when = System.currentTimeMillis() + delay;
+
+		if( next != null ) {
+			if( nextTime <= when )
+				return;
+
+			next.cancel(false);
+		}
+
+		nextTime = when;
+		next = scheduler.schedule(new Runnable(){
+			public void run() {
+				poll();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * New jobs get checked often, long runs less and less
+	 */
+	private long getInterval() {
+		long youngest = Long.MAX_VALUE;
+		long now = System.currentTimeMillis();
+
+		for( Job job : jobs.values() )
+			youngest = Math.min(youngest, now - job.started);
+
+		return Math.max(MIN_INTERVAL, Math.min(MAX_INTERVAL, youngest / 10));
+	}
+
+	private void poll() {
+		synchronized (this) {
+			next = null;
+
+			if( jobs.isEmpty() )
+				return;
+		}
+
+		ArrayList<Job> finished = new ArrayList<Job>();
+
+		try {
+			SymitarSession session = RepDevMain.SYMITAR_SESSIONS.get(sym);
+			HashSet<Integer> running = null;
+
+			if( session != null && session.isConnected() )
+				running = session.getRunningSeqs();
+
+			synchronized (this) {
+				//If we can't get the queues, there is nothing more to wait for, same as isSeqRunning returning false
+				for( Job job : new ArrayList<Job>(jobs.values()) )
+					if( running == null || !running.contains(job.seq) ) {
+						jobs.remove(job.seq);
+						notifying.put(job.seq, job);
+						finished.add(job);
+					}
+			}
+		} catch (RuntimeException e) {
+			//Try again next time around
+			e.printStackTrace();
+		}
+		finally {
+			synchronized (this) {
+				if( !jobs.isEmpty() )
+					schedule(getInterval());
+			}
+		}
+
+		for( final Job job : finished )
+			notifier.execute(new Runnable(){
+				public void run() {
+					notifyFinished(job);
+				}
+			});
+	}
+
+	private void notifyFinished(Job job) {
+		ArrayList<JobListener> listeners;
+
+		synchronized (this) {
+			listeners = new ArrayList<JobListener>(job.listeners);
+		}
+
+		for( JobListener listener : listeners ) {
+			//Unwatched since the job finished
+			synchronized (this) {
+				if( !job.listeners.contains(listener) )
+					continue;
+			}
+
+			try {
+				listener.jobFinished(sym, job.seq);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+
+		synchronized (this) {
+			notifying.remove(job.seq);
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.MessageBox;
+
+/**
+ * Keeps every open DirectSymitarSession from timing out, from one timer for all of them.
+ *
+ * Every CHECK_INTERVAL we look at each session, and send a WakeUp to the ones that have been quiet long enough that
+ * they would go past INTERVAL without talking to the host before the next check. So no session is ever idle for longer
+ * than INTERVAL, the same as when each one had its own timer, but busy ones don't get extra WakeUps. Keep alive stops for all syms together, NO_ACTIVITY_DELAY minutes after the last activity
+ * on any sym or at the terminate time in the options, whichever is later, and the user gets one warning for all of them.
+ *
+ * WakeUps run on a separate pool so a session that is stuck in a long call (like a repgen waiting on a prompt)
+ * can't hold up the rest, that pool has no threads unless a WakeUp is actually going.
+ *
+ */
+public class KeepAlive {
+	private static final long INTERVAL = 55000; //ms, longest a session goes without talking to the host
+	private static final long CHECK_INTERVAL = 5000; //ms
+	private static final int NO_ACTIVITY_DELAY = 20; //minutes
+	private static final int KEEP_ALIVE_WARNING = 30; //minutes
+
+	private static final ThreadFactory daemon = new ThreadFactory(){
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Keep Alive");
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
+	private static final ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(1, daemon);
+	private static final ThreadPoolExecutor wakers = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 5, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), daemon);
+
+	//Session -> WakeUp still in progress for it, if any
+	private static final LinkedHashMap<DirectSymitarSession, Future<?>> sessions = new LinkedHashMap<DirectSymitarSession, Future<?>>();
+	private static ScheduledFuture<?> tick;
+	private static long lastReport = 0;
+
+	public static synchronized void register(DirectSymitarSession session) {
+		sessions.put(session, null);
+
+		if( tick == null )
+			tick = timer.scheduleWithFixedDelay(new Runnable(){
+				public void run() {
+					try {
+						tick();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			}, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	public static synchronized void unregister(DirectSymitarSession session) {
+		sessions.remove(session);
+
+		if( sessions.isEmpty() && tick != null ) {
+			tick.cancel(false);
+			tick = null;
+		}
+	}
+
+	/**
+	 * @return When keep alive stops, the later of NO_ACTIVITY_DELAY after the last activity and the terminate time today
+	 */
+	private static long getTerminateTime() {
+		Calendar terminate = Calendar.getInstance();
+		terminate.set(Calendar.HOUR_OF_DAY, Config.getTerminateHour());
+		terminate.set(Calendar.MINUTE, Config.getTerminateMinute());
+		terminate.set(Calendar.SECOND, 0);
+		terminate.set(Calendar.MILLISECOND, 0);
+
+		return Math.max(RepDevMain.getLastActivity() + NO_ACTIVITY_DELAY * 60000L, terminate.getTimeInMillis());
+	}
+
+	private static synchronized void tick() {
+		long now = System.currentTimeMillis();
+		String time = new SimpleDateFormat("HH:mm:ss").format(new Date(now));
+		boolean neverTerminate = Config.getNeverTerminate();
+		long left = (getTerminateTime() - now) / 60000;
+
+		if( sessions.isEmpty() )
+			return;
+
+		ArrayList<Integer> syms = new ArrayList<Integer>();
+
+		for( DirectSymitarSession session : sessions.keySet() )
+			if( !syms.contains(session.getSym()) )
+				syms.add(session.getSym());
+
+		if( !neverTerminate && left <= 0 ) {
+			System.out.println(time + " Keep Alive (SYM " + join(syms) + ") Terminated");
+
+			sessions.clear();
+			tick.cancel(false);
+			tick = null;
+
+			showTerminated(syms);
+			return;
+		}
+
+		int sent = 0;
+
+		for( final DirectSymitarSession session : sessions.keySet() ) {
+			Future<?> pending = sessions.get(session);
+
+			//Talked to the host recently enough to last until the next check, or still stuck on the last WakeUp
+			if( now - session.getLastTraffic() < INTERVAL - CHECK_INTERVAL || (pending != null && !pending.isDone()) )
+				continue;
+
+			sessions.put(session, wakers.submit(new Runnable(){
+				public void run() {
+					session.wakeUp();
+				}
+			}));
+			sent++;
+		}
+
+		//Checks are frequent, only say something about once per INTERVAL
+		if( sent == 0 && now - lastReport < INTERVAL )
+			return;
+
+		lastReport = now;
+
+		if( !neverTerminate && left < KEEP_ALIVE_WARNING )
+			System.out.println(time + " Keep Alive (SYM " + join(syms) + ") will terminate in " + left + " minutes");
+		else
+			System.out.println(time + " Keep Alive (SYM " + join(syms) + ") " + sent + " WakeUp(s)");
+	}
+
+	private static String join(ArrayList<Integer> syms) {
+		StringBuilder sb = new StringBuilder();
+
+		for( int sym : syms ) {
+			if( sb.length() > 0 )
+				sb.append(", ");
+
+			sb.append(sym);
+		}
+
+		return sb.toString();
+	}
+
+	private static void showTerminated(final ArrayList<Integer> syms) {
+		Display.getDefault().asyncExec(new Runnable(){
+			public void run(){
+				if( RepDevMain.mainShell == null || RepDevMain.mainShell.getShell().isDisposed() )
+					return;
+
+				MessageBox msg = new MessageBox(RepDevMain.mainShell.getShell(), SWT.ICON_WARNING);
+				msg.setText("Keep Alive");
+				msg.setMessage("Keep Alive has terminated for SYM " + join(syms) + ".  Please take proper measures to avoid the lost of work.");
+				msg.open();
+			}
+		});
+	}
+}
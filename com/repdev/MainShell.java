@@ -27,9 +27,12 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.Future;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -1071,155 +1074,13 @@ public class MainShell {
 
 					shell.setCursor(shell.getDisplay().getSystemCursor(SWT.CURSOR_WAIT));
 
-					if (dragSourceItems[0].getData() instanceof SymitarFile) {
-						for (TreeItem item : dragSourceItems) {
-							boolean exists = false;
-
-							SymitarFile source = (SymitarFile) item.getData();
-							SymitarFile destination;
-
-							if (isItemLocal(root))
-								destination = new SymitarFile(getTreeDir(root), source.getName(), source.getType());
-							else {
-								if (RepDevMain.SYMITAR_SESSIONS.get(getTreeSym(root)) != null && RepDevMain.SYMITAR_SESSIONS.get(getTreeSym(root)).isConnected())
-									destination = new SymitarFile(getTreeSym(root), source.getName(), source.getType());
-								else {
-									MessageBox dialog = new MessageBox(shell, SWT.OK | SWT.ICON_ERROR);
-									dialog.setMessage("You are copying to a sym that is not logged in, log in and try again.");
-									dialog.setText("Copy Error");
-									dialog.open();
-									shell.setCursor(shell.getDisplay().getSystemCursor(SWT.CURSOR_ARROW));
-									return;
-								}
-							}
-
-							if ((overwrite & RepeatOperationShell.ASK_TO_ALL) != 0)
-								exists = Util.fileExists(destination);
-
-							System.out.println("exists: " + exists);
-
-							if (exists && (overwrite & RepeatOperationShell.ASK_TO_ALL) != 0) {
-								RepeatOperationShell dialog = new RepeatOperationShell(shell, "File " + destination.getName() + " already exists at the destination. Overwrite?");
-								overwrite = dialog.open();
-
-								if ((overwrite & RepeatOperationShell.CANCEL) != 0) {
-									shell.setCursor(shell.getDisplay().getSystemCursor(SWT.CURSOR_ARROW));
-									return;
-								}
-							}
-
-							SessionError error = SessionError.NONE;
-
-							if ((overwrite & RepeatOperationShell.YES) != 0)
-								error = destination.saveFile(source.getData());
-
-							if (error == SessionError.NONE && root.getData() instanceof Project)
-								((Project) root.getData()).addFile(destination, index);
-						}
-					} else if (dragSourceItems[0].getData() instanceof Project) {
-						for (TreeItem item : dragSourceItems) {
-							Project source = (Project) item.getData();
-							Project destination;
-
-							if (isItemLocal(root))
-								destination = ProjectManager.createProject(source.getName(), getTreeDir(root), index);
-							else {
-								if (RepDevMain.SYMITAR_SESSIONS.get(getTreeSym(root)) != null && RepDevMain.SYMITAR_SESSIONS.get(getTreeSym(root)).isConnected())
-									destination = ProjectManager.createProject(source.getName(), getTreeSym(root), index);
-								else {
-									MessageBox dialog = new MessageBox(shell, SWT.OK | SWT.ICON_ERROR);
-									dialog.setMessage("You are copying to a sym that is not logged in, log in and try again.");
-									dialog.setText("Copy Error");
-									dialog.open();
-									shell.setCursor(shell.getDisplay().getSystemCursor(SWT.CURSOR_ARROW));
-									return;
-								}
-							}
-							for (SymitarFile file : source.getFiles()) {
-								boolean exists = false;
-								int tmpOverwrite = overwrite;
-								
-								SymitarFile newFile;
-
-								if (isItemLocal(root))
-									newFile = new SymitarFile(getTreeDir(root), file.getName(), file.getType());
-								else
-									newFile = new SymitarFile(getTreeSym(root), file.getName(), file.getType());
-
-								if ((tmpOverwrite & RepeatOperationShell.ASK_TO_ALL) != 0)
-									exists = Util.fileExists(newFile);
-
-								if (exists && (tmpOverwrite & RepeatOperationShell.ASK_TO_ALL) != 0) {
-									RepeatOperationShell dialog = new RepeatOperationShell(shell, "File " + newFile.getName() + " already exists at the destination. Overwrite?");
-									tmpOverwrite = dialog.open();
-
-									if ((tmpOverwrite & RepeatOperationShell.CANCEL) != 0) {
-										shell.setCursor(shell.getDisplay().getSystemCursor(SWT.CURSOR_ARROW));
-										return;
-									}
-									
-								}
-
-								SessionError error = SessionError.NONE;
-								//if(exists)System.out.print("Exists, ");
-								//System.out.println("overwrite = " + overwrite);
-								if ((tmpOverwrite & RepeatOperationShell.YES) != 0)
-									error = newFile.saveFile(file.getData());
-								//System.out.println("error = " + error.toString());
-								if (error == SessionError.NONE)
-									destination.addFile(newFile);
-							}
-						}
-					}
-					
-
-					// Dont redraw if we added to sym/dir
-					if (dragSourceItems[0].getData() instanceof Project
-							|| (dragSourceItems[0].getData() instanceof SymitarFile && !(root.getData() instanceof String || root.getData() instanceof Integer))) {
-						ArrayList<String> treesToExpand = new ArrayList<String>();							
-						if (root.getData() instanceof SymitarFile)
-							root = root.getParentItem().getParentItem();
-						else if (root.getData() instanceof Project)
-							root = root.getParentItem();
-				
-						for (TreeItem sourceItem : dragSourceItems){
-							if(sourceItem.getData() instanceof Project && sourceItem.getExpanded())
-								treesToExpand.add(sourceItem.getText()); //Get Names of expanded Source trees
-						}
-						
-						// Redraws the tree, since it do be VIRTUAL!!!!
-						for (TreeItem victim : root.getItems()){
-							if(victim.getExpanded())
-								treesToExpand.add(victim.getText()); //Get Names of expanded Destination trees
-							victim.dispose();
-						}
-
-
-						root.clearAll(true);
-						root.setExpanded(false);
-
-						tree.showItem(root);
-						Event e = new Event();
-						e.item = root;
-						tree.notifyListeners(SWT.Expand, e);
-						
-						// Restore expanded trees (trees that were expanded before the DND)
-						for (TreeItem destItem : root.getItems()){
-							if(treesToExpand.contains(destItem.getText()))
-								doTree(destItem);
-						}
-
-						//Project.setExpanded(false);
-						//doTree(Project);
-						// if( !(root.getData() instanceof String ||
-						// root.getData() instanceof Integer))
-						// root = root.getParentItem();
-
-						// root.dispose();
-
-					}
-
-					shell.setCursor(shell.getDisplay().getSystemCursor(SWT.CURSOR_ARROW));
+					//The host is only talked to on the AsyncSymitarSession queues, the rest happens back here when they answer
+					if (dragSourceItems[0].getData() instanceof SymitarFile)
+						dropFiles(root, index, dragSourceItems, overwrite);
+					else if (dragSourceItems[0].getData() instanceof Project)
+						dropProjects(root, index, dragSourceItems, 0, overwrite);
+					else
+						shell.setCursor(shell.getDisplay().getSystemCursor(SWT.CURSOR_ARROW));
 				}
 			}
 		});
@@ -1316,6 +1177,15 @@ public class MainShell {
 			}
 		});
 
+		final MenuItem checkProjectItem = new MenuItem(treeMenu, SWT.NONE);
+		checkProjectItem.setText("Check/Install Project...");
+		checkProjectItem.setImage(RepDevMain.smallInstallImage);
+		checkProjectItem.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				ProjectCheckShell.show(shell, (Project) tree.getSelection()[0].getData());
+			}
+		});
+
 		new MenuItem(treeMenu, SWT.SEPARATOR);
 
 		final Menu runMenu = new Menu(treeMenu);
@@ -1522,29 +1392,24 @@ public class MainShell {
 
 				// If the RepGen is not currently open, attempt to install it
 				if(!tabFound){
-					MessageBox dialog = null;
-
-					try{
-						ErrorCheckResult result = RepDevMain.SYMITAR_SESSIONS.get(sym).installRepgen(file.getName());
-						dialog = new MessageBox(Display.getCurrent().getActiveShell(),SWT.OK | ( result.getType() == ErrorCheckResult.Type.INSTALLED_SUCCESSFULLY ? SWT.ICON_INFORMATION : SWT.ICON_ERROR ));
-						dialog.setText("Installation Result");
-						if( result.getType() != ErrorCheckResult.Type.INSTALLED_SUCCESSFULLY )
-							dialog.setMessage("Error Installing Repgen: \n" + result.getErrorMessage());
-						else
-							dialog.setMessage("Repgen Installed, Size: " + result.getInstallSize());
-
-						dialog.open();
-					}
-					catch(NullPointerException err){
-						dialog = new MessageBox(Display.getCurrent().getActiveShell(),SWT.OK | SWT.ICON_ERROR );
-						dialog.setText("Installation Result");
-						dialog.setMessage("Error Installing RepGen: \nThe File may not, currently exist on Symitar");
-						dialog.open();
-					}
+					AsyncSymitarSession.forSym(sym).installRepgen(file.getName(), new AsyncSymitarSession.Callback<ErrorCheckResult>(){
+						public void done(ErrorCheckResult result) {
+							EditorComposite.showInstallResult(shell, result);
+						}
+					});
 				}	
 			}
 		});
 
+		final MenuItem deployFile = new MenuItem(treeMenu, SWT.NONE);
+		deployFile.setText("Deploy to Syms...");
+		deployFile.setImage(RepDevMain.smallInstallImage);
+		deployFile.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				DeployShell.show(shell, (SymitarFile) tree.getSelection()[0].getData());
+			}
+		});
+
 		new MenuItem(treeMenu, SWT.SEPARATOR);
 
 		final MenuItem deleteFile = new MenuItem(treeMenu, SWT.NONE);
@@ -1734,8 +1599,10 @@ public class MainShell {
 				importFilem.setEnabled(false);
 
 				openAllItem.setEnabled(false);
+				checkProjectItem.setEnabled(false);
 				runMenuItem.setEnabled(false);
 				installFile.setEnabled(false);
+				deployFile.setEnabled(false);
 				newFreeFile.setEnabled(false);
 				newProject.setEnabled(false);
 				openFile.setEnabled(false);
@@ -1792,6 +1659,7 @@ public class MainShell {
 
 				if (tree.getSelection()[0].getData() instanceof Project && tree.getSelectionCount() == 1) {
 					openAllItem.setEnabled(true);
+					checkProjectItem.setEnabled(!((Project) tree.getSelection()[0].getData()).isLocal());
 				}
 
 				if (tree.getSelectionCount() == 1 && tree.getSelection()[0].getData() instanceof SymitarFile
@@ -1800,6 +1668,11 @@ public class MainShell {
 					installFile.setEnabled(true);
 				}
 
+				//Can promote from a local copy too
+				if (tree.getSelectionCount() == 1 && tree.getSelection()[0].getData() instanceof SymitarFile
+						&& ((SymitarFile) tree.getSelection()[0].getData()).getType() == FileType.REPGEN)
+					deployFile.setEnabled(true);
+
 			}
 
 		});
@@ -2254,6 +2127,242 @@ public class MainShell {
 		dialog.open();
 	}
 
+	/**
+	 * Tree drop of SymitarFiles onto root (a sym, folder or project). Existence checks and copies run on
+	 * the destination's AsyncSymitarSession queue, the questions and project changes happen once it answers.
+	 */
+	private void dropFiles(final TreeItem root, final int index, TreeItem[] sources, final int overwrite) {
+		final ArrayList<SymitarFile> files = new ArrayList<SymitarFile>();
+		final ArrayList<SymitarFile> destinations = new ArrayList<SymitarFile>();
+		final boolean refresh = !(root.getData() instanceof String || root.getData() instanceof Integer);
+		final ArrayList<String> expanded = getExpandedNames(sources);
+
+		if (!isItemLocal(root) && !checkLoggedIn(getTreeSym(root))) {
+			dropDone(null, null);
+			return;
+		}
+
+		for (TreeItem item : sources) {
+			SymitarFile source = (SymitarFile) item.getData();
+
+			files.add(source);
+
+			if (isItemLocal(root))
+				destinations.add(new SymitarFile(getTreeDir(root), source.getName(), source.getType()));
+			else
+				destinations.add(new SymitarFile(getTreeSym(root), source.getName(), source.getType()));
+		}
+
+		findExisting(destinations, overwrite, new AsyncSymitarSession.Callback<HashSet<SymitarFile>>(){
+			public void done(HashSet<SymitarFile> existing) {
+				if (root.isDisposed()) {
+					dropDone(null, null);
+					return;
+				}
+
+				final Project project = root.getData() instanceof Project ? (Project) root.getData() : null;
+				int answer = overwrite;
+
+				for (int i = 0; i < files.size(); i++) {
+					SymitarFile source = files.get(i);
+					final SymitarFile destination = destinations.get(i);
+					boolean exists = existing != null && existing.contains(destination);
+
+					System.out.println("exists: " + exists);
+
+					if (exists && (answer & RepeatOperationShell.ASK_TO_ALL) != 0) {
+						RepeatOperationShell dialog = new RepeatOperationShell(shell, "File " + destination.getName() + " already exists at the destination. Overwrite?");
+						answer = dialog.open();
+
+						if ((answer & RepeatOperationShell.CANCEL) != 0) {
+							dropDone(null, null);
+							return;
+						}
+					}
+
+					if ((answer & RepeatOperationShell.YES) != 0) {
+						//Copy in the background, and take it back out of the project if it didn't make it
+						AsyncSymitarSession.forFile(destination).copyFile(source, destination, new AsyncSymitarSession.Callback<SessionError>(){
+							public void done(SessionError error) {
+								if (error == SessionError.NONE)
+									return;
+
+								(error == null ? SessionError.NULL_POINTER : error).showError();
+
+								if (project != null)
+									project.removeFile(destination, false);
+							}
+						});
+					}
+
+					if (project != null)
+						project.addFile(destination, index);
+				}
+
+				// Dont redraw if we added to sym/dir
+				dropDone(refresh ? root : null, expanded);
+			}
+		});
+	}
+
+	/**
+	 * Tree drop of Projects onto root, one project after another starting at sources[next].
+	 * Like dropFiles, only the AsyncSymitarSession queues talk to the host.
+	 */
+	private void dropProjects(final TreeItem root, final int index, final TreeItem[] sources, final int next, final int overwrite) {
+		if (next == sources.length) {
+			dropDone(root, getExpandedNames(sources));
+			return;
+		}
+
+		if (root.isDisposed() || (!isItemLocal(root) && !checkLoggedIn(getTreeSym(root)))) {
+			dropDone(null, null);
+			return;
+		}
+
+		Project source = (Project) sources[next].getData();
+		final Project destination;
+		final ArrayList<SymitarFile> files = new ArrayList<SymitarFile>(source.getFiles());
+		final ArrayList<SymitarFile> newFiles = new ArrayList<SymitarFile>();
+
+		if (isItemLocal(root))
+			destination = ProjectManager.createProject(source.getName(), getTreeDir(root), index);
+		else
+			destination = ProjectManager.createProject(source.getName(), getTreeSym(root), index);
+
+		for (SymitarFile file : files) {
+			if (isItemLocal(root))
+				newFiles.add(new SymitarFile(getTreeDir(root), file.getName(), file.getType()));
+			else
+				newFiles.add(new SymitarFile(getTreeSym(root), file.getName(), file.getType()));
+		}
+
+		findExisting(newFiles, overwrite, new AsyncSymitarSession.Callback<HashSet<SymitarFile>>(){
+			public void done(HashSet<SymitarFile> existing) {
+				final ArrayList<SymitarFile> copyFrom = new ArrayList<SymitarFile>();
+				final ArrayList<SymitarFile> copyTo = new ArrayList<SymitarFile>();
+
+				if (root.isDisposed()) {
+					dropDone(null, null);
+					return;
+				}
+
+				for (int i = 0; i < files.size(); i++) {
+					SymitarFile newFile = newFiles.get(i);
+					int tmpOverwrite = overwrite;
+
+					if (existing != null && existing.contains(newFile) && (tmpOverwrite & RepeatOperationShell.ASK_TO_ALL) != 0) {
+						RepeatOperationShell dialog = new RepeatOperationShell(shell, "File " + newFile.getName() + " already exists at the destination. Overwrite?");
+						tmpOverwrite = dialog.open();
+
+						if ((tmpOverwrite & RepeatOperationShell.CANCEL) != 0) {
+							dropDone(null, null);
+							return;
+						}
+					}
+
+					if ((tmpOverwrite & RepeatOperationShell.YES) != 0) {
+						copyFrom.add(files.get(i));
+						copyTo.add(newFile);
+					}
+				}
+
+				//Files we didn't copy go in as they are, copied ones only if they made it
+				AsyncSymitarSession.Callback<ArrayList<SymitarFile>> added = new AsyncSymitarSession.Callback<ArrayList<SymitarFile>>(){
+					public void done(ArrayList<SymitarFile> copied) {
+						for (SymitarFile newFile : newFiles)
+							if (!copyTo.contains(newFile) || (copied != null && copied.contains(newFile)))
+								destination.addFile(newFile);
+
+						dropProjects(root, index, sources, next + 1, overwrite);
+					}
+				};
+
+				//Pulls the whole project down in one batch, rather than one round trip per file
+				if (copyTo.isEmpty())
+					added.done(new ArrayList<SymitarFile>());
+				else
+					AsyncSymitarSession.forFile(copyTo.get(0)).copyFiles(copyFrom, copyTo, added);
+			}
+		});
+	}
+
+	/**
+	 * Shows an error if sym isn't logged in
+	 */
+	private boolean checkLoggedIn(int sym) {
+		if (RepDevMain.SYMITAR_SESSIONS.get(sym) != null && RepDevMain.SYMITAR_SESSIONS.get(sym).isConnected())
+			return true;
+
+		MessageBox dialog = new MessageBox(shell, SWT.OK | SWT.ICON_ERROR);
+		dialog.setMessage("You are copying to a sym that is not logged in, log in and try again.");
+		dialog.setText("Copy Error");
+		dialog.open();
+
+		return false;
+	}
+
+	/**
+	 * Hands callback the files that already exist, checked on their queue. Only checks if we are going to ask about overwriting.
+	 */
+	private void findExisting(ArrayList<SymitarFile> files, int overwrite, AsyncSymitarSession.Callback<HashSet<SymitarFile>> callback) {
+		if ((overwrite & RepeatOperationShell.ASK_TO_ALL) != 0 && !files.isEmpty())
+			AsyncSymitarSession.forFile(files.get(0)).findExisting(files, callback);
+		else
+			callback.done(new HashSet<SymitarFile>());
+	}
+
+	/**
+	 * @return Names of the expanded projects in items, read before the drop changes the tree
+	 */
+	private ArrayList<String> getExpandedNames(TreeItem[] items) {
+		ArrayList<String> names = new ArrayList<String>();
+
+		for (TreeItem item : items)
+			if (!item.isDisposed() && item.getData() instanceof Project && item.getExpanded())
+				names.add(item.getText());
+
+		return names;
+	}
+
+	/**
+	 * Ends a tree drop, redrawing root's sym or folder if it's given, then puts the cursor back
+	 *
+	 * @param treesToExpand Names of source projects that were expanded before the drop
+	 */
+	private void dropDone(TreeItem root, ArrayList<String> treesToExpand) {
+		if (root != null && !root.isDisposed()) {
+			if (root.getData() instanceof SymitarFile)
+				root = root.getParentItem().getParentItem();
+			else if (root.getData() instanceof Project)
+				root = root.getParentItem();
+
+			// Redraws the tree, since it do be VIRTUAL!!!!
+			for (TreeItem victim : root.getItems()){
+				if(victim.getExpanded())
+					treesToExpand.add(victim.getText()); //Get Names of expanded Destination trees
+				victim.dispose();
+			}
+
+			root.clearAll(true);
+			root.setExpanded(false);
+
+			tree.showItem(root);
+			Event e = new Event();
+			e.item = root;
+			tree.notifyListeners(SWT.Expand, e);
+
+			// Restore expanded trees (trees that were expanded before the DND)
+			for (TreeItem destItem : root.getItems()){
+				if(treesToExpand.contains(destItem.getText()))
+					doTree(destItem);
+			}
+		}
+
+		if (!shell.isDisposed())
+			shell.setCursor(shell.getDisplay().getSystemCursor(SWT.CURSOR_ARROW));
+	}
+
 	private int getTreeSym(TreeItem item) {
 		int sym = -1;
 		Object data = item.getData();
@@ -2831,7 +2940,15 @@ public class MainShell {
 			if (result == SWT.CANCEL)
 				return false;
 			else if (result == SWT.YES) {
-				((EditorComposite) item.getControl()).saveFile(false);
+				Future<SessionError> save = ((EditorComposite) item.getControl()).saveFile(false);
+
+				//The tab (or the whole program) is about to go away, so this one has to finish first
+				try {
+					if (save != null)
+						save.get();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
 			}
 		}
 
@@ -3496,6 +3613,14 @@ public class MainShell {
 			}
 		});
 
+		MenuItem toolsMetrics = new MenuItem(toolsMenu, SWT.PUSH);
+		toolsMetrics.setText("Session &Metrics");
+		toolsMetrics.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				MetricsShell.show(shell);
+			}
+		});
+
 		MenuItem helpAbout = new MenuItem(helpMenu, SWT.PUSH);
 		helpAbout.setText("&About");
 		helpAbout.addSelectionListener(new SelectionAdapter() {
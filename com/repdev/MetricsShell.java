@@ -0,0 +1,182 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.layout.FormAttachment;
+import org.eclipse.swt.layout.FormData;
+import org.eclipse.swt.layout.FormLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.MessageBox;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Text;
+
+/**
+ * Shows SessionMetrics for every connection, refreshed every couple seconds, and lets you save them to a file
+ */
+public class MetricsShell {
+	private static final int REFRESH = 2000; //ms
+
+	private Shell shell;
+	private Text text;
+	private Font font;
+
+	private void create(Shell parent) {
+		final Display display = parent.getDisplay();
+
+		shell = new Shell(parent, SWT.SHELL_TRIM);
+		shell.setText("Session Metrics");
+
+		FormLayout layout = new FormLayout();
+		layout.marginTop = 5;
+		layout.marginBottom = 5;
+		layout.marginLeft = 5;
+		layout.marginRight = 5;
+		layout.spacing = 5;
+		shell.setLayout(layout);
+
+		text = new Text(shell, SWT.BORDER | SWT.MULTI | SWT.READ_ONLY | SWT.V_SCROLL | SWT.H_SCROLL);
+		font = new Font(display, "Courier New", 9, SWT.NORMAL);
+		text.setFont(font);
+
+		Button refreshButton = new Button(shell, SWT.PUSH);
+		refreshButton.setText("&Refresh");
+		refreshButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				refresh();
+			}
+		});
+
+		Button resetButton = new Button(shell, SWT.PUSH);
+		resetButton.setText("Re&set");
+		resetButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				SessionMetrics.resetAll();
+				refresh();
+			}
+		});
+
+		Button saveButton = new Button(shell, SWT.PUSH);
+		saveButton.setText("Save to &File...");
+		saveButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				save();
+			}
+		});
+
+		Button closeButton = new Button(shell, SWT.PUSH);
+		closeButton.setText("&Close");
+		closeButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				shell.close();
+			}
+		});
+
+		FormData data = new FormData();
+		data.left = new FormAttachment(0);
+		data.right = new FormAttachment(100);
+		data.top = new FormAttachment(0);
+		data.bottom = new FormAttachment(closeButton);
+		data.width = 720;
+		data.height = 400;
+		text.setLayoutData(data);
+
+		data = new FormData();
+		data.right = new FormAttachment(100);
+		data.bottom = new FormAttachment(100);
+		closeButton.setLayoutData(data);
+
+		data = new FormData();
+		data.right = new FormAttachment(closeButton);
+		data.bottom = new FormAttachment(100);
+		saveButton.setLayoutData(data);
+
+		data = new FormData();
+		data.right = new FormAttachment(saveButton);
+		data.bottom = new FormAttachment(100);
+		resetButton.setLayoutData(data);
+
+		data = new FormData();
+		data.right = new FormAttachment(resetButton);
+		data.bottom = new FormAttachment(100);
+		refreshButton.setLayoutData(data);
+
+		shell.addDisposeListener(new DisposeListener() {
+			public void widgetDisposed(DisposeEvent e) {
+				font.dispose();
+			}
+		});
+
+		refresh();
+
+		display.timerExec(REFRESH, new Runnable() {
+			public void run() {
+				if( shell.isDisposed() )
+					return;
+
+				refresh();
+				display.timerExec(REFRESH, this);
+			}
+		});
+
+		shell.pack();
+		shell.open();
+	}
+
+	private void refresh() {
+		int top = text.getTopIndex();
+
+		text.setText(SessionMetrics.reportAll().replace("\n", Text.DELIMITER));
+		text.setTopIndex(top);
+	}
+
+	private void save() {
+		org.eclipse.swt.widgets.FileDialog dialog = new org.eclipse.swt.widgets.FileDialog(shell, SWT.SAVE);
+		dialog.setFilterExtensions(new String[] { "*.txt", "*.*" });
+		dialog.setFileName("metrics.txt");
+
+		String path = dialog.open();
+
+		if( path == null )
+			return;
+
+		try {
+			SessionMetrics.dump(new File(path));
+		} catch (IOException e) {
+			MessageBox msg = new MessageBox(shell, SWT.ICON_ERROR | SWT.OK);
+			msg.setText("Session Metrics");
+			msg.setMessage("Could not save metrics: " + e.getMessage());
+			msg.open();
+		}
+	}
+
+	public static void show(Shell parent) {
+		new MetricsShell().create(parent);
+	}
+}
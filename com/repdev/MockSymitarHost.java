@@ -0,0 +1,821 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fake Symitar host for load testing DirectSymitarSession without a real box.
+ *
+ * Speaks just enough of the telnet/AIX login, the sym login and the framed commands for RepDev:
+ * File List/Retrieve/Store/Delete/Rename, print control listings, Misc batch queue listings,
+ * and running repgens and batch FM through the menus. Batch jobs "run" for a while, then leave
+ * a report in print control like the real thing.
+ *
+ * Files are served from ROOT/SYM/TYPE/NAME, where TYPE is REPGEN, LETTER, HELP or REPORT (reports are named by print seq).
+ * Any AIX login and user ID are accepted.
+ *
+ * Saved PROT parts are only taken in order, a part that isn't the next one expected is NAK'd and dropped,
+ * so a client that sends them out of order ends up with a NAK instead of a file that happens to come out right.
+ *
+ * Usage: MockSymitarHost [-port 23] [-dir mockhost] [-latency ms] [-bandwidth bytes/s] [-nak fraction] [-jobtime ms]
+ *
+ */
+public class MockSymitarHost {
+	private static final char ESC = 0x1b, FRAME_START = 0xfe, FRAME_END = 0xfc, DATA_START = 253, DATA_END = 254;
+	private static final int CHUNK = 3996; //File data per frame, same as the PROT part size
+	private static final int QUEUES = 4;
+	private static final String CHARSET = "ISO-8859-1"; //One char per byte on the wire, like the real host
+
+	private final File root;
+	private int latency = 0, bandwidth = 0, jobTime = 5000;
+	private double nakRate = 0;
+
+	private final Random random = new Random();
+	private final ArrayList<Job> jobs = new ArrayList<Job>();
+	private final ArrayList<PrintEntry> printItems = new ArrayList<PrintEntry>();
+	private int nextBatchSeq = 1000, nextPrintSeq = 5000;
+
+	private static class Job {
+		int sym, seq, queue;
+		long start, end;
+		String kind, name;
+	}
+
+	private static class PrintEntry {
+		int sym, seq, batchSeq, size;
+		String title;
+		Date date;
+	}
+
+	public MockSymitarHost(File root) {
+		this.root = root;
+	}
+
+	/**
+	 * @param latency ms to wait before answering anything
+	 */
+	public void setLatency(int latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * @param bandwidth bytes per second each connection can send, 0 for no limit
+	 */
+	public void setBandwidth(int bandwidth) {
+		this.bandwidth = bandwidth;
+	}
+
+	/**
+	 * @param nakRate fraction of saved PROT parts to NAK, 0 to 1
+	 */
+	public void setNakRate(double nakRate) {
+		this.nakRate = nakRate;
+	}
+
+	/**
+	 * @param jobTime ms each batch job stays in the queue
+	 */
+	public void setJobTime(int jobTime) {
+		this.jobTime = jobTime;
+	}
+
+	/**
+	 * Listens forever, one thread per connection
+	 */
+	public void serve(int port) throws IOException {
+		ServerSocket server = new ServerSocket(port);
+		System.out.println("Mock Symitar host on port " + port + ", serving " + root.getAbsolutePath());
+
+		while( true ) {
+			final Socket socket = server.accept();
+
+			Thread thread = new Thread(new Runnable(){
+				public void run() {
+					new Connection(socket).run();
+				}
+			}, "Mock Host " + socket.getRemoteSocketAddress());
+
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = 23;
+		MockSymitarHost host = new MockSymitarHost(new File("mockhost"));
+
+		for( int i = 0; i + 1 < args.length; i += 2 ) {
+			if( args[i].equals("-port") )
+				port = Integer.parseInt(args[i + 1]);
+			else if( args[i].equals("-dir") )
+				host = copySettings(host, new MockSymitarHost(new File(args[i + 1])));
+			else if( args[i].equals("-latency") )
+				host.setLatency(Integer.parseInt(args[i + 1]));
+			else if( args[i].equals("-bandwidth") )
+				host.setBandwidth(Integer.parseInt(args[i + 1]));
+			else if( args[i].equals("-nak") )
+				host.setNakRate(Double.parseDouble(args[i + 1]));
+			else if( args[i].equals("-jobtime") )
+				host.setJobTime(Integer.parseInt(args[i + 1]));
+			else
+				System.out.println("Unknown option " + args[i]);
+		}
+
+		host.serve(port);
+	}
+
+	private static MockSymitarHost copySettings(MockSymitarHost from, MockSymitarHost to) {
+		to.latency = from.latency;
+		to.bandwidth = from.bandwidth;
+		to.nakRate = from.nakRate;
+		to.jobTime = from.jobTime;
+		return to;
+	}
+
+	private File getFile(int sym, FileType type, String name) {
+		return new File(root, sym + File.separator + type + File.separator + name);
+	}
+
+	private static FileType getType(String type) {
+		if( "Help".equals(type) )
+			return FileType.HELP;
+		else if( "Letter".equals(type) )
+			return FileType.LETTER;
+		else if( "Report".equals(type) )
+			return FileType.REPORT;
+		else
+			return FileType.REPGEN;
+	}
+
+	private static String readFile(File file) throws IOException {
+		StringBuilder data = new StringBuilder();
+		char[] buf = new char[8192];
+		int read;
+		Reader in = new FileReader(file);
+
+		try {
+			while( (read = in.read(buf)) != -1 )
+				data.append(buf, 0, read);
+		}
+		finally {
+			in.close();
+		}
+
+		return data.toString();
+	}
+
+	private static void writeFile(File file, String data) throws IOException {
+		file.getParentFile().mkdirs();
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+
+		try {
+			out.write(data);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Moves finished jobs out of the queues and into print control
+	 */
+	private synchronized void finishJobs() {
+		long now = System.currentTimeMillis();
+
+		for( int i = jobs.size() - 1; i >= 0; i-- ) {
+			Job job = jobs.get(i);
+
+			if( job.end > now )
+				continue;
+
+			jobs.remove(i);
+
+			PrintEntry entry = new PrintEntry();
+			entry.sym = job.sym;
+			entry.seq = nextPrintSeq++;
+			entry.batchSeq = job.seq;
+			entry.date = new Date(job.start);
+			entry.title = job.kind + " " + job.name;
+
+			String report;
+			String begun = String.format("%-21s", new SimpleDateFormat("MM/dd/yy").format(entry.date) + " at") + new SimpleDateFormat("HH:mm:ss").format(entry.date);
+
+			if( job.kind.equals("MISCFMPOST") )
+				report = "Batch FM\nProcessing begun on " + begun + "\n\nName of Posting: " + job.name + "\n\nRecords updated: 0\n";
+			else
+				report = "Processing begun on " + begun + "\n\nSpecification File to Run (newline when done): " + job.name + "\n\nMock host output for " + job.name + "\n";
+
+			try {
+				writeFile(getFile(job.sym, FileType.REPORT, "" + entry.seq), report);
+			} catch (IOException e) {
+			}
+
+			entry.size = report.length();
+			printItems.add(entry);
+		}
+	}
+
+	private synchronized Job startJob(int sym, String kind, String name, int queue) {
+		Job job = new Job();
+		job.sym = sym;
+		job.seq = nextBatchSeq++;
+		job.queue = queue;
+		job.kind = kind;
+		job.name = name;
+		job.start = System.currentTimeMillis();
+		job.end = job.start + jobTime;
+
+		jobs.add(job);
+		return job;
+	}
+
+	/**
+	 * Output stream that holds back to the configured bandwidth.
+	 * Idle time isn't saved up, a write after a pause goes out at the same rate as one right after another.
+	 */
+	private class ThrottledOutputStream extends FilterOutputStream {
+		//nanoTime when everything written so far is done going out
+		private long due = System.nanoTime();
+
+		ThrottledOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+
+			if( bandwidth > 0 ) {
+				long now = System.nanoTime();
+
+				due = Math.max(due, now) + len * 1000000000L / bandwidth;
+
+				long wait = (due - now) / 1000000;
+
+				if( wait > 0 ) {
+					out.flush();
+					sleep(wait);
+				}
+			}
+		}
+	}
+
+	private static void sleep(long ms) {
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * One client, from the telnet login on
+	 */
+	private class Connection {
+		private final Socket socket;
+		private Reader in;
+		private Writer out;
+
+		private int sym = -1;
+		private final StringBuilder line = new StringBuilder();
+		private final ArrayList<String> menu = new ArrayList<String>();
+
+		//Repgen run in progress
+		private String repgen;
+		private ArrayList<String> prompts;
+		private int stage;
+
+		//File being stored
+		private File storing;
+		private StringBuilder stored;
+		private int nextPart;
+		private String storeMsgId;
+
+		Connection(Socket socket) {
+			this.socket = socket;
+		}
+
+		public void run() {
+			try {
+				in = new BufferedReader(new InputStreamReader(socket.getInputStream(), CHARSET));
+				out = new BufferedWriter(new OutputStreamWriter(new ThrottledOutputStream(socket.getOutputStream()), CHARSET));
+
+				login();
+
+				int cur;
+
+				while( (cur = in.read()) != -1 ) {
+					char c = (char) cur;
+
+					if( c == 0x07 )
+						command(readCommand());
+					else if( storing != null && c == 'P' && line.length() == 0 )
+						part();
+					else if( c == '\r' || c == '\n' || c == ESC ) {
+						String text = line.toString();
+						line.setLength(0);
+						menuLine(text, c == ESC);
+					}
+					else
+						line.append(c);
+				}
+			} catch (IOException e) {
+				//Client hung up
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+
+		private String readLine() throws IOException {
+			StringBuilder sb = new StringBuilder();
+			int cur;
+
+			while( (cur = in.read()) != -1 && cur != '\r' && cur != '\n' )
+				sb.append((char) cur);
+
+			if( cur == -1 )
+				throw new IOException("Closed");
+
+			return sb.toString();
+		}
+
+		private String readChars(int count) throws IOException {
+			char[] buf = new char[count];
+			int read = 0;
+
+			while( read < count ) {
+				int cur = in.read(buf, read, count - read);
+
+				if( cur < 0 )
+					throw new IOException("Closed");
+
+				read += cur;
+			}
+
+			return new String(buf);
+		}
+
+		private void login() throws IOException {
+			readLine(); //Telnet negotiation and the AIX user name
+			send("Password:");
+			readLine();
+			send("\r\nLast unsuccessful login: never\r\n[c");
+
+			String windows = readLine();
+
+			if( !windows.startsWith("WINDOWSLEVEL") )
+				System.out.println("Expected WINDOWSLEVEL, got " + windows);
+
+			send("$ ");
+
+			String symLine = readLine().trim();
+
+			try {
+				sym = Integer.parseInt(symLine.substring(symLine.lastIndexOf(' ') + 1));
+			} catch (NumberFormatException e) {
+				sym = 0;
+			}
+
+			frame("SymStart~Global");
+			frame("Input~HelpCode=10026~Prompt=Password/UserID");
+
+			readLine(); //User ID, anything goes
+			frame("Input~HelpCode=10027~Prompt=Press Return");
+
+			System.out.println("Login on Sym " + sym + " from " + socket.getRemoteSocketAddress());
+		}
+
+		private void send(String text) throws IOException {
+			out.write(text);
+			out.flush();
+		}
+
+		private void frame(String text) throws IOException {
+			out.write(ESC);
+			out.write(FRAME_START);
+			out.write(text);
+			out.write(FRAME_END);
+			out.flush();
+		}
+
+		private void dataFrame(String header, String data) throws IOException {
+			out.write(ESC);
+			out.write(FRAME_START);
+			out.write(header);
+			out.write(DATA_START);
+			out.write(data);
+			out.write(DATA_END);
+			out.write(FRAME_END);
+		}
+
+		private void input(String helpCode, String prompt) throws IOException {
+			frame("Input~HelpCode=" + helpCode + "~Prompt=" + prompt);
+		}
+
+		private String readCommand() throws IOException {
+			StringBuilder length = new StringBuilder();
+			int cur;
+
+			while( (cur = in.read()) != '\r' ) {
+				if( cur == -1 )
+					throw new IOException("Closed");
+
+				length.append((char) cur);
+			}
+
+			return readChars(Integer.parseInt(length.toString()));
+		}
+
+		private HashMap<String, String> parse(String command) {
+			HashMap<String, String> params = new HashMap<String, String>();
+			String[] fields = command.split("~");
+
+			params.put("", fields[0]);
+
+			for( int i = 1; i < fields.length; i++ ) {
+				int equals = fields[i].indexOf('=');
+
+				if( equals == -1 )
+					params.put(fields[i], "");
+				else
+					params.put(fields[i].substring(0, equals), fields[i].substring(equals + 1));
+			}
+
+			return params;
+		}
+
+		private void command(String text) throws IOException {
+			HashMap<String, String> params = parse(text);
+			String name = params.get("");
+			String action = params.get("Action");
+			String msgId = "~MsgId=" + params.get("MsgId");
+
+			if( name.equals("WakeUp") )
+				return;
+
+			if( latency > 0 )
+				sleep(latency);
+
+			if( name.equals("Misc") && "BatchQueues".equals(params.get("InfoType")) )
+				batchQueues(msgId);
+			else if( name.equals("File") && "List".equals(action) && "Report".equals(params.get("Type")) )
+				printList(msgId, params.get("Query"));
+			else if( name.equals("File") && "List".equals(action) )
+				list(msgId, getType(params.get("Type")), params.get("Name"));
+			else if( name.equals("File") && "Retrieve".equals(action) )
+				retrieve(msgId, getType(params.get("Type")), params.get("Name"));
+			else if( name.equals("File") && "Store".equals(action) ) {
+				storing = getFile(sym, getType(params.get("Type")), params.get("Name"));
+				stored = new StringBuilder();
+				nextPart = 0;
+				storeMsgId = msgId;
+				frame("File" + msgId + "~Action=Store~BadCharList=0,7,27,253,254");
+			}
+			else if( name.equals("File") && "Delete".equals(action) ) {
+				File file = getFile(sym, getType(params.get("Type")), params.get("Name"));
+				frame(file.delete() ? "File" + msgId + "~Done" : "File" + msgId + "~Status=No such file or directory~Done");
+			}
+			else if( name.equals("File") && "Rename".equals(action) ) {
+				File file = getFile(sym, getType(params.get("Type")), params.get("Name"));
+
+				if( !file.exists() )
+					frame("File" + msgId + "~Status=No such file or directory~Done");
+				else if( file.renameTo(new File(file.getParentFile(), params.get("NewName"))) )
+					frame("File" + msgId + "~Done");
+				else
+					frame("File" + msgId + "~Status=Rename failed~Done");
+			}
+			else {
+				System.out.println("Mock host doesn't know " + text);
+				frame(name + msgId + "~Status=Not supported by mock host~Done");
+			}
+
+			out.flush();
+		}
+
+		private void batchQueues(String msgId) throws IOException {
+			finishJobs();
+
+			boolean[] busy = new boolean[QUEUES];
+
+			synchronized (MockSymitarHost.this) {
+				for( Job job : jobs ) {
+					if( job.sym != sym )
+						continue;
+
+					busy[job.queue] = true;
+					frame("Misc" + msgId + "~Action=QueueEntry~Queue=" + job.queue + "~Seq=" + job.seq + "~Stat=Running~Time=" + new SimpleDateFormat("HH:mm:ss").format(new Date(job.start)));
+				}
+			}
+
+			for( int i = 0; i < QUEUES; i++ )
+				if( !busy[i] )
+					frame("Misc" + msgId + "~Action=QueueEmpty~Queue=" + i);
+
+			frame("Misc" + msgId + "~Done");
+		}
+
+		/**
+		 * Handles LAST n "+TITLE+" and BATCH seq
+		 */
+		private void printList(String msgId, String query) throws IOException {
+			finishJobs();
+
+			ArrayList<PrintEntry> matches = new ArrayList<PrintEntry>();
+			int limit = Integer.MAX_VALUE;
+
+			synchronized (MockSymitarHost.this) {
+				if( query != null && query.startsWith("LAST ") ) {
+					String[] words = query.split(" ", 3);
+					String title = words.length > 2 ? words[2].replace("\"", "") : "+";
+					limit = Integer.parseInt(words[1]);
+
+					for( PrintEntry entry : printItems )
+						if( entry.sym == sym && FileListCache.matches(title, entry.title) )
+							matches.add(entry);
+				}
+				else if( query != null && query.startsWith("BATCH ") ) {
+					int batchSeq = Integer.parseInt(query.substring(6).trim());
+
+					for( PrintEntry entry : printItems )
+						if( entry.sym == sym && entry.batchSeq == batchSeq )
+							matches.add(entry);
+				}
+			}
+
+			for( int i = Math.max(0, matches.size() - limit); i < matches.size(); i++ ) {
+				PrintEntry entry = matches.get(i);
+
+				frame("File" + msgId + "~Sequence=" + entry.seq + "~Title=" + entry.title + "~Size=" + entry.size + "~PageCount=1~BatchSeq=" + entry.batchSeq +
+						"~Date=" + new SimpleDateFormat("MMddyyyy").format(entry.date) + "~Time=" + new SimpleDateFormat("HHmm").format(entry.date));
+			}
+
+			frame("File" + msgId + "~Done");
+		}
+
+		private void list(String msgId, FileType type, String pattern) throws IOException {
+			File[] files = new File(root, sym + File.separator + type).listFiles();
+			boolean found = false;
+
+			if( pattern == null || pattern.trim().equals("") )
+				pattern = "+";
+
+			if( files != null )
+				for( File file : files ) {
+					if( file.isDirectory() || !FileListCache.matches(pattern, file.getName()) )
+						continue;
+
+					Date modified = new Date(file.lastModified());
+					found = true;
+
+					frame("File" + msgId + "~Name=" + file.getName() + "~Date=" + new SimpleDateFormat("MMddyyyy").format(modified) +
+							"~Time=" + new SimpleDateFormat("HHmm").format(modified) + "~Size=" + file.length());
+				}
+
+			frame("File" + msgId + (found ? "" : "~Status=No such file or directory") + "~Done");
+		}
+
+		private void retrieve(String msgId, FileType type, String name) throws IOException {
+			File file = getFile(sym, type, name);
+
+			if( !file.isFile() ) {
+				frame("File" + msgId + "~Status=No such file or directory~Done");
+				return;
+			}
+
+			if( type == FileType.REPORT ) {
+				//Reports come a line at a time
+				BufferedReader report = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+
+				try {
+					String cur;
+
+					while( (cur = report.readLine()) != null )
+						dataFrame("File" + msgId, cur);
+				}
+				finally {
+					report.close();
+				}
+			}
+			else {
+				String data = readFile(file);
+
+				for( int i = 0; i < data.length(); i += CHUNK )
+					dataFrame("File" + msgId, data.substring(i, Math.min(data.length(), i + CHUNK)));
+			}
+
+			frame("File" + msgId + "~Done");
+		}
+
+		/**
+		 * PROT###DATA##### followed by the data, or PROT###EOF and padding, answered with a 16 char ack
+		 */
+		private void part() throws IOException {
+			String header = "P" + readChars(15);
+			String number = header.substring(4, 7);
+
+			if( header.substring(7).startsWith("EOF") ) {
+				if( Integer.parseInt(number) != nextPart )
+					System.out.println("EOF after part " + number + " but only got up to part " + nextPart + " of " + storing.getName());
+
+				send("PROT" + number + "ACK      ");
+
+				writeFile(storing, stored.toString());
+				frame("File" + storeMsgId + "~Done");
+
+				storing = null;
+				stored = null;
+				return;
+			}
+
+			String data = readChars(Integer.parseInt(header.substring(11, 16)));
+
+			if( latency > 0 )
+				sleep(latency);
+
+			//Anything but the next part is out of order, throw it away
+			if( Integer.parseInt(number) != nextPart || random.nextDouble() < nakRate ) {
+				send("PROT" + number + "NAK      ");
+				return;
+			}
+
+			stored.append(data);
+			nextPart++;
+			send("PROT" + number + "ACK      ");
+		}
+
+		/**
+		 * Anything typed at a menu. ESC starts a new menu path (mm0, mm3...), everything else walks down it
+		 */
+		private void menuLine(String text, boolean escape) throws IOException {
+			if( latency > 0 )
+				sleep(latency);
+
+			if( escape ) {
+				menu.clear();
+				repgen = null;
+				prompts = null;
+				stage = 0;
+
+				if( text.length() > 0 )
+					menu.add(text);
+
+				input("10030", "Selection");
+				return;
+			}
+
+			if( prompts != null ) {
+				repgenStep(text);
+				return;
+			}
+
+			menu.add(text);
+
+			//mm0, 1, 11, then the repgen name
+			if( menu.size() == 4 && menu.get(0).equals("mm0") && menu.get(1).equals("1") && menu.get(2).equals("11") ) {
+				startRepgen(text);
+				return;
+			}
+
+			//mm0, 1, 24, 5 is batch FM, the queue list comes after the result title and a 1
+			if( menu.size() >= 10 && menu.get(0).equals("mm0") && menu.get(2).equals("24") ) {
+				int size = menu.size();
+
+				if( text.equals("0") && menu.get(size - 2).equals("1") && stage == 0 ) {
+					stage = 1;
+					frame("Batch~Action=DisplayLine~Text=Batch Queues Available: 0-" + (QUEUES - 1));
+				}
+				else if( stage == 1 )
+					stage = 2;
+				else if( stage == 2 && text.equals("1") ) {
+					stage = 0;
+					Job job = startJob(sym, "MISCFMPOST", menu.get(size - 5), queue(menu.get(size - 2)));
+					System.out.println("Started FM " + job.name + " as seq " + job.seq);
+				}
+			}
+
+			input("10031", "Selection");
+		}
+
+		private int queue(String text) {
+			try {
+				return Math.max(0, Math.min(QUEUES - 1, Integer.parseInt(text.trim())));
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+		}
+
+		private void startRepgen(String name) throws IOException {
+			File file = getFile(sym, FileType.REPGEN, name.trim());
+
+			if( !file.isFile() ) {
+				frame("Batch~Action=DisplayLine~Text=" + name + ": No such file or directory");
+				input("10031", "Selection");
+				menu.clear();
+				return;
+			}
+
+			repgen = name.trim();
+			prompts = new ArrayList<String>();
+			stage = 0;
+
+			//Prompts are the literal text of each ...READ("...") in the source
+			Matcher matcher = Pattern.compile("(?i)(CHARACTER|NUMBER|DATE|YESNO|MONEY|RATE|CODE)READ\\s*\\(\\s*\"([^\"]*)\"").matcher(readFile(file));
+
+			while( matcher.find() )
+				prompts.add(matcher.group(2));
+
+			nextPrompt();
+		}
+
+		private void nextPrompt() throws IOException {
+			if( stage < prompts.size() )
+				input("10000", prompts.get(stage));
+			else
+				input("20301", "Specification File Complete");
+		}
+
+		/**
+		 * Prompt answers, then the same batch options dialog as any batch run
+		 */
+		private void repgenStep(String text) throws IOException {
+			int afterPrompts = stage - prompts.size();
+			stage++;
+
+			if( afterPrompts < 0 ) {
+				nextPrompt();
+				return;
+			}
+
+			switch( afterPrompts ) {
+			case 0:
+				//Newline after the last prompt
+				input("10031", "Run Options");
+				break;
+			case 1:
+				frame("Batch~Action=DisplayLine~Text=Batch Queues Available: 0-" + (QUEUES - 1));
+				input("10031", "Queue");
+				break;
+			case 2:
+				menu.add(text);
+				input("10031", "Okay");
+				break;
+			default:
+				Job job = startJob(sym, "REPWRITER", repgen, queue(menu.get(menu.size() - 1)));
+				System.out.println("Started repgen " + job.name + " as seq " + job.seq);
+
+				prompts = null;
+				repgen = null;
+				menu.clear();
+				input("10031", "Selection");
+			}
+		}
+	}
+}
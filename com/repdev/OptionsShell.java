@@ -30,6 +30,9 @@ import org.eclipse.swt.widgets.TabFolder;
 import org.eclipse.swt.widgets.TabItem;
 import org.eclipse.swt.widgets.Text;
 
+import com.repdev.parser.IncludeCache;
+import com.repdev.parser.SymbolIndex;
+
 /**
  * OptionsShell version 2
  * @author Ryan Schultz
@@ -48,9 +51,9 @@ public class OptionsShell {
 	private Composite serverOptions, editorOptions, documentationOptions, developerOptions;
 	
 	// Controls
-	private Spinner tabSpinner;
+	private Spinner tabSpinner, poolSpinner, saveWindowSpinner, retrieveWindowSpinner, cacheSpinner;
 	private Combo styleCombo, hour, minute;
-	private Label varsLabel, serverLabel, portLabel, errChkPrefixLabel, errChkSuffixLabel, nameInTitleLabel, hostInTitleLabel;
+	private Label varsLabel, serverLabel, portLabel, poolLabel, saveWindowLabel, retrieveWindowLabel, errChkPrefixLabel, errChkSuffixLabel, nameInTitleLabel, hostInTitleLabel;
 	private Text  serverText, portText, errCheckPrefix, errCheckSuffix;
 	private Button varsButton, neverTerm, devForgetBox, backupEnable, fileNameInTitle, hostInTitle;
 	
@@ -106,6 +109,10 @@ public class OptionsShell {
 				else {*/
 					Config.setServer(serverText.getText());
 					Config.setPort(Integer.parseInt(portText.getText()));
+					Config.setSessionPoolSize(poolSpinner.getSelection());
+					Config.setSaveWindow(saveWindowSpinner.getSelection());
+					Config.setRetrieveWindow(retrieveWindowSpinner.getSelection());
+					Config.setFileCacheSize(cacheSpinner.getSelection());
 				//}
 
 				if( RepDevMain.DEVELOPER )
@@ -183,6 +190,33 @@ public class OptionsShell {
 		portText = new Text(serverGroup, SWT.SINGLE | SWT.BORDER);
 		portText.setText(""+Config.getPort());
 		
+		poolLabel = new Label(serverGroup, SWT.NONE);
+		poolLabel.setText("Connections per Sym");
+		poolLabel.setToolTipText("Extra connections let file opens, saves and error checks run while a report is running (Log out Sym Required)");
+		
+		poolSpinner = new Spinner(serverGroup, SWT.BORDER);
+		poolSpinner.setMinimum(1);
+		poolSpinner.setMaximum(8);
+		poolSpinner.setSelection(Config.getSessionPoolSize());
+		
+		saveWindowLabel = new Label(serverGroup, SWT.NONE);
+		saveWindowLabel.setText("Save Window (parts)");
+		saveWindowLabel.setToolTipText("How many parts of a file to send before waiting for the host, leave at 1 unless saves have been checked against your host");
+		
+		saveWindowSpinner = new Spinner(serverGroup, SWT.BORDER);
+		saveWindowSpinner.setMinimum(1);
+		saveWindowSpinner.setMaximum(16);
+		saveWindowSpinner.setSelection(Config.getSaveWindow());
+		
+		retrieveWindowLabel = new Label(serverGroup, SWT.NONE);
+		retrieveWindowLabel.setText("Retrieve Window (files)");
+		retrieveWindowLabel.setToolTipText("How many files to ask the host for at once when opening several, leave at 1 unless your host handles overlapping commands");
+		
+		retrieveWindowSpinner = new Spinner(serverGroup, SWT.BORDER);
+		retrieveWindowSpinner.setMinimum(1);
+		retrieveWindowSpinner.setMaximum(8);
+		retrieveWindowSpinner.setSelection(Config.getRetrieveWindow());
+		
 		Group keepAliveGroup = new Group(serverOptions,SWT.NONE);
 		keepAliveGroup.setText("Keep Alive Options (Log out Sym Required)");
 		layout = new FormLayout();
@@ -234,6 +268,38 @@ public class OptionsShell {
 			minute.setEnabled(true);					
 		}
 		
+		Group cacheGroup = new Group(serverOptions, SWT.NONE);
+		cacheGroup.setText("Local File Cache");
+		layout = new FormLayout();
+		layout.marginTop = 5;
+		layout.marginBottom = 5;
+		layout.marginLeft = 5;
+		layout.marginRight = 5;
+		layout.spacing = 5;
+		cacheGroup.setLayout(layout);
+		
+		Label cacheLabel = new Label(cacheGroup, SWT.NONE);
+		cacheLabel.setText("Cache Size (MB)");
+		
+		cacheSpinner = new Spinner(cacheGroup, SWT.BORDER);
+		cacheSpinner.setMinimum(1);
+		cacheSpinner.setMaximum(2000);
+		cacheSpinner.setSelection(Config.getFileCacheSize());
+		
+		final Label cacheStats = new Label(cacheGroup, SWT.NONE);
+		cacheStats.setText(getCacheStats());
+		
+		Button clearCache = new Button(cacheGroup, SWT.PUSH);
+		clearCache.setText("Clear Cache");
+		clearCache.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				FileContentCache.clear();
+				IncludeCache.clear();
+				SymbolIndex.clear();
+				cacheStats.setText(getCacheStats());
+			}
+		});
+		
 		FormData data = new FormData();
 		data.left = new FormAttachment(0);
 		data.right = new FormAttachment(100);
@@ -247,6 +313,35 @@ public class OptionsShell {
 		data.top = new FormAttachment(serverGroup);
 		keepAliveGroup.setLayoutData(data);
 		
+		data = new FormData();
+		data.left = new FormAttachment(0);
+		data.right = new FormAttachment(100);
+		data.top = new FormAttachment(keepAliveGroup);
+		cacheGroup.setLayoutData(data);
+		
+		// align controls for the cache group:
+		data = new FormData();
+		data.left = new FormAttachment(0);
+		data.top = new FormAttachment(0);
+		data.width = 140;
+		cacheLabel.setLayoutData(data);
+		
+		data = new FormData();
+		data.left = new FormAttachment(cacheLabel);
+		data.top = new FormAttachment(0);
+		cacheSpinner.setLayoutData(data);
+		
+		data = new FormData();
+		data.left = new FormAttachment(0);
+		data.top = new FormAttachment(cacheSpinner);
+		data.right = new FormAttachment(clearCache);
+		cacheStats.setLayoutData(data);
+		
+		data = new FormData();
+		data.top = new FormAttachment(cacheSpinner);
+		data.right = new FormAttachment(100);
+		clearCache.setLayoutData(data);
+		
 		// align the controls for the server group:
 		data = new FormData();
 		data.left = new FormAttachment(0);
@@ -274,6 +369,39 @@ public class OptionsShell {
 		data.width = 140;
 		portText.setLayoutData(data);
 		
+		data = new FormData();
+		data.left = new FormAttachment(0);
+		data.top = new FormAttachment(portText);
+		data.width = 140;
+		poolLabel.setLayoutData(data);
+		
+		data = new FormData();
+		data.left = new FormAttachment(poolLabel);
+		data.top = new FormAttachment(portText);
+		poolSpinner.setLayoutData(data);
+		
+		data = new FormData();
+		data.left = new FormAttachment(0);
+		data.top = new FormAttachment(poolSpinner);
+		data.width = 140;
+		saveWindowLabel.setLayoutData(data);
+		
+		data = new FormData();
+		data.left = new FormAttachment(saveWindowLabel);
+		data.top = new FormAttachment(poolSpinner);
+		saveWindowSpinner.setLayoutData(data);
+		
+		data = new FormData();
+		data.left = new FormAttachment(0);
+		data.top = new FormAttachment(saveWindowSpinner);
+		data.width = 140;
+		retrieveWindowLabel.setLayoutData(data);
+		
+		data = new FormData();
+		data.left = new FormAttachment(retrieveWindowLabel);
+		data.top = new FormAttachment(saveWindowSpinner);
+		retrieveWindowSpinner.setLayoutData(data);
+		
 		// align controls for the keepalive group:
 		data = new FormData();
 		data.left = new FormAttachment(0);
@@ -311,6 +439,12 @@ public class OptionsShell {
 				
 	}
 	
+	private String getCacheStats() {
+		return FileContentCache.getFileCount() + " files, " + Util.getByteStr(FileContentCache.getTotalSize()) + " (" + FileContentCache.getHits() + " hits, " + FileContentCache.getMisses() + " misses)\n"
+			+ "Parsed includes: " + IncludeCache.getEntryCount() + " files, " + Util.getByteStr(IncludeCache.getTotalSize()) + " (" + IncludeCache.getHits() + " hits, " + IncludeCache.getMisses() + " misses)\n"
+			+ "Include symbol index: " + SymbolIndex.getFileCount() + " files (" + SymbolIndex.getHits() + " hits, " + SymbolIndex.getMisses() + " misses)";
+	}
+	
 	private void createEditorOptions() {
 		editorOptions = new Composite(tabs,SWT.NONE);
 		
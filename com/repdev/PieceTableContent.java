@@ -0,0 +1,577 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.util.ArrayList;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.custom.StyledTextContent;
+import org.eclipse.swt.custom.TextChangeListener;
+import org.eclipse.swt.custom.TextChangedEvent;
+import org.eclipse.swt.custom.TextChangingEvent;
+
+/**
+ * Editor document stored as a piece table, so edits and reads don't copy the whole file.
+ *
+ * The text loaded from the file is never changed, everything typed is appended to a second buffer,
+ * and the document is a list of pieces pointing into one or the other. Typing at the same spot just
+ * grows the last piece. Line starts are kept in an array that is only rescanned around the edit,
+ * the offsets after it are shifted lazily.
+ *
+ * getCharSequence() reads the document in place for code on the UI thread (parser, find),
+ * snapshot() gives a frozen copy of the piece list for background threads, still without copying any text.
+ *
+ */
+public class PieceTableContent implements StyledTextContent {
+	//Past this many pieces, flatten everything back into one buffer
+	private static final int MAX_PIECES = 1000;
+
+	private final ArrayList<TextChangeListener> listeners = new ArrayList<TextChangeListener>();
+	private final String lineDelimiter = System.getProperty("line.separator");
+
+	//Nothing already written to either buffer is ever changed, snapshots depend on that
+	private char[] original = new char[0];
+	private char[] added = new char[1024];
+	private int addedLength = 0;
+
+	private final ArrayList<Piece> pieces = new ArrayList<Piece>();
+	private int charCount = 0;
+
+	//Last piece we looked up and where it starts, edits and reads tend to stay in one place
+	private int cacheIndex = 0, cacheStart = 0;
+
+	//Lines from shiftLine on still need shiftBy added to them
+	private int[] lineStarts = new int[64];
+	private int lineCount = 1;
+	private int shiftLine = 1, shiftBy = 0;
+
+	//Line starts found by the last scanLines
+	private int[] found = new int[16];
+	private int foundCount = 0;
+
+	private final CharSequence view = new CharSequence(){
+		public int length() {
+			return charCount;
+		}
+
+		public char charAt(int index) {
+			if( index < 0 || index >= charCount )
+				throw new IndexOutOfBoundsException("" + index);
+
+			return PieceTableContent.this.charAt(index);
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			return getTextRange(start, end - start);
+		}
+
+		public String toString() {
+			return getTextRange(0, charCount);
+		}
+	};
+
+	private static class Piece {
+		final boolean add;
+		final int start;
+		int length;
+
+		Piece(boolean add, int start, int length) {
+			this.add = add;
+			this.start = start;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Read only view of the document, no copying. UI thread only, it follows the editor as it changes.
+	 */
+	public CharSequence getCharSequence() {
+		return view;
+	}
+
+	/**
+	 * Document as it is right now, safe to hand to another thread
+	 */
+	public CharSequence snapshot() {
+		return new Snapshot(this);
+	}
+
+	/**
+	 * @return View of the editor's text, or a plain copy if it isn't using a PieceTableContent
+	 */
+	public static CharSequence getCharSequence(StyledText txt) {
+		if( txt.getContent() instanceof PieceTableContent )
+			return ((PieceTableContent) txt.getContent()).getCharSequence();
+
+		return txt.getText();
+	}
+
+	/**
+	 * @return Snapshot of the editor's text, or a plain copy if it isn't using a PieceTableContent
+	 */
+	public static CharSequence snapshot(StyledText txt) {
+		if( txt.getContent() instanceof PieceTableContent )
+			return ((PieceTableContent) txt.getContent()).snapshot();
+
+		return txt.getText();
+	}
+
+	public void addTextChangeListener(TextChangeListener listener) {
+		if( listener == null )
+			SWT.error(SWT.ERROR_NULL_ARGUMENT);
+
+		listeners.add(listener);
+	}
+
+	public void removeTextChangeListener(TextChangeListener listener) {
+		if( listener == null )
+			SWT.error(SWT.ERROR_NULL_ARGUMENT);
+
+		listeners.remove(listener);
+	}
+
+	public int getCharCount() {
+		return charCount;
+	}
+
+	public String getLineDelimiter() {
+		return lineDelimiter;
+	}
+
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	public int getOffsetAtLine(int line) {
+		if( line < 0 || line >= lineCount )
+			SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+
+		return lineStart(line);
+	}
+
+	public int getLineAtOffset(int offset) {
+		if( offset < 0 || offset > charCount )
+			SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+
+		return lineAt(offset);
+	}
+
+	public String getLine(int line) {
+		if( line < 0 || line >= lineCount )
+			SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+
+		int start = lineStart(line);
+		int end = line + 1 < lineCount ? lineStart(line + 1) : charCount;
+
+		//Leave off the delimiter
+		if( end > start && charAt(end - 1) == '\n' )
+			end--;
+		if( end > start && charAt(end - 1) == '\r' )
+			end--;
+
+		return getTextRange(start, end - start);
+	}
+
+	public String getTextRange(int start, int length) {
+		if( start < 0 || length < 0 || start + length > charCount )
+			SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+
+		if( length == 0 )
+			return "";
+
+		char[] chars = new char[length];
+		int i = find(start), pos = start - cacheStart, done = 0;
+
+		while( done < length ) {
+			Piece piece = pieces.get(i++);
+			int count = Math.min(piece.length - pos, length - done);
+
+			System.arraycopy(piece.add ? added : original, piece.start + pos, chars, done, count);
+			done += count;
+			pos = 0;
+		}
+
+		return new String(chars);
+	}
+
+	public void setText(String text) {
+		if( text == null )
+			SWT.error(SWT.ERROR_NULL_ARGUMENT);
+
+		setBuffers(text.toCharArray());
+
+		//Whole new file, rebuild the line index from scratch
+		scanLines(0, charCount, true);
+		lineCount = 1;
+		ensureLines(foundCount + 1);
+		lineStarts[0] = 0;
+		System.arraycopy(found, 0, lineStarts, 1, foundCount);
+		lineCount += foundCount;
+		shiftLine = lineCount;
+		shiftBy = 0;
+
+		TextChangedEvent event = new TextChangedEvent(this);
+
+		for( TextChangeListener listener : new ArrayList<TextChangeListener>(listeners) )
+			listener.textSet(event);
+	}
+
+	public void replaceTextRange(int start, int replaceLength, String text) {
+		if( text == null )
+			SWT.error(SWT.ERROR_NULL_ARGUMENT);
+
+		if( start < 0 || replaceLength < 0 || start + replaceLength > charCount )
+			SWT.error(SWT.ERROR_INVALID_ARGUMENT);
+
+		TextChangingEvent event = new TextChangingEvent(this);
+		event.start = start;
+		event.newText = text;
+		event.replaceCharCount = replaceLength;
+		event.newCharCount = text.length();
+		event.replaceLineCount = countLines(view, start, start + replaceLength);
+		event.newLineCount = countLines(text, 0, text.length());
+
+		for( TextChangeListener listener : new ArrayList<TextChangeListener>(listeners) )
+			listener.textChanging(event);
+
+		//Old line numbers for the edited range, the line index hasn't changed yet
+		int first = lineAt(start);
+		int last = lineAt(start + replaceLength);
+
+		replacePieces(start, replaceLength, text);
+		charCount += text.length() - replaceLength;
+
+		updateLines(start, first, last, text.length() - replaceLength);
+
+		if( pieces.size() > MAX_PIECES )
+			compact();
+
+		TextChangedEvent changed = new TextChangedEvent(this);
+
+		for( TextChangeListener listener : new ArrayList<TextChangeListener>(listeners) )
+			listener.textChanged(changed);
+	}
+
+	/**
+	 * Number of line breaks between start and end, \r\n counts once
+	 */
+	private static int countLines(CharSequence text, int start, int end) {
+		int count = 0;
+
+		for( int i = start; i < end; i++ ) {
+			char c = text.charAt(i);
+
+			if( c == '\r' ) {
+				count++;
+
+				if( i + 1 < end && text.charAt(i + 1) == '\n' )
+					i++;
+			}
+			else if( c == '\n' )
+				count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * @return Index of the piece holding offset (or pieces.size() at the very end), cacheStart is where it starts
+	 */
+	private int find(int offset) {
+		if( cacheIndex > pieces.size() ) {
+			cacheIndex = 0;
+			cacheStart = 0;
+		}
+
+		//Far away jumps are quicker from whichever end is closer
+		if( offset < cacheStart / 2 ) {
+			cacheIndex = 0;
+			cacheStart = 0;
+		}
+
+		while( cacheIndex > 0 && offset < cacheStart ) {
+			cacheIndex--;
+			cacheStart -= pieces.get(cacheIndex).length;
+		}
+
+		while( cacheIndex < pieces.size() && offset >= cacheStart + pieces.get(cacheIndex).length ) {
+			cacheStart += pieces.get(cacheIndex).length;
+			cacheIndex++;
+		}
+
+		return cacheIndex;
+	}
+
+	private char charAt(int offset) {
+		Piece piece = pieces.get(find(offset));
+
+		return (piece.add ? added : original)[piece.start + offset - cacheStart];
+	}
+
+	/**
+	 * Makes sure a piece starts at offset
+	 * @return Index of that piece
+	 */
+	private int split(int offset) {
+		int i = find(offset);
+
+		if( offset == cacheStart )
+			return i;
+
+		Piece piece = pieces.get(i);
+		int keep = offset - cacheStart;
+
+		pieces.add(i + 1, new Piece(piece.add, piece.start + keep, piece.length - keep));
+		piece.length = keep;
+
+		cacheIndex = i + 1;
+		cacheStart = offset;
+
+		return i + 1;
+	}
+
+	private void replacePieces(int start, int replaceLength, String text) {
+		//Typing right after the last thing typed, just grow that piece
+		if( replaceLength == 0 && text.length() > 0 && start > 0 ) {
+			int i = find(start - 1);
+			Piece piece = pieces.get(i);
+
+			if( piece.add && piece.start + piece.length == addedLength && cacheStart + piece.length == start ) {
+				append(text);
+				piece.length += text.length();
+				return;
+			}
+		}
+
+		int first = split(start);
+		int last = split(start + replaceLength);
+
+		pieces.subList(first, last).clear();
+
+		if( text.length() > 0 )
+			pieces.add(first, new Piece(true, append(text), text.length()));
+
+		cacheIndex = first;
+		cacheStart = start;
+	}
+
+	/**
+	 * Adds text to the end of the add buffer
+	 * @return Where it went
+	 */
+	private int append(String text) {
+		int start = addedLength;
+
+		if( addedLength + text.length() > added.length ) {
+			//New array, snapshots may still be reading the old one
+			char[] grown = new char[Math.max(added.length * 2, addedLength + text.length())];
+			System.arraycopy(added, 0, grown, 0, addedLength);
+			added = grown;
+		}
+
+		text.getChars(0, text.length(), added, addedLength);
+		addedLength += text.length();
+
+		return start;
+	}
+
+	private void setBuffers(char[] text) {
+		original = text;
+		added = new char[1024];
+		addedLength = 0;
+
+		pieces.clear();
+		charCount = text.length;
+		cacheIndex = 0;
+		cacheStart = 0;
+
+		if( text.length > 0 )
+			pieces.add(new Piece(false, 0, text.length));
+	}
+
+	/**
+	 * Copies the document into a single new buffer, the line index doesn't change
+	 */
+	private void compact() {
+		setBuffers(getTextRange(0, charCount).toCharArray());
+	}
+
+	private int lineStart(int line) {
+		return line >= shiftLine ? lineStarts[line] + shiftBy : lineStarts[line];
+	}
+
+	private int lineAt(int offset) {
+		int low = 0, high = lineCount - 1;
+
+		while( low < high ) {
+			int mid = (low + high + 1) >>> 1;
+
+			if( lineStart(mid) <= offset )
+				low = mid;
+			else
+				high = mid - 1;
+		}
+
+		return low;
+	}
+
+	/**
+	 * Fixes the line index after an edit. Only the lines the edit touched are rescanned, the ones after it
+	 * get the change in length added to shiftBy. first and last are the old lines at the start and end of the replaced text.
+	 */
+	private void updateLines(int start, int first, int last, int delta) {
+		//The break before start can turn into \r\n or stop being one
+		if( first > 0 && lineStart(first) == start )
+			first--;
+
+		//Fold the pending shift in up to the edit, so everything after it has the same shift
+		if( shiftBy != 0 ) {
+			for( int i = shiftLine; i <= last; i++ )
+				lineStarts[i] += shiftBy;
+
+			for( int i = last + 1; i < shiftLine && i < lineCount; i++ )
+				lineStarts[i] -= shiftBy;
+		}
+
+		shiftLine = last + 1;
+		shiftBy += delta;
+
+		//Swap the old lines inside the edit for whatever breaks are there now
+		int scanEnd = last + 1 < lineCount ? lineStart(last + 1) : charCount;
+		scanLines(lineStart(first), scanEnd, last + 1 >= lineCount);
+
+		int newCount = lineCount - (last - first) + foundCount;
+		ensureLines(newCount);
+
+		if( foundCount != last - first )
+			System.arraycopy(lineStarts, last + 1, lineStarts, first + 1 + foundCount, lineCount - (last + 1));
+
+		System.arraycopy(found, 0, lineStarts, first + 1, foundCount);
+		shiftLine = first + 1 + foundCount;
+		lineCount = newCount;
+	}
+
+	/**
+	 * Puts the start of every line that begins in start..end into found. A break right at end is only counted
+	 * for the last line, otherwise the line after it is already in the index.
+	 */
+	private void scanLines(int start, int end, boolean toEnd) {
+		foundCount = 0;
+
+		for( int i = start; i < end; i++ ) {
+			char c = charAt(i);
+
+			if( c == '\n' || (c == '\r' && (i + 1 >= charCount || charAt(i + 1) != '\n')) ) {
+				if( i + 1 < end || toEnd ) {
+					if( foundCount == found.length ) {
+						int[] grown = new int[found.length * 2];
+						System.arraycopy(found, 0, grown, 0, foundCount);
+						found = grown;
+					}
+
+					found[foundCount++] = i + 1;
+				}
+			}
+		}
+	}
+
+	private void ensureLines(int size) {
+		if( size > lineStarts.length ) {
+			int[] grown = new int[Math.max(lineStarts.length * 2, size)];
+			System.arraycopy(lineStarts, 0, grown, 0, lineCount);
+			lineStarts = grown;
+		}
+	}
+
+	/**
+	 * Frozen copy of the piece list, pointing at the same buffers.
+	 * Nothing in the buffers it can reach ever changes, so it can be read from any thread, one at a time.
+	 */
+	private static class Snapshot implements CharSequence {
+		private final char[] original, added;
+		private final boolean[] add;
+		private final int[] starts, offsets;
+		private final int length;
+		private int last = 0;
+
+		Snapshot(PieceTableContent content) {
+			int count = content.pieces.size();
+
+			original = content.original;
+			added = content.added;
+			length = content.charCount;
+			add = new boolean[count];
+			starts = new int[count];
+			offsets = new int[count + 1];
+
+			for( int i = 0; i < count; i++ ) {
+				Piece piece = content.pieces.get(i);
+				add[i] = piece.add;
+				starts[i] = piece.start;
+				offsets[i + 1] = offsets[i] + piece.length;
+			}
+		}
+
+		public int length() {
+			return length;
+		}
+
+		public char charAt(int index) {
+			if( index < 0 || index >= length )
+				throw new IndexOutOfBoundsException("" + index);
+
+			int i = last;
+
+			if( index < offsets[i] || index >= offsets[i + 1] ) {
+				int low = 0, high = starts.length - 1;
+
+				while( low < high ) {
+					int mid = (low + high + 1) >>> 1;
+
+					if( offsets[mid] <= index )
+						low = mid;
+					else
+						high = mid - 1;
+				}
+
+				i = last = low;
+			}
+
+			return (add[i] ? added : original)[starts[i] + index - offsets[i]];
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			if( start < 0 || end > length || start > end )
+				throw new IndexOutOfBoundsException(start + "," + end);
+
+			char[] chars = new char[end - start];
+
+			for( int i = start; i < end; i++ )
+				chars[i - start] = charAt(i);
+
+			return new String(chars);
+		}
+
+		public String toString() {
+			return subSequence(0, length).toString();
+		}
+	}
+}
@@ -0,0 +1,550 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.swt.widgets.ProgressBar;
+import org.eclipse.swt.widgets.Text;
+
+/**
+ * Session that keeps several logged in DirectSymitarSessions open to the same sym.
+ *
+ * Every call borrows one idle connection, runs on it, and gives it back, so a long running
+ * repgen or a background error check only ties up its own connection instead of the whole sym.
+ * If every connection is busy, callers wait until one is returned, up to LEASE_TIMEOUT seconds.
+ * A connection that is given back broken (host hung up, socket died) is thrown out and logged in again.
+ *
+ * The first connection does the interactive login (bad password prompts, etc), the rest
+ * reuse whatever user ID it ended up with. If some of the extra connections can't log in,
+ * the pool just runs with fewer of them.
+ *
+ */
+public class PooledSymitarSession extends SymitarSession {
+	private final int size;
+	private final ArrayList<DirectSymitarSession> connections = new ArrayList<DirectSymitarSession>();
+	private final LinkedBlockingQueue<DirectSymitarSession> idle = new LinkedBlockingQueue<DirectSymitarSession>();
+	private volatile boolean connected = false;
+	private int replacing = 0; //Logins going on in the background to replace broken connections
+
+	private static final int LEASE_TIMEOUT = 120; //Seconds to wait for a free connection before giving up
+	//Put on the idle queue by disconnect() to wake up anyone still waiting for a connection
+	private static final DirectSymitarSession CLOSED = new DirectSymitarSession();
+
+	public PooledSymitarSession(int size) {
+		this.size = Math.max(1, size);
+	}
+
+	@Override
+	public SessionError connect(String server, String aixUsername, String aixPassword, int sym, String userID) {
+		if( connected )
+			return SessionError.ALREADY_CONNECTED;
+
+		this.sym = sym;
+		this.server = server;
+		this.aixUsername = aixUsername;
+		this.aixPassword = aixPassword;
+		this.userID = userID;
+		idle.clear();
+
+		DirectSymitarSession first = new DirectSymitarSession();
+		SessionError error = first.connect(server, aixUsername, aixPassword, sym, userID);
+
+		if( error != SessionError.NONE )
+			return error;
+
+		//The first login may have asked for a new password
+		this.userID = first.getUserID();
+		add(first);
+
+		//Log in the rest at the same time, logins are slow
+		ArrayList<Thread> logins = new ArrayList<Thread>();
+
+		for( int i = 1; i < size; i++ ){
+			Thread login = new Thread(new Runnable(){
+				public void run() {
+					DirectSymitarSession session = new DirectSymitarSession();
+
+					try{
+						if( session.connect(PooledSymitarSession.this.server, PooledSymitarSession.this.aixUsername, PooledSymitarSession.this.aixPassword, PooledSymitarSession.this.sym, PooledSymitarSession.this.userID) == SessionError.NONE )
+							add(session);
+						else
+							session.disconnect();
+					}
+					catch(Exception e){
+						e.printStackTrace();
+						session.disconnect();
+					}
+				}
+			});
+
+			login.start();
+			logins.add(login);
+		}
+
+		for( Thread login : logins ){
+			try {
+				login.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+
+		System.out.println("Connected to Sym " + sym + " with " + connections.size() + " of " + size + " pooled connections");
+
+		connected = true;
+		return SessionError.NONE;
+	}
+
+	private synchronized void add(DirectSymitarSession session) {
+		connections.add(session);
+		idle.offer(session);
+	}
+
+	/**
+	 * Borrows a connection, waiting for one to be returned if they are all in use.
+	 * Every lease must be given back with release() in a finally block.
+	 *
+	 * @return Connection, or null if we are not connected, got disconnected while waiting or waited too long
+	 */
+	private DirectSymitarSession lease() {
+		long requested = System.nanoTime();
+		long deadline = System.currentTimeMillis() + LEASE_TIMEOUT * 1000L;
+
+		while( connected ) {
+			DirectSymitarSession session;
+
+			try {
+				session = idle.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+
+			if( session == null ) {
+				System.out.println("Gave up after waiting " + LEASE_TIMEOUT + " seconds for a free connection to Sym " + sym);
+				return null;
+			}
+
+			//Pass it on so the next waiter wakes up too
+			if( session == CLOSED ) {
+				idle.offer(CLOSED);
+				return null;
+			}
+
+			//Died while sitting idle, host timeout or the like
+			if( session.isBroken() ) {
+				replace(session);
+				continue;
+			}
+
+			session.getMetrics().leased(requested);
+			return session;
+		}
+
+		return null;
+	}
+
+	private void release(DirectSymitarSession session) {
+		if( session == null )
+			return;
+
+		synchronized (this) {
+			//If we were disconnected while this was out, don't put it back
+			if( !connections.contains(session) )
+				return;
+
+			if( !session.isBroken() ) {
+				idle.offer(session);
+				return;
+			}
+		}
+
+		replace(session);
+	}
+
+	/**
+	 * Throws out a broken connection and logs in a new one in the background.
+	 * If that fails too and there is nothing left, the whole pool counts as disconnected.
+	 */
+	private void replace(DirectSymitarSession session) {
+		synchronized (this) {
+			if( !connections.remove(session) )
+				return;
+
+			replacing++;
+		}
+
+		System.out.println("Lost a pooled connection to Sym " + sym + ", logging in a new one");
+		session.disconnect();
+
+		new Thread(new Runnable(){
+			public void run() {
+				DirectSymitarSession fresh = new DirectSymitarSession();
+				boolean ok = false;
+
+				try{
+					ok = fresh.connect(server, aixUsername, aixPassword, sym, userID) == SessionError.NONE;
+				}
+				catch(Exception e){
+					e.printStackTrace();
+				}
+
+				synchronized (PooledSymitarSession.this) {
+					replacing--;
+
+					if( ok && connected ) {
+						add(fresh);
+						return;
+					}
+
+					if( connected && connections.isEmpty() && replacing == 0 ) {
+						System.out.println("Every pooled connection to Sym " + sym + " is gone");
+						connected = false;
+						idle.offer(CLOSED);
+					}
+				}
+
+				fresh.disconnect();
+			}
+		}).start();
+	}
+
+	/**
+	 * @return Number of logged in connections in this pool
+	 */
+	public synchronized int getConnectionCount() {
+		return connections.size();
+	}
+
+	@Override
+	public synchronized SessionError disconnect() {
+		SessionError result = SessionError.NONE;
+
+		for( DirectSymitarSession session : connections )
+			if( session.disconnect() != SessionError.NONE )
+				result = SessionError.IO_ERROR;
+
+		connections.clear();
+		idle.clear();
+		connected = false;
+
+		//Anyone stuck in lease() gets CLOSED and gives up
+		idle.offer(CLOSED);
+
+		return result;
+	}
+
+	@Override
+	public boolean isConnected() {
+		return connected;
+	}
+
+	@Override
+	public String getFile(SymitarFile file) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return null;
+
+		try{
+			return session.getFile(file);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public SessionError getFile(SymitarFile file, FileChunkListener listener) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return SessionError.NOT_CONNECTED;
+
+		try{
+			return session.getFile(file, listener);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public HashMap<SymitarFile, String> getFiles(Collection<SymitarFile> files, FileRetrieveListener listener) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return new HashMap<SymitarFile, String>();
+
+		try{
+			return session.getFiles(files, listener);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public boolean fileExists(SymitarFile file) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return false;
+
+		try{
+			return session.fileExists(file);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public SessionError removeFile(SymitarFile file) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return SessionError.NOT_CONNECTED;
+
+		try{
+			return session.removeFile(file);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public SessionError saveFile(SymitarFile file, String text) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return SessionError.NOT_CONNECTED;
+
+		try{
+			return session.saveFile(file, text);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public SessionError renameFile(SymitarFile file, String newName) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return SessionError.NOT_CONNECTED;
+
+		try{
+			return session.renameFile(file, newName);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public RunRepgenResult runRepGen(String name, int queue, ProgressBar progress, Text text, PromptListener prompter) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return new RunRepgenResult(-1,0);
+
+		try{
+			return session.runRepGen(name, queue, progress, text, prompter);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public boolean isSeqRunning(int seq) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return false;
+
+		try{
+			return session.isSeqRunning(seq);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public HashSet<Integer> getRunningSeqs() {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return null;
+
+		try{
+			return session.getRunningSeqs();
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public void terminateRepgen(int seq) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return;
+
+		try{
+			session.terminateRepgen(seq);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public RunFMResult runBatchFM(String searchTitle, int searchDays, FMFile file, int queue) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return null;
+
+		try{
+			return session.runBatchFM(searchTitle, searchDays, file, queue);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public ArrayList<PrintItem> getPrintItems(String query, int limit) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return null;
+
+		try{
+			return session.getPrintItems(query, limit);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public ArrayList<PrintItem> getPrintItems(Sequence seq) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return null;
+
+		try{
+			return session.getPrintItems(seq);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public ArrayList<SymitarFile> getFileList(FileType type, String search) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return new ArrayList<SymitarFile>();
+
+		try{
+			return session.getFileList(type, search);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public SessionError printFileLPT(SymitarFile file, int queue, boolean formsOverride, int formLength, int startPage, int endPage, int copies, boolean landscape, boolean duplex, int queuePriority) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return SessionError.NOT_CONNECTED;
+
+		try{
+			return session.printFileLPT(file, queue, formsOverride, formLength, startPage, endPage, copies, landscape, duplex, queuePriority);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public SessionError printFileTPT(SymitarFile file, int queue) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return SessionError.NOT_CONNECTED;
+
+		try{
+			return session.printFileTPT(file, queue);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public ErrorCheckResult errorCheckRepGen(String filename) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return null;
+
+		try{
+			return session.errorCheckRepGen(filename);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+	@Override
+	public ErrorCheckResult installRepgen(String f) {
+		DirectSymitarSession session = lease();
+
+		if( session == null )
+			return null;
+
+		try{
+			return session.installRepgen(f);
+		}
+		finally{
+			release(session);
+		}
+	}
+
+}
@@ -0,0 +1,379 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * Local index of what is in each print control report, so looking up which batch run belongs to which
+ * repgen or FM doesn't mean downloading every report in the print history.
+ *
+ * For each report we only keep what getReportSeqs and getFMSeqs look for in the header: the repgen name,
+ * the time processing started, and the FM posting name. A report is only read the first time we see its
+ * print seq, after that it's a lookup here. Print seqs get reused once the host purges old reports, so an
+ * entry is thrown away if the batch seq or date we have no longer match the print item. A header that's missing
+ * its fields, cut off at HEADER_LIMIT or from a report that was still being written, isn't kept, it's read again
+ * the next time.
+ *
+ * Saved to cache/printindex/SYM.txt, one line per report.
+ *
+ */
+public class PrintIndex {
+	private static final String INDEX_DIR = "cache" + File.separator + "printindex";
+	private static final String ENCODING = "UTF-8";
+	private static final int HEADER_LIMIT = 32768; //Chars of each report we look through for the header
+	private static final int MAX_ENTRIES = 5000;
+
+	private static final String BEGUN = "Processing begun on", PROMPT = "(newline when done):", POSTING = "Name of Posting: ";
+
+	private static final HashMap<Integer, PrintIndex> indexes = new HashMap<Integer, PrintIndex>();
+
+	private final int sym;
+	private final HashMap<Integer, Entry> entries = new HashMap<Integer, Entry>();
+	private boolean dirty = false;
+
+	/**
+	 * Header fields of one print control report
+	 */
+	public static class Entry {
+		private final int seq, batchSeq;
+		private final Date date;
+		private final int startTime;
+		private final String reportName, fmTitle;
+
+		Entry(int seq, int batchSeq, Date date, int startTime, String reportName, String fmTitle) {
+			this.seq = seq;
+			this.batchSeq = batchSeq;
+			this.date = date;
+			this.startTime = startTime;
+			this.reportName = reportName;
+			this.fmTitle = fmTitle;
+		}
+
+		public int getSeq() {
+			return seq;
+		}
+
+		public int getBatchSeq() {
+			return batchSeq;
+		}
+
+		public Date getDate() {
+			return date;
+		}
+
+		/**
+		 * @return Seconds since midnight processing began, or -1 if this isn't a repgen report
+		 */
+		public int getStartTime() {
+			return startTime;
+		}
+
+		/**
+		 * @return Repgen that was run, or null if this isn't a repgen report
+		 */
+		public String getReportName() {
+			return reportName;
+		}
+
+		/**
+		 * @return Name of the FM posting, or null if this isn't an FM report
+		 */
+		public String getFMTitle() {
+			return fmTitle;
+		}
+
+		/**
+		 * @return If we found the whole repgen header or the FM posting name
+		 */
+		boolean isComplete() {
+			return (startTime >= 0 && reportName != null) || fmTitle != null;
+		}
+
+		boolean matches(PrintItem item) {
+			return batchSeq == item.getBatchSeq() && (date == null ? item.getDate() == null : item.getDate() != null && date.getTime() == item.getDate().getTime());
+		}
+	}
+
+	private PrintIndex(int sym) {
+		this.sym = sym;
+	}
+
+	public static synchronized PrintIndex forSym(int sym) {
+		PrintIndex index = indexes.get(sym);
+
+		if( index == null ) {
+			index = new PrintIndex(sym);
+			index.load();
+			indexes.put(sym, index);
+		}
+
+		return index;
+	}
+
+	private File getIndexFile() {
+		return new File(INDEX_DIR + File.separator + sym + ".txt");
+	}
+
+	/**
+	 * Looks up the header of a print item, reading it from the host only if we haven't seen it before
+	 *
+	 * @param session Session to read new reports with
+	 * @param item
+	 * @return Entry, or null if the report couldn't be read. Entries missing fields are returned but not kept.
+	 */
+	public Entry getEntry(SymitarSession session, PrintItem item) {
+		synchronized (this) {
+			Entry entry = entries.get(item.getSeq());
+
+			if( entry != null && entry.matches(item) )
+				return entry;
+		}
+
+		Entry entry = readHeader(session, item);
+
+		if( entry == null || !entry.isComplete() )
+			return entry;
+
+		synchronized (this) {
+			entries.put(item.getSeq(), entry);
+			dirty = true;
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Reads the start of a report until we have everything we keep. The rest of the report still has to come
+	 * off the wire to keep the session in step, but it's thrown away as it arrives, see FileChunkListener.isCancelled.
+	 */
+	private Entry readHeader(SymitarSession session, PrintItem item) {
+		final StringBuilder header = new StringBuilder();
+		final boolean[] done = new boolean[1];
+
+		SessionError error = session.getFile(new SymitarFile(sym, "" + item.getSeq(), FileType.REPORT), new SymitarSession.FileChunkListener(){
+			public void chunk(SymitarFile file, String data) {
+				if( done[0] )
+					return;
+
+				header.append(data);
+				done[0] = header.length() >= HEADER_LIMIT || isComplete(header);
+			}
+
+			public boolean isCancelled() {
+				return done[0];
+			}
+		});
+
+		if( error != SessionError.NONE )
+			return null;
+
+		String text = header.length() > HEADER_LIMIT ? header.substring(0, HEADER_LIMIT) : header.toString();
+
+		return new Entry(item.getSeq(), item.getBatchSeq(), item.getDate(), parseStartTime(text), parseReportName(text), parseFMTitle(text));
+	}
+
+	private static boolean isComplete(StringBuilder header) {
+		int begun = header.indexOf(BEGUN);
+
+		if( begun >= 0 ) {
+			int prompt = header.indexOf(PROMPT, begun);
+
+			if( prompt >= 0 && header.indexOf("\n", prompt + PROMPT.length()) >= 0 )
+				return true;
+		}
+
+		int posting = header.indexOf(POSTING);
+
+		return posting >= 0 && header.indexOf("\n", posting + POSTING.length()) >= 0;
+	}
+
+	/**
+	 * Time is the 8 chars, HH:MM:SS, after "Processing begun on" and the date
+	 */
+	private static int parseStartTime(String header) {
+		int begun = header.indexOf(BEGUN);
+
+		if( begun < 0 || begun + 49 > header.length() )
+			return -1;
+
+		String timeStr = header.substring(begun + 41, begun + 49);
+
+		try {
+			int time = Integer.parseInt(timeStr.substring(timeStr.lastIndexOf(":") + 1));
+			time += 60 * Integer.parseInt(timeStr.substring(timeStr.indexOf(":") + 1, timeStr.lastIndexOf(":")));
+			time += 3600 * Integer.parseInt(timeStr.substring(0, timeStr.indexOf(":")));
+
+			return time;
+		} catch (RuntimeException e) {
+			return -1;
+		}
+	}
+
+	private static String parseReportName(String header) {
+		int begun = header.indexOf(BEGUN);
+
+		if( begun < 0 )
+			return null;
+
+		int prompt = header.indexOf(PROMPT, begun);
+
+		if( prompt < 0 )
+			return null;
+
+		int end = header.indexOf("\n", prompt + PROMPT.length());
+
+		if( end < 0 || prompt + 21 > end )
+			return null;
+
+		return header.substring(prompt + 21, end);
+	}
+
+	private static String parseFMTitle(String header) {
+		int posting = header.indexOf(POSTING);
+
+		if( posting < 0 )
+			return null;
+
+		int end = header.indexOf("\n", posting + POSTING.length());
+
+		if( end < 0 )
+			return null;
+
+		return header.substring(posting + POSTING.length(), end).trim();
+	}
+
+	private synchronized void load() {
+		File file = getIndexFile();
+
+		if( !file.exists() )
+			return;
+
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+
+			try {
+				String line;
+
+				while( (line = in.readLine()) != null ) {
+					String[] parts = line.split("\t", -1);
+
+					if( parts.length != 6 )
+						continue;
+
+					try {
+						Entry entry = new Entry(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+								parts[2].equals("") ? null : new Date(Long.parseLong(parts[2])), Integer.parseInt(parts[3]),
+								parts[4].equals("") ? null : parts[4], parts[5].equals("") ? null : parts[5]);
+
+						//Older index files kept these too
+						if( entry.isComplete() )
+							entries.put(entry.getSeq(), entry);
+						else
+							dirty = true;
+					} catch (NumberFormatException e) {
+						//Skip bad lines, we'll just read that report again
+					}
+				}
+			}
+			finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes the index out if anything was added since the last save
+	 */
+	public synchronized void save() {
+		if( !dirty )
+			return;
+
+		trim();
+
+		File file = getIndexFile();
+		file.getParentFile().mkdirs();
+
+		try {
+			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), ENCODING));
+
+			try {
+				for( Entry entry : entries.values() ) {
+					out.write(entry.getSeq() + "\t" + entry.getBatchSeq() + "\t" + (entry.getDate() == null ? "" : "" + entry.getDate().getTime()) + "\t" + entry.getStartTime() + "\t" +
+							(entry.getReportName() == null ? "" : entry.getReportName()) + "\t" + (entry.getFMTitle() == null ? "" : entry.getFMTitle()));
+					out.newLine();
+				}
+			}
+			finally {
+				out.close();
+			}
+
+			dirty = false;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Forgets the oldest reports once we have more than MAX_ENTRIES, the host will have purged them long ago
+	 */
+	private void trim() {
+		if( entries.size() <= MAX_ENTRIES )
+			return;
+
+		ArrayList<Entry> sorted = new ArrayList<Entry>(entries.values());
+
+		Collections.sort(sorted, new Comparator<Entry>(){
+			public int compare(Entry a, Entry b) {
+				long timeA = a.getDate() == null ? 0 : a.getDate().getTime();
+				long timeB = b.getDate() == null ? 0 : b.getDate().getTime();
+
+				return timeA < timeB ? -1 : (timeA == timeB ? 0 : 1);
+			}
+		});
+
+		for( int i = 0; i < sorted.size() - MAX_ENTRIES; i++ )
+			entries.remove(sorted.get(i).getSeq());
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		getIndexFile().delete();
+		dirty = false;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+}
@@ -0,0 +1,366 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.FormAttachment;
+import org.eclipse.swt.layout.FormData;
+import org.eclipse.swt.layout.FormLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.ProgressBar;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.TableItem;
+
+import com.repdev.parser.RepgenParser;
+
+/**
+ * Error checks or installs every repgen in a project in one go, and lists the results by file and line.
+ *
+ * Files are sent to the host as fast as it will take them, several at a time when the session pool has more
+ * than one connection, and show up in the table as they finish. Include files (anything matching the
+ * no error check prefixes/suffixes in the options) are skipped, same as the editor's error checker.
+ *
+ */
+public class ProjectCheckShell {
+	private static final int MAX_PARALLEL = 8;
+
+	private final Project project;
+	private Shell shell;
+	private Table table;
+	private ProgressBar progress;
+	private Label status;
+	private Button checkButton, installButton;
+
+	private final ArrayList<Row> rows = new ArrayList<Row>();
+	private int sortColumn = 0;
+	private boolean sortUp = true;
+	private int remaining, errors;
+	private long started;
+
+	/**
+	 * One line of the summary, a repgen and where (if anywhere) its problem was
+	 */
+	private static class Row {
+		String repgen, file, message;
+		int line, column;
+		boolean failed;
+	}
+
+	private ProjectCheckShell(Project project) {
+		this.project = project;
+	}
+
+	private void create(Shell parent) {
+		shell = new Shell(parent, SWT.SHELL_TRIM);
+		shell.setText("Check Project " + project.getName());
+
+		FormLayout layout = new FormLayout();
+		layout.marginTop = 5;
+		layout.marginBottom = 5;
+		layout.marginLeft = 5;
+		layout.marginRight = 5;
+		layout.spacing = 5;
+		shell.setLayout(layout);
+
+		table = new Table(shell, SWT.BORDER | SWT.FULL_SELECTION | SWT.MULTI);
+		table.setHeaderVisible(true);
+		table.setLinesVisible(true);
+
+		String[] names = { "Repgen", "File", "Line", "Col", "Result" };
+		int[] widths = { 160, 160, 50, 40, 360 };
+
+		for( int i = 0; i < names.length; i++ ) {
+			final int index = i;
+			TableColumn col = new TableColumn(table, SWT.NONE);
+			col.setText(names[i]);
+			col.setWidth(widths[i]);
+			col.addListener(SWT.Selection, new Listener() {
+				public void handleEvent(Event e) {
+					sortUp = sortColumn == index ? !sortUp : true;
+					sortColumn = index;
+					table.setSortColumn((TableColumn) e.widget);
+					table.setSortDirection(sortUp ? SWT.UP : SWT.DOWN);
+					fillTable();
+				}
+			});
+		}
+
+		progress = new ProgressBar(shell, SWT.HORIZONTAL | SWT.SMOOTH);
+
+		status = new Label(shell, SWT.NONE);
+		status.setText(countRepgens() + " repgens to check, " + (project.getFiles().size() - countRepgens()) + " other files skipped");
+
+		checkButton = new Button(shell, SWT.PUSH);
+		checkButton.setText("&Check All");
+		checkButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				start(false);
+			}
+		});
+
+		installButton = new Button(shell, SWT.PUSH);
+		installButton.setText("&Install All");
+		installButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				start(true);
+			}
+		});
+
+		Button closeButton = new Button(shell, SWT.PUSH);
+		closeButton.setText("C&lose");
+		closeButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				shell.close();
+			}
+		});
+
+		FormData data = new FormData();
+		data.left = new FormAttachment(0);
+		data.right = new FormAttachment(100);
+		data.top = new FormAttachment(0);
+		data.bottom = new FormAttachment(progress);
+		data.height = 300;
+		table.setLayoutData(data);
+
+		data = new FormData();
+		data.left = new FormAttachment(0);
+		data.right = new FormAttachment(100);
+		data.bottom = new FormAttachment(closeButton);
+		progress.setLayoutData(data);
+
+		data = new FormData();
+		data.right = new FormAttachment(100);
+		data.bottom = new FormAttachment(100);
+		closeButton.setLayoutData(data);
+
+		data = new FormData();
+		data.right = new FormAttachment(closeButton);
+		data.bottom = new FormAttachment(100);
+		installButton.setLayoutData(data);
+
+		data = new FormData();
+		data.right = new FormAttachment(installButton);
+		data.bottom = new FormAttachment(100);
+		checkButton.setLayoutData(data);
+
+		data = new FormData();
+		data.left = new FormAttachment(0);
+		data.right = new FormAttachment(checkButton);
+		data.top = new FormAttachment(checkButton, 0, SWT.CENTER);
+		status.setLayoutData(data);
+
+		shell.pack();
+		shell.open();
+	}
+
+	private ArrayList<SymitarFile> getRepgens() {
+		ArrayList<SymitarFile> repgens = new ArrayList<SymitarFile>();
+
+		for( SymitarFile file : project.getFiles() )
+			if( file.getType() == FileType.REPGEN && RepgenParser.isErrorChecked(file.getName()) )
+				repgens.add(file);
+
+		return repgens;
+	}
+
+	private int countRepgens() {
+		return getRepgens().size();
+	}
+
+	private void start(final boolean install) {
+		final ArrayList<SymitarFile> repgens = getRepgens();
+		final SymitarSession session = RepDevMain.SYMITAR_SESSIONS.get(project.getSym());
+		final Display display = shell.getDisplay();
+
+		if( repgens.isEmpty() || session == null )
+			return;
+
+		//Each connection only does one thing at a time, more threads than that just wait on the lock.
+		//The pool is 1 connection unless set higher in the options, so by default this is still one at a time.
+		int parallel = Math.max(1, Math.min(MAX_PARALLEL, Math.min(Config.getSessionPoolSize(), repgens.size())));
+
+		ExecutorService executor = Executors.newFixedThreadPool(parallel, new ThreadFactory(){
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Project Check " + project.getName());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		rows.clear();
+		table.removeAll();
+		checkButton.setEnabled(false);
+		installButton.setEnabled(false);
+		progress.setMaximum(repgens.size());
+		progress.setSelection(0);
+		remaining = repgens.size();
+		errors = 0;
+		started = System.currentTimeMillis();
+		status.setText((install ? "Installing " : "Checking ") + remaining + " repgens...");
+
+		for( final SymitarFile file : repgens ) {
+			executor.execute(new Runnable(){
+				public void run() {
+					ErrorCheckResult result = null;
+
+					try {
+						result = install ? session.installRepgen(file.getName()) : session.errorCheckRepGen(file.getName());
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+
+					final Row row = toRow(file, result);
+
+					if( display.isDisposed() )
+						return;
+
+					display.asyncExec(new Runnable(){
+						public void run() {
+							finished(row, install);
+						}
+					});
+				}
+			});
+		}
+
+		executor.shutdown();
+	}
+
+	private static Row toRow(SymitarFile file, ErrorCheckResult result) {
+		Row row = new Row();
+		row.repgen = file.getName();
+		row.file = "";
+		row.line = -1;
+		row.column = -1;
+
+		if( result == null ) {
+			row.message = "No answer from the host";
+			row.failed = true;
+		}
+		else if( result.getType() == ErrorCheckResult.Type.INSTALLED_SUCCESSFULLY ) {
+			row.message = "Installed, Size: " + result.getInstallSize();
+		}
+		else if( result.getType() == ErrorCheckResult.Type.NO_ERROR ) {
+			row.message = "No errors";
+		}
+		else {
+			row.file = result.getFile() == null ? file.getName() : result.getFile();
+			row.line = result.getLineNumber();
+			row.column = result.getColumn();
+			row.message = result.getErrorMessage();
+			row.failed = result.getType() == ErrorCheckResult.Type.ERROR;
+		}
+
+		return row;
+	}
+
+	private void finished(Row row, boolean install) {
+		if( shell.isDisposed() )
+			return;
+
+		rows.add(row);
+		remaining--;
+
+		if( row.failed )
+			errors++;
+
+		progress.setSelection(progress.getMaximum() - remaining);
+		fillTable();
+
+		if( remaining == 0 ) {
+			status.setText((install ? "Installed " : "Checked ") + rows.size() + " repgens in " + String.format("%.1fs", (System.currentTimeMillis() - started) / 1000.0) +
+					(errors == 0 ? ", no errors" : ", " + errors + " with errors"));
+			checkButton.setEnabled(true);
+			installButton.setEnabled(true);
+		}
+		else
+			status.setText((install ? "Installing, " : "Checking, ") + remaining + " to go, " + errors + " with errors so far");
+	}
+
+	private void fillTable() {
+		Collections.sort(rows, new Comparator<Row>(){
+			public int compare(Row a, Row b) {
+				int diff;
+
+				switch( sortColumn ) {
+				case 1:
+					diff = a.file.compareTo(b.file);
+					break;
+				case 2:
+					diff = a.line - b.line;
+					break;
+				case 3:
+					diff = a.column - b.column;
+					break;
+				case 4:
+					diff = a.message.compareTo(b.message);
+					break;
+				default:
+					diff = a.repgen.compareTo(b.repgen);
+				}
+
+				if( !sortUp )
+					diff = -diff;
+
+				//Errors first, then by file and line, for anything that ties, whichever way the column is sorted
+				if( diff == 0 && a.failed != b.failed )
+					diff = a.failed ? -1 : 1;
+				if( diff == 0 )
+					diff = a.file.compareTo(b.file);
+				if( diff == 0 )
+					diff = a.line - b.line;
+
+				return diff;
+			}
+		});
+
+		table.setRedraw(false);
+		table.removeAll();
+
+		for( Row row : rows ) {
+			TableItem item = new TableItem(table, SWT.NONE);
+			item.setText(new String[] { row.repgen, row.file, row.line > 0 ? "" + row.line : "", row.column > 0 ? "" + row.column : "", row.message });
+
+			if( row.failed )
+				item.setForeground(shell.getDisplay().getSystemColor(SWT.COLOR_RED));
+		}
+
+		table.setRedraw(true);
+	}
+
+	public static void show(Shell parent, Project project) {
+		new ProjectCheckShell(project).create(parent);
+	}
+}
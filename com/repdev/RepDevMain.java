@@ -26,8 +26,6 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
 import java.util.HashMap;
 
 import org.eclipse.swt.SWT;
@@ -60,11 +58,10 @@ public class RepDevMain {
 	public static boolean FORGET_PASS_ON_EXIT = false; // set in options only please.
 
 	/**
-	 * lastActivity can be updated every time you deem is an activity.  This will be used in the keepAlive
-	 * Thread within DirectSymitarSession to terminate Keep Alive if there has not been any activity
-	 * within a specific number of minutes.
+	 * lastActivity can be updated every time you deem is an activity.  This will be used by KeepAlive
+	 * to terminate Keep Alive if there has not been any activity within a specific number of minutes.
 	 */
-	private static Calendar lastActivity = new GregorianCalendar();
+	private static volatile long lastActivity = System.currentTimeMillis();
 	
 	public static MainShell mainShell;
 	private static Display display;
@@ -249,6 +246,8 @@ public class RepDevMain {
 			
 			if( Config.getServer().equalsIgnoreCase("testsession")) //Allows for a testing mode when no symitar server's are available
 				session = new TestingSymitarSession();
+			else if( Config.getSessionPoolSize() > 1 )
+				session = new PooledSymitarSession(Config.getSessionPoolSize());
 			else
 				session = new DirectSymitarSession();
 
@@ -327,17 +326,17 @@ public class RepDevMain {
 	
 	/**
 	 * Updates the lastActivity timestamp
-	 * @param cal
+	 * @param time ms, like System.currentTimeMillis()
 	 */
-	public static void setLastActivity(Calendar cal){
-		lastActivity = cal;
+	public static void setLastActivity(long time){
+		lastActivity = time;
 	}
 	
 	/**
 	 * Returns the lastActivity timestamp
-	 * @return cal
+	 * @return time in ms
 	 */
-	public static Calendar getLastActivity(){
+	public static long getLastActivity(){
 		return lastActivity;
 	}
 	private static void createGlobalHotkeys(){
@@ -0,0 +1,353 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DirectSymitarSession that talks to a recorded transcript instead of a host, so the real protocol code
+ * can be benchmarked or regression tested offline.
+ *
+ * Call the same methods in the same order as the recorded session did, starting with connect (any login works,
+ * the host's side of the login is in the transcript). Whatever the host sent is played back through the normal
+ * decoder, what we send is checked against what was recorded and any difference is counted in getMismatches().
+ *
+ * Commands are compared one frame at a time. Message IDs come from a counter shared by every session, so they
+ * never match the recording: they are left out of the comparison, and the recorded IDs in the host's replies are
+ * swapped for the ones we actually sent, so replies still find their request. WakeUps go out whenever keep alive
+ * felt like it, so they are skipped on both sides, and a replayed session doesn't send any of its own.
+ *
+ * With realTime on, each reply is held back for as long as the host took to send it in the recording.
+ *
+ */
+public class ReplaySymitarSession extends DirectSymitarSession {
+	private static final Pattern MSG_ID = Pattern.compile("MsgId=(\\d+)");
+	private static final String CHARSET = "ISO-8859-1"; //One char per byte, so frames can be cut up as text
+
+	/**
+	 * One thing we sent: a whole command frame, or a single byte of plain text (logins, menu choices, PROT parts)
+	 */
+	private static class Piece {
+		final String frame;
+		final char raw;
+		final long micros;
+
+		Piece(String frame, char raw, long micros) {
+			this.frame = frame;
+			this.raw = raw;
+			this.micros = micros;
+		}
+
+		boolean isWakeUp() {
+			return frame != null && (frame.equals("WakeUp") || frame.startsWith("WakeUp~"));
+		}
+
+		/**
+		 * Cuts the next piece off the front of text
+		 *
+		 * @return Piece, or null if text ends partway into a frame
+		 */
+		static Piece next(StringBuilder text, long micros) {
+			if( text.charAt(0) == 0x07 ) {
+				int cr = text.indexOf("\r");
+
+				if( cr != -1 ) {
+					try {
+						int end = cr + 1 + Integer.parseInt(text.substring(1, cr));
+
+						if( end > text.length() )
+							return null;
+
+						Piece piece = new Piece(text.substring(cr + 1, end), (char) 0, micros);
+						text.delete(0, end);
+						return piece;
+					} catch (NumberFormatException e) {
+						//Not a frame after all, just a stray 0x07
+					}
+				}
+				else if( text.length() < 12 )
+					return null;
+			}
+
+			Piece piece = new Piece(null, text.charAt(0), micros);
+			text.deleteCharAt(0);
+			return piece;
+		}
+	}
+
+	private final ArrayList<SymitarTranscript.Record> records;
+	private final boolean realTime;
+
+	//What the recorded session sent, WakeUps left out
+	private final ArrayList<Piece> recorded = new ArrayList<Piece>();
+	private int nextRecorded = 0;
+	//What we sent that hasn't made a whole piece yet
+	private final StringBuilder sending = new StringBuilder();
+	//Recorded message ID -> the one we sent in its place
+	private final HashMap<String, String> msgIds = new HashMap<String, String>();
+
+	private int inRecord = 0;
+	private byte[] chunk = new byte[0];
+	private int chunkPos = 0;
+	private long chunkMicros = 0;
+	private int mismatches = 0;
+
+	//Last time something happened, in the recording and here, for realTime
+	private volatile long lastMicros = 0, lastWall = System.nanoTime();
+
+	public ReplaySymitarSession(File transcript, boolean realTime) throws IOException {
+		this.records = SymitarTranscript.load(transcript);
+		this.realTime = realTime;
+
+		StringBuilder text = new StringBuilder();
+
+		for( SymitarTranscript.Record record : records ) {
+			if( record.direction != SymitarTranscript.OUT )
+				continue;
+
+			text.append(new String(record.data, CHARSET));
+			Piece piece;
+
+			while( text.length() > 0 && (piece = Piece.next(text, record.micros)) != null )
+				if( !piece.isWakeUp() )
+					recorded.add(piece);
+		}
+	}
+
+	@Override
+	protected boolean useKeepAlive() {
+		return false;
+	}
+
+	@Override
+	protected void open(String server) throws IOException {
+		lastMicros = 0;
+		lastWall = System.nanoTime();
+
+		setStreams(new InputStream(){
+			@Override
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+
+				return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return replayIn(b, off, len);
+			}
+		}, new OutputStream(){
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				replayOut(b, off, len);
+			}
+		});
+	}
+
+	private int nextRecord(int from, byte direction) {
+		while( from < records.size() && records.get(from).direction != direction )
+			from++;
+
+		return from;
+	}
+
+	/**
+	 * @return True if text could end partway through a "~MsgId=123", so it can't be rewritten yet
+	 */
+	private static boolean endsInMsgId(String text) {
+		int tilde = text.lastIndexOf('~');
+
+		if( tilde == -1 )
+			return false;
+
+		String tail = text.substring(tilde + 1);
+
+		if( "MsgId=".startsWith(tail) )
+			return true;
+
+		return tail.startsWith("MsgId=") && tail.substring(6).matches("\\d*");
+	}
+
+	/**
+	 * Takes the next run of the host's side of the transcript, with its message IDs swapped for ours
+	 *
+	 * @return False once it has all been read
+	 */
+	private synchronized boolean nextChunk() throws IOException {
+		inRecord = nextRecord(inRecord, SymitarTranscript.IN);
+
+		if( inRecord >= records.size() )
+			return false;
+
+		chunkMicros = records.get(inRecord).micros;
+		String text = new String(records.get(inRecord++).data, CHARSET);
+
+		//A message ID split over two reads, glue on the next one if we didn't send anything in between
+		while( endsInMsgId(text) && inRecord < records.size() && records.get(inRecord).direction == SymitarTranscript.IN )
+			text += new String(records.get(inRecord++).data, CHARSET);
+
+		Matcher match = MSG_ID.matcher(text);
+		StringBuffer swapped = new StringBuffer();
+
+		while( match.find() ) {
+			String ours = msgIds.get(match.group(1));
+			match.appendReplacement(swapped, "MsgId=" + (ours == null ? match.group(1) : ours));
+		}
+
+		match.appendTail(swapped);
+
+		chunk = swapped.toString().getBytes(CHARSET);
+		chunkPos = 0;
+
+		return true;
+	}
+
+	/**
+	 * Hands out the host's side of the transcript, -1 once it has all been read, which looks like the host hanging up
+	 */
+	private int replayIn(byte[] b, int off, int len) throws IOException {
+		long micros = -1;
+
+		synchronized (this) {
+			if( chunkPos == chunk.length ) {
+				if( !nextChunk() )
+					return -1;
+
+				micros = chunkMicros;
+			}
+		}
+
+		if( micros >= 0 && realTime ) {
+			long wait = (micros - lastMicros) - (System.nanoTime() - lastWall) / 1000;
+
+			if( wait > 0 ) {
+				try {
+					Thread.sleep(wait / 1000, (int) (wait % 1000) * 1000);
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted");
+				}
+			}
+
+			lastMicros = micros;
+			lastWall = System.nanoTime();
+		}
+
+		synchronized (this) {
+			int count = Math.min(len, chunk.length - chunkPos);
+			System.arraycopy(chunk, chunkPos, b, off, count);
+			chunkPos += count;
+
+			return count;
+		}
+	}
+
+	/**
+	 * Checks what we send against the transcript a piece at a time
+	 */
+	private synchronized void replayOut(byte[] b, int off, int len) throws IOException {
+		sending.append(new String(b, off, len, CHARSET));
+		Piece piece;
+
+		while( sending.length() > 0 && (piece = Piece.next(sending, 0)) != null ) {
+			if( piece.isWakeUp() )
+				continue;
+
+			if( nextRecorded >= recorded.size() ) {
+				mismatch("sent more than the recording did");
+				continue;
+			}
+
+			Piece expected = recorded.get(nextRecorded++);
+
+			if( expected.frame != null && piece.frame != null ) {
+				String ours = msgId(piece.frame), theirs = msgId(expected.frame);
+
+				if( ours != null && theirs != null )
+					msgIds.put(theirs, ours);
+
+				if( !matches(withoutMsgId(expected.frame), withoutMsgId(piece.frame)) )
+					mismatch("sent " + piece.frame + " where the recording had " + expected.frame);
+			}
+			else if( expected.frame != null || piece.frame != null )
+				mismatch("sent " + (piece.frame != null ? piece.frame : "plain text") + " where the recording had " + (expected.frame != null ? expected.frame : "plain text"));
+			else if( expected.raw != '*' && expected.raw != piece.raw )
+				mismatch("sent " + (int) piece.raw + " where the recording had " + (int) expected.raw + ", piece " + (nextRecorded - 1));
+
+			lastMicros = expected.micros;
+			lastWall = System.nanoTime();
+		}
+	}
+
+	private static String msgId(String frame) {
+		Matcher match = MSG_ID.matcher(frame);
+
+		return match.find() ? match.group(1) : null;
+	}
+
+	private static String withoutMsgId(String frame) {
+		return MSG_ID.matcher(frame).replaceAll("MsgId=");
+	}
+
+	/**
+	 * @return True if they're the same, '*' in the recording was a masked password and matches anything
+	 */
+	private static boolean matches(String recorded, String sent) {
+		if( recorded.length() != sent.length() )
+			return false;
+
+		for( int i = 0; i < recorded.length(); i++ )
+			if( recorded.charAt(i) != '*' && recorded.charAt(i) != sent.charAt(i) )
+				return false;
+
+		return true;
+	}
+
+	private void mismatch(String message) {
+		//Once we're off, everything after will be too, just report the first few
+		if( mismatches++ < 10 )
+			System.out.println("Replay mismatch: " + message);
+	}
+
+	/**
+	 * @return Number of frames or plain text bytes we sent that weren't what the recorded session sent
+	 */
+	public synchronized int getMismatches() {
+		return mismatches;
+	}
+
+	/**
+	 * @return true once all of the host's side of the transcript has been read
+	 */
+	public synchronized boolean isFinished() {
+		return chunkPos == chunk.length && nextRecord(inRecord, SymitarTranscript.IN) >= records.size();
+	}
+}
@@ -51,6 +51,7 @@ public class ReportComposite extends Composite implements TabTextView{
 	private Sequence seq;
 	private CTabItem tabItem;
 	private int sym;
+	private volatile int loadCount = 0;
 
 	/**
 	 * Either send a single report to view as a SymitarFile, or a batch seq to view a bnch from the same run
@@ -169,7 +170,7 @@ public class ReportComposite extends Composite implements TabTextView{
 
 		
 		if( file != null){
-			txt.setText(file.getData());
+			loadReport(file);
 			
 			TableItem row = new TableItem(table,SWT.NONE);
 			row.setText(0, "");
@@ -236,10 +237,77 @@ public class ReportComposite extends Composite implements TabTextView{
 	}
 
 	protected void openTableItem(PrintItem item) {
-		String data = new SymitarFile(sym,String.valueOf(item.getSeq()),FileType.REPORT).getData();
-	
-		if( data != null)
-			txt.setText( data);
+		loadReport(new SymitarFile(sym,String.valueOf(item.getSeq()),FileType.REPORT));
+	}
+
+	/**
+	 * Streams a report into the text box in the background, so the first page shows up
+	 * right away and there is no limit on how big the report can be.
+	 * 
+	 * Selecting another report or closing the tab cancels the old load: nothing more of it is kept,
+	 * and the session only has to read the rest off the wire.
+	 * @param report
+	 */
+	private void loadReport(final SymitarFile report) {
+		final int load = ++loadCount;
+		final StringBuilder pending = new StringBuilder();
+		final Display display = getDisplay();
+		
+		//Moves whatever has come in so far over to the text box
+		final Runnable flush = new Runnable(){
+			public void run() {
+				String data;
+				
+				synchronized(pending){
+					data = pending.toString();
+					pending.setLength(0);
+				}
+				
+				if( load == loadCount && !txt.isDisposed() && data.length() > 0 )
+					txt.append(data);
+			}
+		};
+		
+		txt.setText("");
+		
+		Thread loader = new Thread(new Runnable(){
+			public void run() {
+				final SessionError error = RepDevMain.SYMITAR_SESSIONS.get(sym).getFile(report, new SymitarSession.FileChunkListener(){
+					public void chunk(SymitarFile file, String data) {
+						boolean schedule;
+						
+						if( isCancelled() )
+							return;
+						
+						synchronized(pending){
+							schedule = pending.length() == 0;
+							pending.append(data);
+						}
+						
+						//Only one flush queued at a time, it picks up everything appended before it runs
+						if( schedule && !display.isDisposed() )
+							display.asyncExec(flush);
+					}
+					
+					public boolean isCancelled() {
+						return load != loadCount || txt.isDisposed();
+					}
+				});
+				
+				if( !display.isDisposed() )
+					display.asyncExec(new Runnable(){
+						public void run() {
+							flush.run();
+							
+							if( error != SessionError.NONE && load == loadCount && !txt.isDisposed() && txt.getCharCount() == 0 )
+								txt.setText("Error loading file");
+						}
+					});
+			}
+		}, "Report Loader " + report.getName());
+		
+		loader.setDaemon(true);
+		loader.start();
 	}
 
 	private void openTableItem(){
@@ -0,0 +1,259 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedList;
+
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Text;
+
+/**
+ * Output box for repgen runs.
+ *
+ * Lines from the host are queued and added to the Text in batches, at most every REFRESH ms, instead of
+ * rebuilding the whole box for every line. Only the last MAX_LINES stay on screen, everything goes to a
+ * log file under cache/console so nothing is lost on chatty reports.
+ *
+ * The queue holds at most MAX_PENDING lines between refreshes, past that lines only go to the log
+ * and the box notes how many it skipped.
+ *
+ */
+public class RunConsole {
+	private static final String KEY = "RunConsole";
+	private static final String SPOOL_DIR = "cache" + File.separator + "console";
+	private static final int REFRESH = 100; //ms
+	private static final int MAX_LINES = 1000;
+	private static final int MAX_PENDING = 5000;
+
+	private final Text text;
+	private final Display display;
+	private final File spoolFile;
+	private BufferedWriter spool;
+
+	//Guarded by this, filled by whoever is talking to the host, drained on the UI thread
+	private final LinkedList<String> pending = new LinkedList<String>();
+	private String replace = null;
+	private int skipped = 0;
+	private boolean scheduled = false;
+
+	//UI thread only
+	private final LinkedList<String> shown = new LinkedList<String>();
+	private int trimmed = 0;
+
+	private RunConsole(Text text, String name) {
+		this.text = text;
+		this.display = text.getDisplay();
+		this.spoolFile = new File(SPOOL_DIR, name.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".log");
+
+		text.setData(KEY, this);
+		text.addDisposeListener(new DisposeListener(){
+			public void widgetDisposed(DisposeEvent e) {
+				close();
+			}
+		});
+	}
+
+	/**
+	 * Sets up a console on this Text, with the log file named after name
+	 */
+	public static RunConsole attach(Text text, String name) {
+		return new RunConsole(text, name);
+	}
+
+	/**
+	 * UI thread only
+	 * @return Console already on this Text, or a new one
+	 */
+	public static RunConsole forText(Text text) {
+		Object console = text.getData(KEY);
+
+		if( console instanceof RunConsole )
+			return (RunConsole) console;
+
+		return new RunConsole(text, "run");
+	}
+
+	/**
+	 * @return Where the full output is kept
+	 */
+	public File getSpoolFile() {
+		return spoolFile;
+	}
+
+	/**
+	 * Adds a line, can be called from any thread
+	 */
+	public void append(String line) {
+		line = line.replace("\r", "\n");
+		spool(line);
+
+		synchronized (this) {
+			if( pending.size() >= MAX_PENDING )
+				skipped++;
+			else
+				pending.add(line);
+		}
+
+		schedule();
+	}
+
+	/**
+	 * Clears the box and shows this instead (status messages), can be called from any thread
+	 */
+	public void setText(String str) {
+		str = str.replace("\r", "\n");
+		spool(str);
+
+		synchronized (this) {
+			pending.clear();
+			replace = str;
+			skipped = 0;
+		}
+
+		schedule();
+	}
+
+	private synchronized void spool(String line) {
+		try {
+			if( spool == null ) {
+				spoolFile.getParentFile().mkdirs();
+				spool = new BufferedWriter(new FileWriter(spoolFile));
+			}
+
+			spool.write(line);
+			spool.newLine();
+		} catch (IOException e) {
+			//Screen still works without the log
+			e.printStackTrace();
+		}
+	}
+
+	private synchronized void close() {
+		try {
+			if( spool != null )
+				spool.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void schedule() {
+		synchronized (this) {
+			if( scheduled )
+				return;
+
+			scheduled = true;
+		}
+
+		if( display.isDisposed() )
+			return;
+
+		final Runnable flush = new Runnable(){
+			public void run() {
+				flush();
+			}
+		};
+
+		if( Display.getCurrent() == display )
+			display.timerExec(REFRESH, flush);
+		else
+			display.asyncExec(new Runnable(){
+				public void run() {
+					display.timerExec(REFRESH, flush);
+				}
+			});
+	}
+
+	/**
+	 * Puts everything queued so far on screen, normally called by the refresh timer
+	 */
+	public void flush() {
+		String newText;
+		LinkedList<String> lines;
+		int lost;
+
+		synchronized (this) {
+			scheduled = false;
+			newText = replace;
+			lines = new LinkedList<String>(pending);
+			lost = skipped;
+
+			pending.clear();
+			replace = null;
+			skipped = 0;
+
+			try {
+				if( spool != null )
+					spool.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		if( text.isDisposed() )
+			return;
+
+		if( newText != null ) {
+			shown.clear();
+			trimmed = 0;
+			shown.add(newText);
+		}
+
+		if( lost > 0 )
+			lines.addFirst("... " + lost + " lines only in " + spoolFile.getPath() + " ...");
+
+		shown.addAll(lines);
+
+		//Let it run a bit over before trimming, so we aren't redoing the whole box every refresh
+		if( newText != null || shown.size() > MAX_LINES + MAX_LINES / 4 ) {
+			while( shown.size() > MAX_LINES ) {
+				shown.removeFirst();
+				trimmed++;
+			}
+
+			StringBuilder sb = new StringBuilder();
+
+			if( trimmed > 0 )
+				sb.append("... " + trimmed + " earlier lines in " + spoolFile.getPath() + " ...");
+
+			for( String line : shown )
+				sb.append(sb.length() == 0 ? "" : "\n").append(line);
+
+			text.setText(sb.toString());
+			text.setSelection(text.getCharCount());
+		}
+		else if( !lines.isEmpty() ) {
+			StringBuilder sb = new StringBuilder();
+
+			for( String line : lines )
+				sb.append(text.getCharCount() == 0 && sb.length() == 0 ? "" : "\n").append(line);
+
+			text.append(sb.toString());
+		}
+	}
+}
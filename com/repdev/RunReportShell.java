@@ -19,6 +19,8 @@
 
 package com.repdev;
 
+import java.util.ArrayList;
+
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.DisposeEvent;
 import org.eclipse.swt.events.DisposeListener;
@@ -204,6 +206,7 @@ public class RunReportShell {
 		messageLabel.setText("Messages:");
 		
 		final Text ioText = new Text(ioGroup,SWT.MULTI | SWT.READ_ONLY | SWT.H_SCROLL | SWT.V_SCROLL);
+		final RunConsole console = RunConsole.attach(ioText, "sym" + sym + "-" + file.getName());
 		
 		final Label promptLabel = new Label(ioGroup,SWT.NONE);
 		promptLabel.setText("Prompt:");
@@ -289,34 +292,53 @@ public class RunReportShell {
 				if( seq != -1){
 					stillRunning = true;
 					
-					shell.getDisplay().timerExec(500, new Runnable(){
-						
-
-						public void run() {
-							if( shell == null || shell.isDisposed() )
-								return;
+					console.setText("Still running... \nSequence: " + seq);
+					progressBar.setSelection(75);
+					
+					final Display display = shell.getDisplay();
+					
+					final JobMonitor.JobListener listener = new JobMonitor.JobListener(){
+						public void jobFinished(final int sym, int seq) {
+							display.asyncExec(new Runnable(){
+								public void run() {
+									if( shell.isDisposed() )
+										return;
+									
+									console.setText("Repgen Run Finished, Looking up output files\n");
+									progressBar.setSelection(85);
+								}
+							});
+							
+							//On a job listener thread, keep the lookup off the UI
+							final ArrayList<Sequence> seqs = RepDevMain.SYMITAR_SESSIONS.get(sym).getReportSeqs(file.getName(), time, 10,1);
 							
-							if( RepDevMain.SYMITAR_SESSIONS.get(sym).isSeqRunning(seq) ){
-								ioText.setText("Still running... \nSequence: " + seq);
-								progressBar.setSelection(75);
-								shell.getDisplay().timerExec(1000, this);
-							}
-							else
-							{
-								stillRunning = false;
-								ioText.setText("Repgen Run Finished, Looking up output files\n");
-								progressBar.setSelection(85);
-								
-								shell.setActive();
-								
-								for( Sequence seq : RepDevMain.SYMITAR_SESSIONS.get(sym).getReportSeqs(file.getName(), time, 10,1) ){
-									ioText.setText(ioText.getText()+"\nOutput Sequence: " + seq);
-									RepDevMain.mainShell.openFile(seq, sym);
+							display.asyncExec(new Runnable(){
+								public void run() {
+									stillRunning = false;
+									
+									if( shell.isDisposed() )
+										return;
+									
+									shell.setActive();
+									
+									for( Sequence seq : seqs ){
+										console.append("Output Sequence: " + seq);
+										RepDevMain.mainShell.openFile(seq, sym);
+									}
+									
+									progressBar.setSelection(100);
+									shell.close();
 								}
-								
-								progressBar.setSelection(100);
-								shell.close();
-							}
+							});
+						}
+					};
+					
+					JobMonitor.forSym(sym).watch(seq, listener);
+					
+					//Nobody left to tell once the dialog is gone
+					shell.addDisposeListener(new DisposeListener(){
+						public void widgetDisposed(DisposeEvent e) {
+							JobMonitor.forSym(sym).unwatch(seq, listener);
 						}
 					});
 				}
@@ -0,0 +1,347 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for one connection to the host: bytes and frames each way, PROT parts and NAKs from saves,
+ * how long callers waited for the connection to be free, and a latency histogram for each kind of operation.
+ *
+ * Operation times only count from when we have the connection, waiting on the session lock (and for pooled
+ * sessions, waiting for a free connection) is kept separately, so a slow host and a busy connection can be told apart.
+ *
+ * Every open connection is listed in Tools > Session Metrics, a connection drops off once it disconnects.
+ *
+ */
+public class SessionMetrics {
+	private static final ArrayList<SessionMetrics> all = new ArrayList<SessionMetrics>();
+
+	private int sym;
+	private long created = System.currentTimeMillis();
+	private final AtomicLong bytesIn = new AtomicLong(), bytesOut = new AtomicLong();
+	private final AtomicLong framesIn = new AtomicLong(), framesOut = new AtomicLong();
+	private final AtomicLong partsOut = new AtomicLong(), naks = new AtomicLong();
+	private final AtomicLong lockWaits = new AtomicLong(), lockWaitNanos = new AtomicLong();
+	private final AtomicLong poolWaits = new AtomicLong(), poolWaitNanos = new AtomicLong();
+	private final LinkedHashMap<String, Histogram> operations = new LinkedHashMap<String, Histogram>();
+
+	/**
+	 * Latency histogram, bucket i holds times under 2^i ms, the last one everything longer
+	 */
+	public static class Histogram {
+		private static final int BUCKETS = 18;
+
+		private final long[] buckets = new long[BUCKETS];
+		private long count, totalNanos, maxNanos;
+
+		synchronized void add(long nanos) {
+			long ms = nanos / 1000000;
+			int bucket = 0;
+
+			while( bucket < BUCKETS - 1 && ms >= (1L << bucket) )
+				bucket++;
+
+			buckets[bucket]++;
+			count++;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		public synchronized double getMeanMillis() {
+			return count == 0 ? 0 : totalNanos / 1000000.0 / count;
+		}
+
+		public synchronized double getMaxMillis() {
+			return maxNanos / 1000000.0;
+		}
+
+		/**
+		 * @param fraction 0.5 for the median, 0.95, etc
+		 * @return Upper bound in ms of the bucket that percentile falls in
+		 */
+		public synchronized long getPercentileMillis(double fraction) {
+			long target = (long) Math.ceil(count * fraction);
+			long seen = 0;
+
+			for( int i = 0; i < BUCKETS; i++ ) {
+				seen += buckets[i];
+
+				if( seen >= target && seen > 0 )
+					return i == BUCKETS - 1 ? (long) getMaxMillis() : 1L << i;
+			}
+
+			return 0;
+		}
+	}
+
+	/**
+	 * Adds these counters to the global list once the connection knows what sym it is for
+	 */
+	public void register(int sym) {
+		this.sym = sym;
+		this.created = System.currentTimeMillis();
+
+		synchronized (all) {
+			if( !all.contains(this) )
+				all.add(this);
+		}
+	}
+
+	/**
+	 * Takes these counters out of the global list, call when the connection closes
+	 */
+	public void unregister() {
+		synchronized (all) {
+			all.remove(this);
+		}
+	}
+
+	public static ArrayList<SessionMetrics> getAll() {
+		synchronized (all) {
+			return new ArrayList<SessionMetrics>(all);
+		}
+	}
+
+	/**
+	 * Zeroes the counters of every connection we know about
+	 */
+	public static void resetAll() {
+		for( SessionMetrics metrics : getAll() )
+			metrics.reset();
+	}
+
+	public void reset() {
+		created = System.currentTimeMillis();
+		bytesIn.set(0);
+		bytesOut.set(0);
+		framesIn.set(0);
+		framesOut.set(0);
+		partsOut.set(0);
+		naks.set(0);
+		lockWaits.set(0);
+		lockWaitNanos.set(0);
+		poolWaits.set(0);
+		poolWaitNanos.set(0);
+
+		synchronized (operations) {
+			operations.clear();
+		}
+	}
+
+	public InputStream countIn(InputStream in) {
+		return new FilterInputStream(in){
+			@Override
+			public int read() throws IOException {
+				int read = super.read();
+
+				if( read >= 0 )
+					bytesIn.incrementAndGet();
+
+				return read;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+
+				if( read > 0 )
+					bytesIn.addAndGet(read);
+
+				return read;
+			}
+		};
+	}
+
+	public OutputStream countOut(OutputStream out) {
+		return new FilterOutputStream(out){
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				bytesOut.incrementAndGet();
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				bytesOut.addAndGet(len);
+			}
+		};
+	}
+
+	/**
+	 * Call once the session lock is held, with System.nanoTime() from before trying to get it
+	 *
+	 * @param requested
+	 * @return Now, to pass to record() when the operation is done
+	 */
+	public long acquired(long requested) {
+		long now = System.nanoTime();
+
+		lockWaits.incrementAndGet();
+		lockWaitNanos.addAndGet(now - requested);
+
+		return now;
+	}
+
+	/**
+	 * Call when a PooledSymitarSession hands out this connection, with System.nanoTime() from before lease() started waiting
+	 */
+	public void leased(long requested) {
+		poolWaits.incrementAndGet();
+		poolWaitNanos.addAndGet(System.nanoTime() - requested);
+	}
+
+	/**
+	 * Adds the time since start to the histogram for this operation
+	 */
+	public void record(String operation, long start) {
+		long nanos = System.nanoTime() - start;
+		Histogram histogram;
+
+		synchronized (operations) {
+			histogram = operations.get(operation);
+
+			if( histogram == null ) {
+				histogram = new Histogram();
+				operations.put(operation, histogram);
+			}
+		}
+
+		histogram.add(nanos);
+	}
+
+	public void frameIn() {
+		framesIn.incrementAndGet();
+	}
+
+	public void frameOut() {
+		framesOut.incrementAndGet();
+	}
+
+	public void partOut() {
+		partsOut.incrementAndGet();
+	}
+
+	public void nak() {
+		naks.incrementAndGet();
+	}
+
+	public int getSym() {
+		return sym;
+	}
+
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	/**
+	 * Plain text summary of this connection, one line per counter and operation
+	 */
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		long waits = lockWaits.get();
+
+		sb.append("Sym " + sym + ", since " + new SimpleDateFormat("MM/dd/yyyy HH:mm:ss").format(new Date(created)) + "\n");
+		sb.append("  Bytes in/out:    " + Util.getByteStr(bytesIn.get()) + " / " + Util.getByteStr(bytesOut.get()) + "\n");
+		sb.append("  Frames in/out:   " + framesIn.get() + " / " + framesOut.get() + "\n");
+		sb.append("  Save parts/NAKs: " + partsOut.get() + " / " + naks.get() + "\n");
+		sb.append("  Lock waits:      " + waits + ", " + String.format("%.1f", lockWaitNanos.get() / 1000000.0) + " ms total" +
+				(waits == 0 ? "" : ", " + String.format("%.2f", lockWaitNanos.get() / 1000000.0 / waits) + " ms avg") + "\n");
+
+		long leases = poolWaits.get();
+
+		if( leases > 0 )
+			sb.append("  Pool waits:      " + leases + ", " + String.format("%.1f", poolWaitNanos.get() / 1000000.0) + " ms total, " +
+					String.format("%.2f", poolWaitNanos.get() / 1000000.0 / leases) + " ms avg\n");
+
+		synchronized (operations) {
+			for( String operation : operations.keySet() ) {
+				Histogram cur = operations.get(operation);
+
+				sb.append(String.format("  %-16s %6d calls, avg %8.1f ms, p50 <%6d ms, p95 <%6d ms, max %8.1f ms\n", operation + ":", cur.getCount(),
+						cur.getMeanMillis(), cur.getPercentileMillis(0.5), cur.getPercentileMillis(0.95), cur.getMaxMillis()));
+			}
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Report for every connection, grouped by sym
+	 */
+	public static String reportAll() {
+		ArrayList<SessionMetrics> metrics = getAll();
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("RepDev session metrics, " + new SimpleDateFormat("MM/dd/yyyy HH:mm:ss").format(new Date()) + "\n");
+		sb.append("Server: " + Config.getServer() + ":" + Config.getPort() + "\n\n");
+
+		if( metrics.isEmpty() )
+			sb.append("No connections yet\n");
+
+		ArrayList<Integer> syms = new ArrayList<Integer>();
+
+		for( SessionMetrics cur : metrics )
+			if( !syms.contains(cur.getSym()) )
+				syms.add(cur.getSym());
+
+		for( int sym : syms )
+			for( SessionMetrics cur : metrics )
+				if( cur.getSym() == sym )
+					sb.append(cur.report() + "\n");
+
+		return sb.toString();
+	}
+
+	/**
+	 * Writes reportAll() to a file, for comparing syms or network paths later
+	 */
+	public static void dump(File file) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+
+		try {
+			out.write(reportAll().replace("\n", System.getProperty("line.separator")));
+		}
+		finally {
+			out.close();
+		}
+	}
+}
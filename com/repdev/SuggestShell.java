@@ -240,7 +240,7 @@ public class SuggestShell {
 				if (tokenStr.equals("=") || tokenStr.equals(":"))
 					tokenStr = "";
 
-				ArrayList<Variable> vars = new ArrayList<Variable>(parser.getLvars());
+				ArrayList<Variable> vars = parser.getSymbols().getAll();
 
 				Collections.sort(vars);
 
@@ -217,6 +217,8 @@ public class SymLoginShell {
 		if (session == null) {
 			if( Config.getServer().equalsIgnoreCase("testsession")) //Allows for a testing mode when no symitar server's are available
 				session = new TestingSymitarSession();
+			else if( Config.getSessionPoolSize() > 1 )
+				session = new PooledSymitarSession(Config.getSessionPoolSize());
 			else
 				session = new DirectSymitarSession();
 
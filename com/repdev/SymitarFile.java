@@ -96,7 +96,7 @@ public class SymitarFile implements Serializable {
 	
 	public String getData(){
 		if( !local )
-			return RepDevMain.SYMITAR_SESSIONS.get(sym).getFile(this);
+			return FileContentCache.getData(this);
 		else{
 			StringBuilder sb= new  StringBuilder();
 			try {
@@ -115,13 +115,21 @@ public class SymitarFile implements Serializable {
 		}
 	}
 	
-	public SessionError saveFile(String data){
-		//Note, this is an odd workaround for a symitar issue
-		//Repgens with no newline at the end fail to pass error checks, so
-		//I'm making sure one exists now
+	/**
+	 * Note, this is an odd workaround for a symitar issue
+	 * Repgens with no newline at the end fail to pass error checks, so
+	 * I'm making sure one exists now
+	 */
+	String fixData(String data){
 		if( type == FileType.REPGEN && data != null && data.length() > 0 && data.charAt(data.length()-1) != '\n')
 			data += "\n";
 		
+		return data;
+	}
+	
+	public SessionError saveFile(String data){
+		data = fixData(data);
+		
 		if( !local )
 		{
 			SessionError error;
@@ -226,6 +234,10 @@ public class SymitarFile implements Serializable {
 		return name.equals(file.name) && type.equals(file.type) && (isLocal() ? (dir != null && file.getDir() != null && file.getDir().equals(dir) ) : file.getSym() == sym);
 	}
 
+	public int hashCode() {
+		return name.hashCode() * 31 + type.hashCode();
+	}
+
 	public void setInstalled(Date installed) {
 		this.installed = installed;
 	}
@@ -0,0 +1,187 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Incremental decoder for the stream coming back from the Symitar host.
+ *
+ * Reads the socket in blocks into one reusable buffer and scans it once, so pulling large files or long
+ * listings is linear in the amount of data received. Knows about the two things we ever wait for:
+ * the plain text prompts during the telnet/AIX login, and the ESC 0xFE ... 0xFC framing around every command.
+ *
+ * Anything not consumed by a frame stays buffered, so raw reads (like the PROT acks in saveFile) must also go through here.
+ *
+ */
+public class SymitarFrameReader {
+	private static final char FRAME_ESC = 0x1b, FRAME_START = 0xfe, FRAME_END = 0xfc;
+
+	private final Reader in;
+	private final char[] buf;
+	private int pos = 0, limit = 0;
+
+	private char[] frame = new char[1024];
+	private int frameLength = 0;
+
+	public SymitarFrameReader(Reader in) {
+		this(in, 16384);
+	}
+
+	public SymitarFrameReader(Reader in, int bufferSize) {
+		this.in = in;
+		this.buf = new char[bufferSize];
+	}
+
+	/**
+	 * Refills the buffer if it is empty
+	 * @throws IOException if the host closed the connection
+	 */
+	private void fill() throws IOException {
+		if( pos < limit )
+			return;
+
+		int read;
+
+		do {
+			read = in.read(buf, 0, buf.length);
+		} while( read == 0 );
+
+		if( read < 0 )
+			throw new IOException("Connection closed by host");
+
+		pos = 0;
+		limit = read;
+	}
+
+	/**
+	 * Reads until the text read so far ends in any of the given strings, and returns all of it including the match.
+	 * Only the tail is compared after each character, never the whole buffer.
+	 *
+	 * @param strs
+	 * @return Text read, including the terminator that matched
+	 * @throws IOException
+	 */
+	public String readUntil(String... strs) throws IOException {
+		StringBuilder sb = new StringBuilder();
+
+		while (true) {
+			fill();
+			sb.append(buf[pos++]);
+
+			for (String str : strs)
+				if (endsWith(sb, str))
+					return sb.toString();
+		}
+	}
+
+	private static boolean endsWith(StringBuilder sb, String str) {
+		int offset = sb.length() - str.length();
+
+		if( offset < 0 )
+			return false;
+
+		for( int i = str.length() - 1; i >= 0; i-- )
+			if( sb.charAt(offset + i) != str.charAt(i) )
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Skips to the next ESC 0xFE frame start, and returns everything up to (not including) the 0xFC that ends it
+	 *
+	 * @return Frame contents
+	 * @throws IOException
+	 */
+	public String readFrame() throws IOException {
+		boolean sawEsc = false;
+
+		//Find the frame start, this may be split across two reads
+		while (true) {
+			fill();
+			char cur = buf[pos++];
+
+			if( sawEsc && cur == FRAME_START )
+				break;
+
+			sawEsc = cur == FRAME_ESC;
+		}
+
+		frameLength = 0;
+
+		//Copy the frame body a block at a time
+		while (true) {
+			fill();
+			int start = pos;
+
+			while( pos < limit && buf[pos] != FRAME_END )
+				pos++;
+
+			append(start, pos - start);
+
+			if( pos < limit ) {
+				pos++;
+				return new String(frame, 0, frameLength);
+			}
+		}
+	}
+
+	private void append(int start, int length) {
+		if( frameLength + length > frame.length ) {
+			char[] bigger = new char[Math.max(frame.length * 2, frameLength + length)];
+			System.arraycopy(frame, 0, bigger, 0, frameLength);
+			frame = bigger;
+		}
+
+		System.arraycopy(buf, start, frame, frameLength, length);
+		frameLength += length;
+	}
+
+	/**
+	 * Raw read, drains anything already buffered before going to the socket.
+	 * Blocks until exactly length chars have been read, the PROT acks are fixed size.
+	 *
+	 * @param dest
+	 * @param offset
+	 * @param length
+	 * @return Number of chars read
+	 * @throws IOException
+	 */
+	public int read(char[] dest, int offset, int length) throws IOException {
+		int read = 0;
+
+		while( read < length ) {
+			fill();
+
+			int count = Math.min(length - read, limit - pos);
+			System.arraycopy(buf, pos, dest, offset + read, count);
+			pos += count;
+			read += count;
+		}
+
+		return read;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -20,7 +20,10 @@
 package com.repdev;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 
 import org.eclipse.swt.widgets.ProgressBar;
 import org.eclipse.swt.widgets.Text;
@@ -69,6 +72,51 @@ public abstract class SymitarSession {
 	 */
 	public abstract String getFile(SymitarFile file);
 
+	/**
+	 * Streaming version of getFile with no size limit, for things like large reports.
+	 * Each piece of the file is given to the listener as it comes in, and nothing is kept in memory here.
+	 * Once the listener says it's cancelled no more pieces are given to it. The host can't be told to stop
+	 * sending, so the rest still has to be read off the wire, but it's thrown away without decoding.
+	 * 
+	 * @param file
+	 * @param listener
+	 * @return NONE if the whole file came through, ARGUMENT_ERROR if there is no such file
+	 */
+	public abstract SessionError getFile(SymitarFile file, FileChunkListener listener);
+
+	/**
+	 * Interface for the streaming getFile
+	 */
+	public interface FileChunkListener{
+		void chunk(SymitarFile file, String data);
+
+		/**
+		 * @return True once the rest of the file isn't wanted anymore
+		 */
+		boolean isCancelled();
+	}
+
+	/**
+	 * Gets several files of the same sym in one go. Sessions that can, and if Config.getRetrieveWindow()
+	 * allows it, keep more than one retrieve going to the host at once instead of waiting on each file.
+	 * 
+	 * @param files
+	 * @param listener Told about each file as it finishes, in whatever order they finish, may be null
+	 * @return Contents of each file, same values getFile would give for it
+	 */
+	public abstract HashMap<SymitarFile, String> getFiles(Collection<SymitarFile> files, FileRetrieveListener listener);
+
+	public HashMap<SymitarFile, String> getFiles(Collection<SymitarFile> files) {
+		return getFiles(files, null);
+	}
+
+	/**
+	 * Interface for getFiles callers that want each file as soon as it is done
+	 */
+	public interface FileRetrieveListener{
+		void fileRetrieved(SymitarFile file, String data);
+	}
+
 	public abstract boolean fileExists(SymitarFile file);
 
 	public abstract SessionError removeFile(SymitarFile file);
@@ -115,7 +163,17 @@ public abstract class SymitarSession {
 			progress.setSelection(value);
 
 		if( text != null && str != null && !text.isDisposed())
-			text.setText(str.replace("\r", "\n"));
+			RunConsole.forText(text).setText(str);
+	}
+
+	/**
+	 * Adds a line of output from a run, batched up by RunConsole so chatty reports don't redraw the box every line
+	 * @param text
+	 * @param line
+	 */
+	protected void appendOutput(Text text, String line){
+		if( text != null && line != null && !text.isDisposed())
+			RunConsole.forText(text).append(line);
 	}
 
 	public abstract RunRepgenResult runRepGen(String name, int queue, ProgressBar progress, Text text, PromptListener prompter);
@@ -138,6 +196,13 @@ public abstract class SymitarSession {
 
 	public abstract boolean isSeqRunning(int seq);
 
+	/**
+	 * Everything currently in a batch queue, so one listing can answer isSeqRunning for any number of jobs
+	 * 
+	 * @return Batch seqs, or null if we couldn't get the queues
+	 */
+	public abstract HashSet<Integer> getRunningSeqs();
+
 	public abstract void terminateRepgen(int seq);
 
 	public class RunFMResult{
@@ -233,28 +298,16 @@ public abstract class SymitarSession {
 		//More than likely, if we are looking for anything, it will be the newest one first
 		Collections.reverse(items);
 
+		PrintIndex index = PrintIndex.forSym(sym);
+
 		for( PrintItem cur : items){
-			String file = new SymitarFile(sym,"" +
-					cur.getSeq(),FileType.REPORT).getData();
+			PrintIndex.Entry entry = index.getEntry(this, cur);
 
-			if( file.indexOf("Processing begun on") < 0 )
+			if( entry == null || entry.getStartTime() < 0 || entry.getReportName() == null )
 				continue;
 
-			file = file.substring(file.indexOf("Processing begun on") + 41);
-			String timeStr = file.substring(0,8);
-			int curTime;
-
-			curTime = Integer.parseInt(timeStr.substring(timeStr.lastIndexOf(":")+1));
-			curTime += 60 *
-			Integer.parseInt(timeStr.substring(timeStr.indexOf(":")+1,
-					timeStr.lastIndexOf(":")));
-			curTime += 3600 *
-			Integer.parseInt(timeStr.substring(0,timeStr.indexOf(":")));
-
-			//Advance to the right place
-			file =  file.substring(file.indexOf("(newline when done):") + 21);
-
-			String name = file.substring(0,file.indexOf("\n"));
+			int curTime = entry.getStartTime();
+			String name = entry.getReportName();
 
 			if( (time == -1 || curTime - 1 == time || curTime == time ||
 					curTime +1 == time ) && name.equals(reportName) ){
@@ -266,6 +319,8 @@ public abstract class SymitarSession {
 			}
 		}
 
+		index.save();
+
 		return newItems;
 	}
 
@@ -282,18 +337,21 @@ public abstract class SymitarSession {
 		ArrayList<PrintItem> items = getPrintItems("MISCFMPOST", search);
 		ArrayList<Sequence> newItems = new ArrayList<Sequence>();
 
+		if( items == null )
+			return newItems;
+
 		//More than likely, if we are looking for anything, it will be the newest one first
 		Collections.reverse(items);
 
-		for( PrintItem cur : items){
-			String file = new SymitarFile(sym,"" + cur.getSeq(),FileType.REPORT).getData();
+		PrintIndex index = PrintIndex.forSym(sym);
 
-			//Advance to the right place
-			file =  file.substring(file.indexOf("Name of Posting: ") + 17);
+		for( PrintItem cur : items){
+			PrintIndex.Entry entry = index.getEntry(this, cur);
 
-			String name = file.substring(0,file.indexOf("\n")).trim();
+			if( entry == null || entry.getFMTitle() == null )
+				continue;
 
-			if( name.equals(reportName) ){
+			if( entry.getFMTitle().equals(reportName) ){
 				newItems.add(new Sequence(sym,cur.getBatchSeq(), cur.getDate()));
 
 				//If we have matched it, then we are done
@@ -302,6 +360,8 @@ public abstract class SymitarSession {
 			}
 		}
 
+		index.save();
+
 		return newItems;
 	}
 
@@ -313,6 +373,7 @@ public abstract class SymitarSession {
 	 */
 	public abstract ArrayList<SymitarFile> getFileList(FileType type, String search);
 
+
 	public abstract SessionError printFileLPT(SymitarFile file, int queue, boolean formsOverride, int formLength, int startPage, int endPage, int copies, boolean landscape, boolean duplex, int queuePriority);
 
 	/**
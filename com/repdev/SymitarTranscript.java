@@ -0,0 +1,223 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * Raw recording of everything sent and received on one connection to the host, for replaying with ReplaySymitarSession.
+ *
+ * The file is a "RDT1" header followed by records of: direction byte ('<' from the host, '>' to the host),
+ * microseconds since the connection opened (long), length (int), and the bytes themselves.
+ *
+ * Anything given to addSecret (passwords, user IDs) is overwritten with '*' in outgoing records before it hits the disk.
+ *
+ */
+public class SymitarTranscript {
+	private static final int MAGIC = 0x52445431; //RDT1
+	public static final byte IN = '<', OUT = '>';
+
+	/**
+	 * One chunk of traffic, as it came off or went on the socket
+	 */
+	public static class Record {
+		public final byte direction;
+		public final long micros;
+		public final byte[] data;
+
+		Record(byte direction, long micros, byte[] data) {
+			this.direction = direction;
+			this.micros = micros;
+			this.data = data;
+		}
+	}
+
+	private final DataOutputStream file;
+	private final long start = System.nanoTime();
+	private final ArrayList<byte[]> secrets = new ArrayList<byte[]>();
+
+	/**
+	 * Starts a new transcript, overwriting the file if it exists
+	 */
+	public SymitarTranscript(File transcript) throws IOException {
+		file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(transcript)));
+		file.writeInt(MAGIC);
+	}
+
+	/**
+	 * Masks this string in anything we send from now on
+	 */
+	public synchronized void addSecret(String secret) {
+		if( secret != null && secret.length() > 0 )
+			secrets.add(secret.getBytes());
+	}
+
+	private synchronized void write(byte direction, byte[] data, int offset, int length) {
+		byte[] copy = new byte[length];
+		System.arraycopy(data, offset, copy, 0, length);
+
+		if( direction == OUT )
+			mask(copy);
+
+		try {
+			file.writeByte(direction);
+			file.writeLong((System.nanoTime() - start) / 1000);
+			file.writeInt(length);
+			file.write(copy);
+		} catch (IOException e) {
+			//A broken transcript shouldn't break the session
+			e.printStackTrace();
+		}
+	}
+
+	private void mask(byte[] data) {
+		for( byte[] secret : secrets )
+			for( int i = 0; i + secret.length <= data.length; i++ ) {
+				int j = 0;
+
+				while( j < secret.length && data[i + j] == secret[j] )
+					j++;
+
+				if( j == secret.length )
+					for( j = 0; j < secret.length; j++ )
+						data[i + j] = '*';
+			}
+	}
+
+	public synchronized void close() {
+		try {
+			file.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return Stream that records everything read through it
+	 */
+	public InputStream recordIn(InputStream in) {
+		return new FilterInputStream(in){
+			@Override
+			public int read() throws IOException {
+				int read = super.read();
+
+				if( read >= 0 )
+					write(IN, new byte[] { (byte) read }, 0, 1);
+
+				return read;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+
+				if( read > 0 )
+					write(IN, b, off, read);
+
+				return read;
+			}
+		};
+	}
+
+	/**
+	 * @return Stream that records everything written through it, one record per flush
+	 */
+	public OutputStream recordOut(OutputStream out) {
+		return new FilterOutputStream(new BufferedOutputStream(out)){
+			private byte[] pending = new byte[1024];
+			private int length = 0;
+
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				if( length + len > pending.length ) {
+					byte[] bigger = new byte[Math.max(pending.length * 2, length + len)];
+					System.arraycopy(pending, 0, bigger, 0, length);
+					pending = bigger;
+				}
+
+				System.arraycopy(b, off, pending, length, len);
+				length += len;
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				if( length > 0 ) {
+					SymitarTranscript.this.write(OUT, pending, 0, length);
+					length = 0;
+				}
+
+				out.flush();
+			}
+		};
+	}
+
+	/**
+	 * Reads a whole transcript back
+	 */
+	public static ArrayList<Record> load(File transcript) throws IOException {
+		ArrayList<Record> records = new ArrayList<Record>();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(transcript)));
+
+		try {
+			if( in.readInt() != MAGIC )
+				throw new IOException("Not a RepDev transcript: " + transcript);
+
+			while( true ) {
+				byte direction;
+
+				try {
+					direction = in.readByte();
+				} catch (EOFException e) {
+					break;
+				}
+
+				long micros = in.readLong();
+				byte[] data = new byte[in.readInt()];
+				in.readFully(data);
+
+				records.add(new Record(direction, micros, data));
+			}
+		}
+		finally {
+			in.close();
+		}
+
+		return records;
+	}
+}
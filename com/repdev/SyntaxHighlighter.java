@@ -39,7 +39,7 @@ import org.eclipse.swt.widgets.Display;
 import com.repdev.parser.FunctionLayout;
 import com.repdev.parser.RepgenParser;
 import com.repdev.parser.Token;
-import com.repdev.parser.Variable;
+import com.repdev.parser.TokenList;
 import com.repdev.parser.Token.SpecialBackgroundReason;
 
 
@@ -232,7 +232,6 @@ public class SyntaxHighlighter implements ExtendedModifyListener, LineStyleListe
 	}
 
 	public StyleRange getStyle(Token tok) {
-		boolean isVar = false;
 		StyleRange range = null;
 
 		if (tok.getCDepth() != 0) {
@@ -260,14 +259,8 @@ public class SyntaxHighlighter implements ExtendedModifyListener, LineStyleListe
 			range = KEYWORDS.getRange(tok.getStart(), tok.length());
 		else if (RepgenParser.getSpecialvars().contains(tok.getStr()))
 			range = VARIABLES.getRange(tok.getStart(), tok.length());
-		for (int i = 0; i < parser.getLvars().size(); i++){
-			Variable var = parser.getLvars().get(i);
 
-			if (var.getName().equals(tok.getStr()))
-				isVar = true;
-		}
-
-		if (range == null && isVar)
+		if (range == null && parser.getSymbols().contains(tok.getStr()))
 			range = VARIABLES.getRange(tok.getStart(), tok.length());
 		else if( range == null ){
 			range = NORMAL.getRange(tok.getStart(), tok.length());	
@@ -280,23 +273,18 @@ public class SyntaxHighlighter implements ExtendedModifyListener, LineStyleListe
 	}
 
 	public void lineGetStyle(LineStyleEvent event) {
-		ArrayList<Token> ltokens = parser.getLtokens();
+		TokenList ltokens = parser.getLtokens();
 		ArrayList<StyleRange> ranges = new ArrayList<StyleRange>();
 
 		int line = txt.getLineAtOffset(event.lineOffset);
 
-		int ftoken;
-		for (ftoken = 0; ftoken < ltokens.size(); ftoken++)
-			if (ltokens.get(ftoken).getEnd() >= event.lineOffset)
-				break;
+		int ftoken = ltokens.firstEndingAt(event.lineOffset);
 
 		int ltoken = ltokens.size();
 		if (line + 1 < txt.getLineCount()) {
 			int pos = txt.getOffsetAtLine(line + 1);
 
-			for (ltoken = ftoken; ltoken < ltokens.size(); ltoken++)
-				if (ltokens.get(ltoken).getStart() > pos)
-					break;
+			ltoken = Math.max(ftoken, ltokens.firstStartingAfter(pos));
 		}
 
 		for (int i = ftoken; i < ltoken; i++){
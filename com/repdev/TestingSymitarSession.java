@@ -21,12 +21,16 @@ package com.repdev;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -82,6 +86,42 @@ public class TestingSymitarSession extends SymitarSession {
 
 	}
 
+	@Override
+	public SessionError getFile(SymitarFile file, FileChunkListener listener) {
+		String line;
+		BufferedReader in;
+
+		try {
+			in = new BufferedReader(new FileReader("testdata" + System.getProperty("file.separator") + getSym() + "." + file.getType().toString() + "." + file.getName() + ".txt"));
+
+			while (!listener.isCancelled() && (line = in.readLine()) != null)
+				listener.chunk(file, line + "\r\n");
+
+			in.close();
+
+			return SessionError.NONE;
+		} catch (FileNotFoundException e) {
+			return SessionError.ARGUMENT_ERROR;
+		} catch (Exception e) {
+			return SessionError.IO_ERROR;
+		}
+	}
+
+	@Override
+	public HashMap<SymitarFile, String> getFiles(Collection<SymitarFile> files, FileRetrieveListener listener) {
+		HashMap<SymitarFile, String> data = new HashMap<SymitarFile, String>();
+
+		for (SymitarFile file : files) {
+			String cur = getFile(file);
+			data.put(file, cur);
+
+			if (listener != null)
+				listener.fileRetrieved(file, cur);
+		}
+
+		return data;
+	}
+
 	// A silly class to make file system files work with wildcards like on
 	// Symitar
 	private class SymitarWildcardFilter implements FilenameFilter {
@@ -225,6 +265,11 @@ public class TestingSymitarSession extends SymitarSession {
 		return false;
 	}
 
+	@Override
+	public HashSet<Integer> getRunningSeqs() {
+		return new HashSet<Integer>();
+	}
+
 	@Override
 	public void terminateRepgen(int seq) {
 		
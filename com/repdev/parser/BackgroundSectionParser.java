@@ -22,6 +22,7 @@
 package com.repdev.parser;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This is a background parser that will generate a list of all the sections and procedures,
@@ -30,17 +31,17 @@ import java.util.ArrayList;
  * values until the current parsing is complete. 
  */
 public class BackgroundSectionParser{
-	private ArrayList<Token> token;
+	private List<Token> token;
 	private ArrayList<SectionInfo> sectionInfo = new ArrayList<SectionInfo>();
 	private final String[] sectionHead = {"define","print title","setup","select","sort","total","procedure"};
 	private String curSection = "";
 	private int curPos, curFirst, curLast;
 	private boolean curExist, parsing = false;;
-	private String txt;
+	private CharSequence txt;
 	
 	BackgroundParser backgroundParser = null;
 	
-	public BackgroundSectionParser(ArrayList <Token> token, String txt){
+	public BackgroundSectionParser(List<Token> token, CharSequence txt){
 		this.token = token;
 		this.txt = txt;
 		refreshList(token,  txt);
@@ -112,8 +113,9 @@ public class BackgroundSectionParser{
 	
 	/**
 	 * This is the exposed method for calling the background parser.
+	 * The tokens are read on another thread, so pass a copy like RepgenParser.copyTokens(), not the live list.
 	 */
-	public void refreshList(ArrayList <Token> token, String txt){
+	public void refreshList(List<Token> token, CharSequence txt){
 		this.token = token;
 		this.txt = txt;
 		
@@ -178,13 +180,13 @@ public class BackgroundSectionParser{
 				}
 				curDepth=1;
 				if(tok.getStr().equals("procedure")){
-					si.setTitle(txt.substring(tok.getAfter().getStart(),tok.getAfter().getEnd()));
+					si.setTitle(txt.subSequence(tok.getAfter().getStart(),tok.getAfter().getEnd()).toString());
 				}
 				else{
-					si.setTitle(txt.substring(tok.getStart(),tok.getEnd()));
+					si.setTitle(txt.subSequence(tok.getStart(),tok.getEnd()).toString());
 				}
 				si.setPos(tok.getStart());
-				si.setFirstInsertPos(txt.indexOf("\n", si.getPos())+1);
+				si.setFirstInsertPos(indexOf(txt, '\n', si.getPos())+1);
 			}
 			else if(curDepth == 0){
 				if(tok.getStr().equals("end") && tok.isRealEnd()){
@@ -199,6 +201,18 @@ public class BackgroundSectionParser{
 		parsing = false;
 	}
 	
+	/**
+	 * String.indexOf for the editor text, which isn't a String anymore
+	 */
+	private static int indexOf(CharSequence str, char c, int from){
+		for(int i = Math.max(0, from); i < str.length(); i++){
+			if(str.charAt(i) == c)
+				return i;
+		}
+
+		return -1;
+	}
+
 	/**
 	 * This is an internal method that returns true if the specified is a section head.
 	 * @return <B>boolean</B> true/false
@@ -1,6 +1,7 @@
 package com.repdev.parser;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import com.repdev.EditorComposite;
 
@@ -10,10 +11,10 @@ import com.repdev.EditorComposite;
  *
  */
 public class Formatter {
-	ArrayList<Token> tokens;
+	List<Token> tokens;
 	String oldFile = "", newFile = "";
 	
-	public Formatter(String oldFile, ArrayList<Token> tokens){
+	public Formatter(String oldFile, List<Token> tokens){
 		this.tokens = tokens;
 		this.oldFile = oldFile;
 	}
@@ -0,0 +1,246 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev.parser;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.repdev.Config;
+import com.repdev.RepDevMain;
+import com.repdev.SymitarFile;
+import com.repdev.SymitarSession;
+
+/**
+ * Parsed include files, shared by every open editor. Ten repgens that all include the same big .DEF only
+ * download and summarize it once, and only keep one copy.
+ *
+ * Entries are keyed by where the file is (sym or local folder), its name and its modified date and size,
+ * so an include that changes just gets a new entry. They are read only, parsers call get() or put() to start
+ * using one and release() when done (new include parse or editor closed). Entries no editor is using are
+ * thrown away least recently used first once the cache goes over Config.getIncludeCacheSize().
+ *
+ */
+public class IncludeCache {
+	//key -> entry, in least to most recently used order
+	private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private static long totalSize = 0;
+	private static int hits = 0, misses = 0, evictions = 0;
+
+	/**
+	 * One parsed include, see IncludeSummary
+	 */
+	public static class Entry {
+		private final String fileName;
+		private final IncludeSummary summary;
+		private final long size;
+		private int users = 0;
+
+		private Entry(String fileName, IncludeSummary summary) {
+			this.fileName = fileName;
+			this.summary = summary;
+			this.size = summary.getMemorySize();
+		}
+
+		public String getFileName() {
+			return fileName;
+		}
+
+		public IncludeSummary getSummary() {
+			return summary;
+		}
+
+		public List<Variable> getVars() {
+			return summary.getVars();
+		}
+
+		/**
+		 * @return Names of the files this one #includes, in order
+		 */
+		public List<String> getIncludes() {
+			return summary.getIncludes();
+		}
+	}
+
+	/**
+	 * @return Where the file is, its name and the division it's parsed for, the same for every version of the file
+	 */
+	static String fileKey(SymitarFile file, boolean inDefs) {
+		return (file.isLocal() ? "dir:" + file.getDir() : "sym:" + file.getSym()) + "/" + file.getName() + "/" + (inDefs ? "defs" : "code");
+	}
+
+	/**
+	 * @return Modified date and size of the file as it is now, or null if we can't tell
+	 */
+	static String stamp(SymitarFile file) {
+		String stamp = null;
+
+		if( file.isLocal() ) {
+			File local = new File(file.getPath());
+
+			if( local.exists() )
+				stamp = local.lastModified() + "." + local.length();
+		}
+		else {
+			SymitarSession session = RepDevMain.SYMITAR_SESSIONS.get(file.getSym());
+
+			//Usually answered from the listing cache, no round trip
+			if( session != null && session.isConnected() )
+				for( SymitarFile cur : session.getFileList(file.getType(), file.getName()) )
+					if( cur.getName().equals(file.getName()) && cur.getModified() != null )
+						stamp = cur.getModified().getTime() + "." + cur.getSize();
+		}
+
+		return stamp;
+	}
+
+	/**
+	 * @return Key for this version of the file, or null if we can't tell what version it is
+	 */
+	private static String key(SymitarFile file, boolean inDefs) {
+		String stamp = stamp(file);
+
+		if( stamp == null )
+			return null;
+
+		return fileKey(file, inDefs) + "/" + stamp;
+	}
+
+	/**
+	 * Looks for an already parsed copy of this version of the file, parsed with the same inDefs.
+	 * A found entry counts as in use until it's passed to release().
+	 *
+	 * @return Entry, or null if it has to be parsed
+	 */
+	public static Entry get(SymitarFile file, boolean inDefs) {
+		String key = key(file, inDefs);
+
+		synchronized (IncludeCache.class) {
+			Entry entry = key == null ? null : entries.get(key);
+
+			if( entry == null ) {
+				misses++;
+				return null;
+			}
+
+			hits++;
+			entry.users++;
+			return entry;
+		}
+	}
+
+	/**
+	 * Adds a freshly parsed file. If someone else beat us to it, theirs is used instead.
+	 * The returned entry counts as in use until it's passed to release().
+	 */
+	public static Entry put(SymitarFile file, boolean inDefs, IncludeSummary summary) {
+		String key = key(file, inDefs);
+		Entry entry = new Entry(file.getName(), summary);
+
+		synchronized (IncludeCache.class) {
+			//Version unknown, hand it out but don't share it
+			if( key == null ) {
+				entry.users++;
+				return entry;
+			}
+
+			Entry old = entries.get(key);
+
+			if( old != null ) {
+				old.users++;
+				return old;
+			}
+
+			entries.put(key, entry);
+			totalSize += entry.size;
+			entry.users++;
+
+			trim();
+
+			return entry;
+		}
+	}
+
+	/**
+	 * Done with an entry from get() or put()
+	 */
+	public static synchronized void release(Entry entry) {
+		if( entry.users > 0 )
+			entry.users--;
+
+		trim();
+	}
+
+	/**
+	 * Throws out entries nobody is using, least recently used first, until we are under the size limit
+	 */
+	private static void trim() {
+		long max = Config.getIncludeCacheSize() * 1024L * 1024L;
+		Iterator<Entry> eldest = entries.values().iterator();
+
+		while( totalSize > max && eldest.hasNext() ) {
+			Entry entry = eldest.next();
+
+			if( entry.users > 0 )
+				continue;
+
+			totalSize -= entry.size;
+			evictions++;
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Drops everything nobody is using right now
+	 */
+	public static synchronized void clear() {
+		Iterator<Entry> it = entries.values().iterator();
+
+		while( it.hasNext() ) {
+			Entry entry = it.next();
+
+			if( entry.users == 0 ) {
+				totalSize -= entry.size;
+				it.remove();
+			}
+		}
+	}
+
+	public static synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	public static synchronized long getTotalSize() {
+		return totalSize;
+	}
+
+	public static synchronized int getHits() {
+		return hits;
+	}
+
+	public static synchronized int getMisses() {
+		return misses;
+	}
+
+	public static synchronized int getEvictions() {
+		return evictions;
+	}
+}
@@ -0,0 +1,198 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev.parser;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import com.repdev.parser.Token.TokenType;
+
+/**
+ * Everything the editor needs from an include file, without keeping its tokens around:
+ * the variables it defines, where its procedures and defined variables are (for goto definition),
+ * which names it uses outside of defines, strings, dates and comments (for the unused variable check)
+ * and the files it includes in turn.
+ *
+ * Read only, and small enough to save to the SymbolIndex so unchanged includes don't have to be parsed again.
+ *
+ */
+public class IncludeSummary {
+	private final List<Variable> vars;
+	private final String[] defNames;
+	private final int[] defPos;
+	private final HashSet<String> used;
+	private final List<String> includes;
+
+	private IncludeSummary(List<Variable> vars, String[] defNames, int[] defPos, HashSet<String> used, List<String> includes) {
+		this.vars = Collections.unmodifiableList(vars);
+		this.defNames = defNames;
+		this.defPos = defPos;
+		this.used = used;
+		this.includes = Collections.unmodifiableList(includes);
+	}
+
+	/**
+	 * Sums up a freshly parsed file
+	 *
+	 * @param tokens The file's tokens
+	 * @param vars Variables found in it
+	 * @param includes Names of the files it #includes, in order
+	 */
+	public static IncludeSummary create(List<Token> tokens, List<Variable> vars, List<String> includes) {
+		ArrayList<String> names = new ArrayList<String>();
+		ArrayList<Integer> positions = new ArrayList<Integer>();
+		HashSet<String> used = new HashSet<String>();
+		Token last = null;
+
+		for( Token tok : tokens ) {
+			TokenType type = tok.getTokenType();
+
+			//Goto definition lands on the token before the name
+			if( type == TokenType.PROCEDURE || type == TokenType.DEFINED_VARIABLE ) {
+				names.add(tok.getStr().intern());
+				positions.add(last == null ? tok.getStart() : last.getStart());
+			}
+
+			if( !tok.inDefs() && !tok.inDate() && !tok.inString() && tok.getCDepth() == 0 &&
+				!RepgenParser.getKeywords().contains(tok.getStr()) && !RepgenParser.getSpecialvars().contains(tok.getStr()) )
+				used.add(tok.getStr().intern());
+
+			last = tok;
+		}
+
+		int[] defPos = new int[positions.size()];
+
+		for( int i = 0; i < defPos.length; i++ )
+			defPos[i] = positions.get(i);
+
+		return new IncludeSummary(new ArrayList<Variable>(vars), names.toArray(new String[names.size()]), defPos, used, new ArrayList<String>(includes));
+	}
+
+	/**
+	 * Reads a summary saved by write()
+	 *
+	 * @param fileName File the variables belong to, the same text can be saved under more than one name
+	 */
+	public static IncludeSummary read(String fileName, DataInputStream in) throws IOException {
+		ArrayList<Variable> vars = new ArrayList<Variable>();
+		ArrayList<String> includes = new ArrayList<String>();
+		HashSet<String> used = new HashSet<String>();
+		int count;
+
+		count = in.readInt();
+		for( int i = 0; i < count; i++ ) {
+			Variable var = new Variable(in.readUTF().intern(), fileName, in.readInt(), in.readUTF());
+
+			var.setConstant(in.readBoolean());
+			vars.add(var);
+		}
+
+		count = in.readInt();
+		String[] defNames = new String[count];
+		int[] defPos = new int[count];
+
+		for( int i = 0; i < count; i++ ) {
+			defNames[i] = in.readUTF().intern();
+			defPos[i] = in.readInt();
+		}
+
+		count = in.readInt();
+		for( int i = 0; i < count; i++ )
+			used.add(in.readUTF().intern());
+
+		count = in.readInt();
+		for( int i = 0; i < count; i++ )
+			includes.add(in.readUTF());
+
+		return new IncludeSummary(vars, defNames, defPos, used, includes);
+	}
+
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(vars.size());
+		for( Variable var : vars ) {
+			out.writeUTF(var.getName());
+			out.writeInt(var.getPos());
+			out.writeUTF(var.getType() == null ? "" : var.getType());
+			out.writeBoolean(var.isConstant());
+		}
+
+		out.writeInt(defNames.length);
+		for( int i = 0; i < defNames.length; i++ ) {
+			out.writeUTF(defNames[i]);
+			out.writeInt(defPos[i]);
+		}
+
+		out.writeInt(used.size());
+		for( String name : used )
+			out.writeUTF(name);
+
+		out.writeInt(includes.size());
+		for( String name : includes )
+			out.writeUTF(name);
+	}
+
+	public List<Variable> getVars() {
+		return vars;
+	}
+
+	/**
+	 * @return Names of the files this one #includes, in order
+	 */
+	public List<String> getIncludes() {
+		return includes;
+	}
+
+	/**
+	 * @return Number of procedures and defined variables
+	 */
+	public int getDefinitionCount() {
+		return defNames.length;
+	}
+
+	public String getDefinitionName(int i) {
+		return defNames[i];
+	}
+
+	/**
+	 * @return Offset to jump to for goto definition
+	 */
+	public int getDefinitionPos(int i) {
+		return defPos[i];
+	}
+
+	/**
+	 * @return True if name shows up in the file outside of defines, strings, dates and comments
+	 */
+	public boolean uses(String name) {
+		return used.contains(name);
+	}
+
+	/**
+	 * @return Rough bytes used, the interned strings are shared so they aren't counted
+	 */
+	public long getMemorySize() {
+		return 64 + vars.size() * 64L + defNames.length * 24L + used.size() * 32L + includes.size() * 32L;
+	}
+}
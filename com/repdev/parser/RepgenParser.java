@@ -28,6 +28,10 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.CTabFolder;
@@ -39,7 +43,9 @@ import org.eclipse.swt.widgets.TableItem;
 
 import com.repdev.EditorComposite;
 import com.repdev.ErrorCheckResult;
+import com.repdev.FileContentCache;
 import com.repdev.FileType;
+import com.repdev.PieceTableContent;
 import com.repdev.RepDevMain;
 import com.repdev.SymitarFile;
 import com.repdev.parser.Token.TokenType;
@@ -55,8 +61,19 @@ public class RepgenParser {
 	private static FunctionLayout functions = FunctionLayout.getInstance();
 	private static KeywordLayout keywords = KeywordLayout.getInstance();
 
-	private ArrayList<Token> ltokens = new ArrayList<Token>();
-	private ArrayList<Variable> lvars = new ArrayList<Variable>();
+	private static final int MAX_INCLUDE_LOADERS = 6; //Includes downloaded at once, over every editor
+
+	//Shared by every editor's BackgroundIncludeParser, loads never wait on each other so a bounded pool can't get stuck
+	private static final ExecutorService includeLoaders = Executors.newFixedThreadPool(MAX_INCLUDE_LOADERS, new ThreadFactory(){
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Include Loader");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private TokenList ltokens = new TokenList();
+	private SymbolTable symbols = new SymbolTable();
 
 	private ArrayList<Token> lasttokens = new ArrayList<Token>(); //Tokens added in last parse method call
 	private ArrayList<Token> removedtokens = new ArrayList<Token>(); //Tokens removed
@@ -65,7 +82,8 @@ public class RepgenParser {
 	private ArrayList<Error> errorList = new ArrayList<Error>();
 	private ArrayList<Task> taskList = new ArrayList<Task>();
 
-	private HashMap<String,ArrayList<Token>> includeTokenChache = new HashMap<String, ArrayList<Token>>();
+	private HashMap<String,IncludeSummary> includeTokenChache = new HashMap<String, IncludeSummary>();
+	private ArrayList<IncludeCache.Entry> sharedIncludes = new ArrayList<IncludeCache.Entry>(); //Entries we're holding in the shared IncludeCache
 
 	BackgroundSymitarErrorChecker errorCheckerWorker = null;
 	BackgroundIncludeParser includeParserWorker = null;
@@ -95,107 +113,286 @@ public class RepgenParser {
 	/**
 	 * Worker class for loading any included files and parsing out their contents
 	 * Currently runs once at opening of the report
+	 *
+	 * Includes are loaded a level of the include tree at a time. Every include on a level is looked up in the shared
+	 * cache and the symbol index together, the ones that still have to be read come from the host in one getFiles batch
+	 * (see Config.getRetrieveWindow() for overlapping those), then they are summarized side by side on the shared
+	 * loader pool. parse() itself holds the parser lock, so only the summary and index work really overlaps.
+	 * Each file is only loaded once per division, which also takes care of include loops.
+	 * Once everything is in, the results are put together in the same order (and with the same divisions) the
+	 * old one file at a time walk used, and variables are merged into the symbol table in one go.
+	 * The include token cache is only locked for that last step, not while files download.
 	 * @author poznanja
 	 *
 	 */
 	public class BackgroundIncludeParser extends Thread{
-		String text;
+		CharSequence text;
+
+		//Every include seen so far, see key()
+		private final HashSet<String> found = new HashSet<String>();
+
+		/**
+		 * One include being loaded, in one division
+		 */
+		private class Load {
+			final String fileName;
+			final boolean inDefs;
+			final SymitarFile incFile;
+			IncludeCache.Entry entry;
+			String data;
+
+			Load(String fileName, boolean inDefs){
+				this.fileName = fileName;
+				this.inDefs = inDefs;
+
+				if( file.isLocal() )
+					incFile = new SymitarFile(file.getDir(),fileName);
+				else
+					incFile = new SymitarFile(sym,fileName,FileType.REPGEN);
+			}
+		}
 
-		public BackgroundIncludeParser(String text){
+		public BackgroundIncludeParser(CharSequence text){
 			super("Background Include Parser");
 			this.text = text;
 		}
 
-		private void parseCurrentFileAsInclude(String fileName, boolean inDefs){
-			boolean exists = false;
-			ArrayList<Token> tokens = new ArrayList<Token>();
-			String data = "";
+		//The same file can show up in and out of the define division, those parse differently
+		private String key(String fileName, boolean inDefs){
+			return (inDefs ? "D:" : "N:") + fileName;
+		}
 
-			includes.add(new Include(fileName, inDefs ? Division.DEFINE : Division.NONE));
+		/**
+		 * Adds an include to a level, unless we already have it or it's the file being edited
+		 */
+		private void want(ArrayList<Load> level, String fileName, boolean inDefs){
+			if( fileName.equals(file.getName()) || !found.add(key(fileName, inDefs)) )
+				return;
 
-			if( file.isLocal() )
-				data = new SymitarFile(file.getDir(),fileName).getData();
-			else
-				data = new SymitarFile(sym,fileName,FileType.REPGEN).getData();
+			level.add(new Load(fileName, inDefs));
+		}
 
-			if( data == null )
+		private void waitFor(ArrayList<Future<?>> jobs){
+			for( Future<?> job : jobs ){
+				try {
+					job.get();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		/**
+		 * Looks for the file in the shared cache, then in the symbol index, runs on the loader threads
+		 */
+		private void lookup(Load load){
+			//Other editors including the same version of this file have already done the work
+			load.entry = IncludeCache.get(load.incFile, load.inDefs);
+
+			if( load.entry == null ){
+				//Summarized in an earlier session and not changed since, no need to even read it
+				IncludeSummary summary = SymbolIndex.lookup(load.incFile, load.inDefs);
+
+				if( summary != null )
+					load.entry = IncludeCache.put(load.incFile, load.inDefs, summary);
+			}
+		}
+
+		/**
+		 * Reads every remote file on the level that lookup() didn't find, in one batch. Local ones are read by summarize().
+		 */
+		private void fetch(ArrayList<Load> level){
+			ArrayList<SymitarFile> remote = new ArrayList<SymitarFile>();
+
+			for( Load load : level )
+				if( load.entry == null && !load.incFile.isLocal() && !remote.contains(load.incFile) )
+					remote.add(load.incFile);
+
+			if( remote.isEmpty() )
 				return;
 
-			parse(fileName, data, 0, data.length(), 0, null, tokens, new ArrayList<Token>(), new ArrayList<Token>(), new ArrayList<Variable>(),null);
-			
-			includeTokenChache.put(fileName,tokens);
+			HashMap<SymitarFile,String> data = FileContentCache.getData(remote);
 
-			for( Token tok : tokens ){
-				tok.setInDefs(inDefs);
+			for( Load load : level )
+				if( load.entry == null && !load.incFile.isLocal() )
+					load.data = data.get(load.incFile);
+		}
 
-				if( tok.getStr().equals("#include") && tok.getAfter() != null && tok.getCDepth() == 0){
-					String newFileName = getFullString(tok.getAfter(),data);
+		/**
+		 * Parses a file that had to be read and saves its summary, runs on the loader threads
+		 */
+		private void summarize(Load load){
+			String data = load.incFile.isLocal() ? load.incFile.getData() : load.data;
 
-					exists = false;
+			load.data = null;
 
-					for( Include cur : includes ){
-						if(cur.getFileName().equals(newFileName))
-							exists=true;
-					}
+			if( data == null )
+				return;
 
-					if( !exists && !newFileName.equals(file.getName()) ){
-						parseCurrentFileAsInclude(newFileName, inDefs);
-					}
+			//Same text as something we've seen, under another name or sym, or just saved again
+			IncludeSummary summary = SymbolIndex.lookup(load.incFile, load.inDefs, data);
+
+			if( summary == null ){
+				TokenList tokens = new TokenList();
+				ArrayList<String> incNames = new ArrayList<String>();
+
+				parse(load.fileName, data, 0, data.length(), 0, null, tokens, new ArrayList<Token>(), new ArrayList<Token>(), null);
+
+				for( Token tok : tokens ){
+					tok.setInDefs(load.inDefs);
+
+					if( tok.getStr().equals("#include") && tok.getAfter() != null && tok.getCDepth() == 0)
+						incNames.add(getFullString(tok.getAfter(),data));
 				}
+
+				//Only the summary is kept, the Token objects go away with this method
+				summary = IncludeSummary.create(tokens, load.inDefs ? findVars(load.fileName,data,tokens) : new ArrayList<Variable>(), incNames);
+				SymbolIndex.store(load.incFile, load.inDefs, data, summary);
 			}
 
-			if( inDefs )
-				rebuildVars(fileName,data,tokens);
-			//txt.notifyListeners(getSym(), null);
+			load.entry = IncludeCache.put(load.incFile, load.inDefs, summary);
+		}
+
+		/**
+		 * Fills in includes and the include token cache in the same order walking the includes one at a time would,
+		 * and collects the entries and variables used along the way
+		 */
+		private void addInOrder(String fileName, boolean inDefs, HashMap<String,IncludeCache.Entry> loaded, HashSet<String> added, ArrayList<IncludeCache.Entry> used, ArrayList<Variable> vars){
+			if( fileName.equals(file.getName()) || !added.add(fileName) )
+				return;
+
+			includes.add(new Include(fileName, inDefs ? Division.DEFINE : Division.NONE));
+
+			IncludeCache.Entry entry = loaded.get(key(fileName, inDefs));
+
+			if( entry == null )
+				return;
+
+			used.add(entry);
+			includeTokenChache.put(fileName,entry.getSummary());
+
+			for( String newFileName : entry.getIncludes() )
+				addInOrder(newFileName, inDefs, loaded, added, used, vars);
+
+			vars.addAll(entry.getVars());
 		}
 
 		public void run(){
-			boolean exists = false;
-			ArrayList<Token> tempTokens = new  ArrayList<Token>();
+			long started = System.currentTimeMillis();
+			ArrayList<Token> roots = new ArrayList<Token>();
+			HashMap<String,IncludeCache.Entry> loaded = new HashMap<String,IncludeCache.Entry>();
+			ArrayList<Token> tempTokens = copyTokens();
+			ArrayList<Load> level = new ArrayList<Load>();
 
+			//Only run next level of parsing on the include files not including the current file
+			//Variables in the current file are handled seperately
 
-			synchronized(includeTokenChache){//Sync it on the token cache, so other threads can access it safely
+			for( Token tok : tempTokens ){
+				if( tok.getStr().equals("#include") && tok.getAfter() != null && tok.getCDepth() == 0){
+					String fileName = getFullString(tok.getAfter(),text);
 
-				cleanupTokenCache();
-				
-				for( Token tok : ltokens){
-					tempTokens.add(new Token(tok));
-					//tempTokens.add(tok);
+					roots.add(tok);
+					want(level, fileName, tok.inDefs());
 				}
+			}
 
-				int i = 0;
+			while( !level.isEmpty() ){
+				ArrayList<Future<?>> jobs = new ArrayList<Future<?>>();
+				ArrayList<Load> next = new ArrayList<Load>();
 
-				for( Token tok : tempTokens){
-					tok.setNearTokens(tempTokens, i);
-					i++;
+				for( final Load load : level )
+					jobs.add(includeLoaders.submit(new Runnable(){
+						public void run() {
+							lookup(load);
+						}
+					}));
+
+				waitFor(jobs);
+				fetch(level);
+				jobs.clear();
+
+				for( final Load load : level )
+					if( load.entry == null )
+						jobs.add(includeLoaders.submit(new Runnable(){
+							public void run() {
+								summarize(load);
+							}
+						}));
+
+				waitFor(jobs);
+
+				for( Load load : level ){
+					if( load.entry == null )
+						continue;
+
+					loaded.put(key(load.fileName, load.inDefs), load.entry);
+
+					for( String newFileName : load.entry.getIncludes() )
+						want(next, newFileName, load.inDefs);
 				}
 
+				level = next;
+			}
 
-				//Only run next level of parsing on the include files not including the current file
-				//Variables in the current file are handled seperately
+			ArrayList<IncludeCache.Entry> used = new ArrayList<IncludeCache.Entry>();
 
-				for( Token tok : tempTokens ){
-					if( tok.getStr().equals("#include") && tok.getAfter() != null && tok.getCDepth() == 0){
-						String fileName = getFullString(tok.getAfter(),text);
+			synchronized(includeTokenChache){//Sync it on the token cache, so other threads can access it safely
+				ArrayList<Variable> vars = new ArrayList<Variable>();
+				HashSet<String> added = new HashSet<String>();
 
-						exists = false;
+				cleanupTokenCache();
 
-						for( Include cur : includes ){
-							if(cur.getFileName().equals(fileName))
-								exists=true;
-						}
+				for( Token tok : roots )
+					addInOrder(getFullString(tok.getAfter(),text), tok.inDefs(), loaded, added, used, vars);
 
-						if( !exists && !fileName.equals(file.getName()) ){
-							parseCurrentFileAsInclude(fileName, tok.inDefs());
-						}
-					}
+				synchronized(sharedIncludes){
+					//Editor was closed while we were working, don't hang on to anything
+					if( txt.isDisposed() )
+						used.clear();
+
+					sharedIncludes.addAll(used);
 				}
+
+				setIncludeVars(vars);
 			}
 
+			//Loaded in a division the one at a time walk wouldn't have used
+			for( IncludeCache.Entry entry : loaded.values() )
+				if( !used.contains(entry) )
+					IncludeCache.release(entry);
+
+			System.out.println("Loaded " + loaded.size() + " includes for " + file.getName() + " in " + (System.currentTimeMillis() - started) + "ms");
+
 			includeParserWorker = null;
 		}
 	}
 
+	/**
+	 * Only check errors if File name does not end with .PRO, .SET, .DEF, .INC,
+	 * or whatever the no error check prefixes and suffixes are set to
+	 * 
+	 * @param fileName
+	 * @return false for include files that can't be checked on their own
+	 */
+	public static boolean isErrorChecked(String fileName){
+		String[] extensionsToExclude = com.repdev.Config.getNoErrorCheckSuffix().split(",");
+		boolean checkFile = true;
+		if(extensionsToExclude[0].length() != 0){
+			for(String extension : extensionsToExclude){
+				if(fileName.endsWith(extension))
+					checkFile = false;
+			}
+		}
+		extensionsToExclude = com.repdev.Config.getNoErrorCheckPrefix().split(",");
+		if(extensionsToExclude[0].length() != 0){
+			for(String extension : extensionsToExclude){
+				if(fileName.startsWith(extension))
+					checkFile = false;
+			}
+		}
+		return checkFile;
+	}
+
 	/**
 	 * Warning: Doesn't save symitar file
 	 * 
@@ -215,7 +412,6 @@ public class RepgenParser {
 		public void run() {
 			final Table tblErrors = RepDevMain.mainShell.getErrorTable();
 			final Table tblTasks  = RepDevMain.mainShell.getTaskTable();
-			ArrayList<Variable> varCache = new ArrayList<Variable>();
 
 			if (tblErrors.isDisposed())
 				return;
@@ -228,88 +424,42 @@ public class RepgenParser {
 				taskList.clear();
 
 				// Error check with symitar
-				// Only check errors if File name does not end with .PRO, .SET, .DEF, .INC
-				String[] extensionsToExclude = com.repdev.Config.getNoErrorCheckSuffix().split(",");
-				boolean checkFile = true;
-				if(extensionsToExclude[0].length() != 0){
-					for(String extension : extensionsToExclude){
-						if(file.getName().endsWith(extension))
-							checkFile = false;
-					}
-				}
-				//System.out.println(com.repdev.Config.getNoErrorCheckPrefix());
-				extensionsToExclude = com.repdev.Config.getNoErrorCheckPrefix().split(",");
-				if(extensionsToExclude[0].length() != 0){
-					for(String extension : extensionsToExclude){
-						if(file.getName().startsWith(extension))
-						checkFile = false;
-					}
-				}
-				if(checkFile){
+				if(isErrorChecked(file.getName())){
 					ErrorCheckResult result = RepDevMain.SYMITAR_SESSIONS.get(sym).errorCheckRepGen(file.getName());
 					errorList.add(new Error(result));
 				}
 
 
-				// Variable checking
-				synchronized(lvars){				
-					//Duplicate variables
-					for (final Variable var : lvars) {
-						varCache.add(new Variable(var));
+				// Variable checking, only the ones in this file
+				ArrayList<Variable> fileVars = symbols.getFileVars(file.getName());
 
-						if (var.getFilename().equals(file.getName())) {
-							int count = 0;
-
-							for (Variable var2 : lvars)
-								if (var2.equals(var))
-									count++;
-
-							if (count > 1 && !tblErrors.isDisposed())
-								display.syncExec(new Runnable() {
-									public void run() {
-										if (!txt.isDisposed())
-											errorList.add(new Error(file.getName(), "Duplicate variable name: " + var.getName().toUpperCase(), txt.getLineAtOffset(var.getPos()) + 1, var.getPos() - txt.getOffsetAtLine(txt.getLineAtOffset(var.getPos())) + 1,Error.Type.WARNING));
-									}
-								});
-						}
-					}
+				//Duplicate variables
+				for (final Variable var : fileVars) {
+					if (symbols.count(var.getName()) > 1 && !tblErrors.isDisposed())
+						display.syncExec(new Runnable() {
+							public void run() {
+								if (!txt.isDisposed())
+									errorList.add(new Error(file.getName(), "Duplicate variable name: " + var.getName().toUpperCase(), txt.getLineAtOffset(var.getPos()) + 1, var.getPos() - txt.getOffsetAtLine(txt.getLineAtOffset(var.getPos())) + 1,Error.Type.WARNING));
+							}
+						});
 				}
 
 
 				synchronized(includeTokenChache){
 					//unused var checking
-					for (final Variable var : lvars) {	
-						if( !var.getFilename().equals(file.getName()) )
-							continue;
-
+					for (final Variable var : fileVars) {	
 						boolean unused = true;
 
-						for( int i = 0; i < ltokens.size(); i++){
-							Token tok = ltokens.get(i);
-
-							if( tok.inDefs() || tok.inDate() || tok.inString() || tok.getCDepth() > 0)
-								continue;
-
-							if( RepgenParser.getKeywords().contains(tok.getStr()) || RepgenParser.getSpecialvars().contains(tok.getStr()))
-								continue;
-
-							if( var.getName().equals(tok.getStr()) ){
-								unused = false;
-								break;
+						//Keywords never count as a use
+						if( !RepgenParser.getKeywords().contains(var.getName()) && !RepgenParser.getSpecialvars().contains(var.getName())){
+							synchronized(RepgenParser.this){
+								unused = ltokens.getUseCount(var.getName()) == 0;
 							}
 						}
 
-						for( ArrayList<Token> tokens : includeTokenChache.values()){
-							for( Token tok : tokens){
-								if( tok.inDefs() || tok.inDate() || tok.inString() || tok.getCDepth() > 0)
-									continue;
-
-								if( RepgenParser.getKeywords().contains(tok.getStr()) || RepgenParser.getSpecialvars().contains(tok.getStr()))
-									continue;
-
-								if( var.getName().equals(tok.getStr()) )
-									unused = false;
-							}
+						for( IncludeSummary summary : includeTokenChache.values()){
+							if( summary.uses(var.getName()) )
+								unused = false;
 						}
 
 						if( unused && !tblErrors.isDisposed()){
@@ -489,7 +639,7 @@ public class RepgenParser {
 	 * @param spot
 	 * @param tok
 	 */
-	private void addToken(ArrayList<Token> tokens, int spot, Token tok){
+	private void addToken(TokenList tokens, int spot, Token tok){
 		if(spot > 0 && tokens.get(spot-1).getStr().equals("procedure") && !tok.inString() && tok.getCDepth() == 0)
 			tok.setTokenType(TokenType.PROCEDURE); //TODO: add other types
 		if(spot > 0 && tok.getStr().equalsIgnoreCase("=") && tok.inDefs() && !tok.inString() && tok.getCDepth() == 0)
@@ -511,27 +661,19 @@ public class RepgenParser {
 	 * @param replacedText
 	 * @param oldend
 	 * @param tokens
-	 * @param vars
 	 * @param txt
 	 * @return
 	 * 
 	 * TODO: Type asdf" then going back and putting a " in the start of the string doesn't redraw the file after the second "
 	 */
 
-	private synchronized boolean parse(String filename, String str, int start, int end, int oldend, String replacedText, ArrayList<Token> tokens, ArrayList<Token> lasttokens, ArrayList<Token> removedtokens, ArrayList<Variable> vars, StyledText txt) {
+	private synchronized boolean parse(String filename, CharSequence str, int start, int end, int oldend, String replacedText, TokenList tokens, ArrayList<Token> lasttokens, ArrayList<Token> removedtokens, StyledText txt) {
 		boolean allDefs = true, redrawAll = false;
 		lasttokens.clear();
 		removedtokens.clear();
 
-		int ftoken;
-		for(ftoken = 0; ftoken < tokens.size(); ftoken++)
-			if(tokens.get(ftoken).getEnd()>=start)
-				break;
-
-		int ltoken;
-		for(ltoken = ftoken; ltoken < tokens.size(); ltoken++)
-			if(tokens.get(ltoken).getStart()>oldend)
-				break;
+		int ftoken = tokens.firstEndingAt(start);
+		int ltoken = Math.max(ftoken, tokens.firstStartingAfter(oldend));
 
 		int charStart, charEnd;
 
@@ -545,7 +687,7 @@ public class RepgenParser {
 		else
 			charEnd = str.length();
 
-		char[] chars = str.substring(charStart, charEnd).toLowerCase().toCharArray();
+		char[] chars = str.subSequence(charStart, charEnd).toString().toLowerCase().toCharArray();
 
 		boolean inString=false, inDate=false, inDefine = false, inSetup = false;
 		int commentDepth=0;
@@ -659,8 +801,7 @@ public class RepgenParser {
 		}
 
 		if(end!=oldend)
-			for(int i=curspot;i<tokens.size();i++)
-				tokens.get(i).incStart(end-oldend);
+			tokens.shift(curspot, end-oldend);
 
 		int fixspot = curspot;
 
@@ -717,12 +858,6 @@ public class RepgenParser {
 			}
 		}
 
-		for(int i=curspot-1;i>=0;i--)
-			if(!tokens.get(i).inString() && tokens.get(i).getCDepth()!=0) {
-				tokens.get(i).setNearTokens(tokens,i);
-				break;
-			}
-
 		for(int i=Math.max(0,ftoken-1);i<fixspot;i++){
 			tokens.get(i).setNearTokens(tokens,i); //Set near tokens on the ones we edited
 		}
@@ -758,7 +893,7 @@ public class RepgenParser {
 					//Merge Print title so we can make that a division in the parser later versus regular print commands
 
 					if( (cur.getStr().equals("print") && cur.getAfter().getStr().equals("title")) ||
-							(db.containsRecordName(cur.getStr() + " " + cur.getAfter().getStr()) && str.substring(cur.getEnd(), cur.getAfter().getStart()).equals(" ")))
+							(db.containsRecordName(cur.getStr() + " " + cur.getAfter().getStr()) && str.subSequence(cur.getEnd(), cur.getAfter().getStart()).toString().equals(" ")))
 					{
 						cur.setStr(cur.getStr() + " " + cur.getAfter().getStr() );
 						tokens.remove(cur.getAfter());
@@ -768,7 +903,7 @@ public class RepgenParser {
 
 						continue;
 					}
-					if( cur.getAfter().getAfter() != null && db.containsFieldName(cur.getStr() + ":" + cur.getAfter().getAfter().getStr()) && str.substring(cur.getEnd(), cur.getAfter().getAfter().getStart()).equals(":"))	
+					if( cur.getAfter().getAfter() != null && db.containsFieldName(cur.getStr() + ":" + cur.getAfter().getAfter().getStr()) && str.subSequence(cur.getEnd(), cur.getAfter().getAfter().getStart()).toString().equals(":"))	
 					{
 						cur.setStr(cur.getStr() + ":" + cur.getAfter().getAfter().getStr() );
 						tokens.remove(cur.getAfter());
@@ -807,7 +942,7 @@ public class RepgenParser {
 		return allDefs;
 	}
 
-	private static String getFullString(Token cur, String fileData){
+	private static String getFullString(Token cur, CharSequence fileData){
 		if( !cur.inString() )
 			return "";
 
@@ -828,7 +963,7 @@ public class RepgenParser {
 			lToken =cur;
 		}
 
-		type += fileData.substring(fToken.getStart(),Math.min(lToken == null ? fileData.length() -1 : lToken.getEnd(),fileData.length()-1));		
+		type += fileData.subSequence(fToken.getStart(),Math.min(lToken == null ? fileData.length() -1 : lToken.getEnd(),fileData.length()-1));		
 
 		return type;
 	}
@@ -843,22 +978,15 @@ public class RepgenParser {
 		}
 	}
 
-	private synchronized void rebuildVars(String fileName, String data, ArrayList<Token> tokens) {
-		ArrayList<Variable> newvars = new ArrayList<Variable>();
-		ArrayList<Variable> oldvars = new ArrayList<Variable>();
-
-		boolean changed = false, exists = false;
-
-		int c = 0;
-
-		//Note: I don't think this block still needs syncing, I changed a number of things
-		while( c < lvars.size() ){
-			if( lvars.get(c).getFilename().equals(fileName))
-				oldvars.add(lvars.remove(c));
-			else
-				c++;
-		}
+	private void rebuildVars(String fileName, CharSequence data, List<Token> tokens) {
+		setVars(fileName, findVars(fileName, data, tokens));
+	}
 
+	/**
+	 * Pulls the variable definitions out of a parsed file, doesn't touch the symbol table
+	 */
+	private static ArrayList<Variable> findVars(String fileName, CharSequence data, List<Token> tokens) {
+		ArrayList<Variable> newvars = new ArrayList<Variable>();
 
 		System.out.println("Parsing vars for " + fileName);
 
@@ -951,31 +1079,29 @@ public class RepgenParser {
 			}
 		}
 
-		changed = !(oldvars.size() == newvars.size());
-
-		if( !changed ){
-			for (Variable var : newvars) {
-				exists = false;
-
-				for (Variable lvar : oldvars)
-					if (lvar.equals(var))
-						exists = true;
+		return newvars;
+	}
 
-				if (!exists) {
-					changed = true;
-					break;
+	/**
+	 * Swaps the variables from every include for newvars, in one go, and redraws if they changed
+	 */
+	private synchronized void setIncludeVars(List<Variable> newvars) {
+		//Variables are colored from the symbol table, so the define section only looks right once this is in
+		if( symbols.setOtherFileVars(file.getName(), newvars) && !txt.isDisposed() )
+			txt.getDisplay().asyncExec(new Runnable(){
+				public void run() {
+					if( !txt.isDisposed() )
+						txt.redrawRange(0, txt.getCharCount(), false);
 				}
-			}
-		}
-
-		//Still needs synchronizing, as the method level synchronized doesn't effect calls from the background parsers
-		synchronized(lvars){
-			lvars.addAll(newvars);
-		}
-
-		if (changed && fileName.equals(file.getName()))
-			txt.redrawRange(0, txt.getText().length(), false);
+			});
+	}
 
+	/**
+	 * Swaps fileName's variables for newvars, redraws if the current file's changed
+	 */
+	private synchronized void setVars(String fileName, List<Variable> newvars) {
+		if (symbols.setFileVars(fileName, newvars) && fileName.equals(file.getName()))
+			txt.redrawRange(0, txt.getCharCount(), false);
 	}
 
 	public void textModified(int start, int length, String replacedText){
@@ -988,7 +1114,7 @@ public class RepgenParser {
 			long time = System.currentTimeMillis();
 
 			try {
-				parse(file.getName(), txt.getText(), st, end, oldend, replacedText, ltokens, lasttokens, removedtokens, lvars, txt);
+				parse(file.getName(), PieceTableContent.getCharSequence(txt), st, end, oldend, replacedText, ltokens, lasttokens, removedtokens, txt);
 
 				for( Token cur : lasttokens){
 					if( cur.inDefs() )
@@ -1042,7 +1168,7 @@ public class RepgenParser {
 
 
 				if( rebuildVars )
-					rebuildVars(file.getName(), txt.getText(), ltokens);
+					rebuildVars(file.getName(), PieceTableContent.getCharSequence(txt), ltokens);
 
 				if( initialIncludeParseNeeded ){
 					parseIncludes();
@@ -1052,14 +1178,14 @@ public class RepgenParser {
 				System.err.println("Syntax Highlighter error!");
 				e.printStackTrace();
 			}
-			// parse(file.getName(),txt.getText(),txt.,end,end,ltokens,lvars);
+			// parse(file.getName(),txt.getText(),txt.,end,end,ltokens);
 			//System.out.println("Parse time: " + (System.currentTimeMillis() - time));
 		}
 	}
 
 	public void parseIncludes(){
 		if( includeParserWorker == null ){
-			includeParserWorker = new BackgroundIncludeParser(txt.getText());
+			includeParserWorker = new BackgroundIncludeParser(PieceTableContent.snapshot(txt));
 			refreshIncludes = false;
 			includeParserWorker.start();
 		}
@@ -1074,9 +1200,9 @@ public class RepgenParser {
 
 	public void reparseAll() {
 		try {
-			ltokens = new ArrayList<Token>();
-			parse(file.getName(), txt.getText(), 0, txt.getCharCount() - 1, 0, null, ltokens, lasttokens, removedtokens, lvars, txt);
-			rebuildVars(file.getName(), txt.getText(), ltokens);
+			ltokens = new TokenList();
+			parse(file.getName(), PieceTableContent.getCharSequence(txt), 0, txt.getCharCount() - 1, 0, null, ltokens, lasttokens, removedtokens, txt);
+			rebuildVars(file.getName(), PieceTableContent.getCharSequence(txt), ltokens);
 			System.out.println("Reparsed");
 		} catch (Exception e) {
 			System.err.println("Syntax Highlighter error!");
@@ -1085,24 +1211,40 @@ public class RepgenParser {
 	}
 
 	public void cleanupTokenCache(){
-		//WTF: There is a weird bug I need to account for with the garbage collector.
-		//When we remove references to the token arraylists, that doens't make any difference, since each token is in a linked list too, which doesn't get properly collected
-		//So, I need to essentially clear the linked list
-		
-		for( ArrayList<Token> tokens : includeTokenChache.values())
-			for( Token tok : tokens)
-				tok.setNearTokens(null,0);
-		
+		//Includes are only kept as IncludeSummary's, no tokens to unhook, just let the shared cache know we're done with them
+		synchronized(sharedIncludes){
+			for( IncludeCache.Entry entry : sharedIncludes )
+				IncludeCache.release(entry);
+
+			sharedIncludes.clear();
+		}
+
 		includeTokenChache.clear();
 		includes.clear();
 	}
 
-	public ArrayList<Token> getLtokens() {
+	/**
+	 * Deep copy of the tokens, with their own before/after links, for threads other than the UI one.
+	 * The live TokenList's tree links change under parse(), so it can't be walked from another thread.
+	 */
+	public synchronized ArrayList<Token> copyTokens() {
+		ArrayList<Token> copy = new ArrayList<Token>(ltokens.size());
+
+		for( Token tok : ltokens )
+			copy.add(new Token(tok));
+
+		for( int i = 0; i < copy.size(); i++ )
+			copy.get(i).setNearTokens(copy, i);
+
+		return copy;
+	}
+
+	public TokenList getLtokens() {
 		return ltokens;
 	}
 
-	public ArrayList<Variable> getLvars() {
-		return lvars;
+	public SymbolTable getSymbols() {
+		return symbols;
 	}
 
 	public void setReparse(boolean reparse) {
@@ -1199,7 +1341,7 @@ public class RepgenParser {
 		return includes;
 	}
 
-	public HashMap<String,ArrayList<Token>> getIncludeTokenChache() {
+	public HashMap<String,IncludeSummary> getIncludeTokenChache() {
 		return includeTokenChache;
 	}
 }
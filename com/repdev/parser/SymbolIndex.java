@@ -0,0 +1,275 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.Properties;
+
+import com.repdev.SymitarFile;
+
+/**
+ * On disk copy of IncludeSummary's, so reopening tabs after a restart doesn't download and parse every include
+ * again just to get the variables back.
+ *
+ * Summaries are saved by a hash of the file's text (and the division it was parsed for):
+ * cache/symbols/HASH.defs or cache/symbols/HASH.code, so the same .DEF on several syms is only summarized once.
+ * cache/symbols/files.properties says which hash each file had at what modified date and size; while those
+ * still match, the summary is used without even reading the file.
+ *
+ * Loaded the first time it's used. Summaries no file points to anymore are cleaned up at that point.
+ *
+ */
+public class SymbolIndex {
+	private static final String INDEX_DIR = "cache" + File.separator + "symbols";
+	private static final String FILES = "files.properties";
+	private static final int VERSION = 1; //Bump when the IncludeSummary format changes
+
+	//IncludeCache.fileKey -> "stamp hash"
+	private static Properties files;
+	private static int hits = 0, misses = 0;
+
+	private static void load() {
+		if( files != null )
+			return;
+
+		files = new Properties();
+
+		File index = new File(INDEX_DIR, FILES);
+
+		if( index.exists() ) {
+			try {
+				FileInputStream in = new FileInputStream(index);
+
+				try {
+					files.load(in);
+				}
+				finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				files.clear();
+			}
+		}
+
+		HashSet<String> wanted = new HashSet<String>();
+
+		for( Object value : files.values() )
+			wanted.add(value.toString().substring(value.toString().indexOf(' ') + 1));
+
+		File[] saved = new File(INDEX_DIR).listFiles();
+
+		if( saved != null )
+			for( File file : saved )
+				if( !file.getName().equals(FILES) && !wanted.contains(file.getName()) )
+					file.delete();
+	}
+
+	private static void save() {
+		File index = new File(INDEX_DIR, FILES);
+		index.getParentFile().mkdirs();
+
+		try {
+			FileOutputStream out = new FileOutputStream(index);
+
+			try {
+				files.store(out, "RepDev include symbol index");
+			}
+			finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return Name of the summary file for this text
+	 */
+	private static String hash(String data, boolean inDefs) {
+		StringBuilder hash = new StringBuilder();
+
+		try {
+			for( byte b : MessageDigest.getInstance("MD5").digest(data.getBytes("UTF-8")) )
+				hash.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+		} catch (Exception e) {
+			//Every JRE has MD5 and UTF-8
+			throw new RuntimeException(e);
+		}
+
+		return hash + (inDefs ? ".defs" : ".code");
+	}
+
+	private static IncludeSummary read(String hash, String fileName) {
+		File saved = new File(INDEX_DIR, hash);
+
+		if( !saved.exists() )
+			return null;
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(saved)));
+
+			try {
+				if( in.readInt() != VERSION )
+					return null;
+
+				return IncludeSummary.read(fileName, in);
+			}
+			finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			saved.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Summary for the file as it is now, if it hasn't changed since we last summarized it. Doesn't read the file.
+	 *
+	 * @return Summary, or null if the file has to be read
+	 */
+	public static IncludeSummary lookup(SymitarFile file, boolean inDefs) {
+		String stamp = IncludeCache.stamp(file);
+
+		synchronized (SymbolIndex.class) {
+			load();
+
+			String saved = files.getProperty(IncludeCache.fileKey(file, inDefs));
+			IncludeSummary summary = null;
+
+			if( stamp != null && saved != null && saved.startsWith(stamp + " ") )
+				summary = read(saved.substring(stamp.length() + 1), file.getName());
+
+			if( summary == null )
+				misses++;
+			else
+				hits++;
+
+			return summary;
+		}
+	}
+
+	/**
+	 * Summary for this text, if any file with the exact same text has been summarized.
+	 * Remembers this file has that text, so next time lookup(file, inDefs) finds it.
+	 *
+	 * @return Summary, or null if it has to be parsed
+	 */
+	public static IncludeSummary lookup(SymitarFile file, boolean inDefs, String data) {
+		String stamp = IncludeCache.stamp(file);
+		String hash = hash(data, inDefs);
+
+		synchronized (SymbolIndex.class) {
+			load();
+
+			IncludeSummary summary = read(hash, file.getName());
+
+			if( summary == null )
+				return null;
+
+			remember(file, inDefs, stamp, hash);
+			return summary;
+		}
+	}
+
+	/**
+	 * Saves the summary of a freshly parsed file
+	 */
+	public static void store(SymitarFile file, boolean inDefs, String data, IncludeSummary summary) {
+		String stamp = IncludeCache.stamp(file);
+		String hash = hash(data, inDefs);
+
+		synchronized (SymbolIndex.class) {
+			load();
+
+			File saved = new File(INDEX_DIR, hash);
+			saved.getParentFile().mkdirs();
+
+			try {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(saved)));
+
+				try {
+					out.writeInt(VERSION);
+					summary.write(out);
+				}
+				finally {
+					out.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				saved.delete();
+				return;
+			}
+
+			remember(file, inDefs, stamp, hash);
+		}
+	}
+
+	private static void remember(SymitarFile file, boolean inDefs, String stamp, String hash) {
+		if( stamp == null )
+			return;
+
+		String value = stamp + " " + hash;
+
+		if( value.equals(files.setProperty(IncludeCache.fileKey(file, inDefs), value)) )
+			return;
+
+		save();
+	}
+
+	/**
+	 * Forget everything, summaries are made again as includes are parsed
+	 */
+	public static synchronized void clear() {
+		load();
+
+		File[] saved = new File(INDEX_DIR).listFiles();
+
+		if( saved != null )
+			for( File file : saved )
+				file.delete();
+
+		files.clear();
+	}
+
+	public static synchronized int getFileCount() {
+		load();
+		return files.size();
+	}
+
+	public static synchronized int getHits() {
+		return hits;
+	}
+
+	public static synchronized int getMisses() {
+		return misses;
+	}
+}
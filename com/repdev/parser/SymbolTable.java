@@ -0,0 +1,176 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Variables a parser knows about, from the file being edited and everything it includes.
+ *
+ * Kept by file, so one file's variables can be swapped out when it's parsed again, and by lower case name,
+ * so the highlighter and error checker can look a name up instead of going through every variable.
+ *
+ * Thread safe, the background parsers fill it in while the UI thread paints from it.
+ *
+ */
+public class SymbolTable {
+	//File name -> its variables, in the order files were added
+	private final LinkedHashMap<String, ArrayList<Variable>> byFile = new LinkedHashMap<String, ArrayList<Variable>>();
+	//Lower case name -> every variable with that name
+	private final HashMap<String, ArrayList<Variable>> byName = new HashMap<String, ArrayList<Variable>>();
+
+	private static String key(String name) {
+		return name.toLowerCase();
+	}
+
+	private void add(Variable var) {
+		ArrayList<Variable> file = byFile.get(var.getFilename());
+		ArrayList<Variable> named = byName.get(key(var.getName()));
+
+		if( file == null ) {
+			file = new ArrayList<Variable>();
+			byFile.put(var.getFilename(), file);
+		}
+
+		if( named == null ) {
+			named = new ArrayList<Variable>(1);
+			byName.put(key(var.getName()), named);
+		}
+
+		file.add(var);
+		named.add(var);
+	}
+
+	/**
+	 * Takes all of a file's variables out
+	 *
+	 * @return What was there
+	 */
+	private ArrayList<Variable> remove(String fileName) {
+		ArrayList<Variable> old = byFile.remove(fileName);
+
+		if( old == null )
+			return new ArrayList<Variable>();
+
+		for( Variable var : old ) {
+			ArrayList<Variable> named = byName.get(key(var.getName()));
+
+			//Variable.equals only looks at the name, this has to be this exact one
+			for( int i = 0; i < named.size(); i++ )
+				if( named.get(i) == var ) {
+					named.remove(i);
+					break;
+				}
+
+			if( named.isEmpty() )
+				byName.remove(key(var.getName()));
+		}
+
+		return old;
+	}
+
+	/**
+	 * Swaps fileName's variables for vars
+	 *
+	 * @return True if the names are different from before
+	 */
+	public synchronized boolean setFileVars(String fileName, List<Variable> vars) {
+		ArrayList<Variable> old = remove(fileName);
+
+		for( Variable var : vars )
+			add(var);
+
+		if( old.size() != vars.size() )
+			return true;
+
+		for( Variable var : vars )
+			if( !old.contains(var) )
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * Swaps the variables of every file except fileName for vars, which can come from any number of files
+	 *
+	 * @return True if anything is different from before
+	 */
+	public synchronized boolean setOtherFileVars(String fileName, List<Variable> vars) {
+		ArrayList<Variable> old = new ArrayList<Variable>();
+
+		for( String cur : new ArrayList<String>(byFile.keySet()) )
+			if( !cur.equals(fileName) )
+				old.addAll(remove(cur));
+
+		for( Variable var : vars )
+			add(var);
+
+		return !old.equals(vars);
+	}
+
+	/**
+	 * @return True if any file defines a variable called name
+	 */
+	public synchronized boolean contains(String name) {
+		return byName.containsKey(key(name));
+	}
+
+	/**
+	 * @return Number of variables called name, over every file
+	 */
+	public synchronized int count(String name) {
+		ArrayList<Variable> named = byName.get(key(name));
+
+		return named == null ? 0 : named.size();
+	}
+
+	/**
+	 * @return Copy of the variables defined in fileName
+	 */
+	public synchronized ArrayList<Variable> getFileVars(String fileName) {
+		ArrayList<Variable> vars = byFile.get(fileName);
+
+		return vars == null ? new ArrayList<Variable>() : new ArrayList<Variable>(vars);
+	}
+
+	/**
+	 * @return Copy of every variable, file by file
+	 */
+	public synchronized ArrayList<Variable> getAll() {
+		ArrayList<Variable> all = new ArrayList<Variable>();
+
+		for( ArrayList<Variable> vars : byFile.values() )
+			all.addAll(vars);
+
+		return all;
+	}
+
+	public synchronized int size() {
+		int size = 0;
+
+		for( ArrayList<Variable> vars : byFile.values() )
+			size += vars.size();
+
+		return size;
+	}
+}
@@ -20,6 +20,7 @@
 package com.repdev.parser;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.eclipse.swt.graphics.Color;
 
@@ -28,9 +29,16 @@ import com.repdev.SnippetVariable;
 public class Token {
 	private String str;
 	private Token after = null, before = null;
-	private int pos, commentDepth, afterDepth;
+	private int commentDepth, afterDepth;
 	private boolean inString, afterString, inDate, afterDate, inDefs, inComment;
 
+	//Position and tree links for TokenList, pos is relative to the offsets waiting on the way up to the root
+	int pos, shift, size = 1, priority;
+	Token left, right, parent;
+
+	//List this token is in, told about changes to str or the string/date/comment/define state so it can keep its use counts
+	TokenList list;
+
 	private static final String[] heads = { "setup", "print title", "select", "define", "do", "total", "headers", "(", "\"", "'", "[", "procedure", "sort" };
 	private static final String[] ends = {"end", ")", "\"", "'", "]"};
 	
@@ -71,7 +79,7 @@ public class Token {
 		  return;
 		
 		this.str = new String(old.str);
-		this.pos = old.pos;
+		this.pos = old.getStart();
 		this.commentDepth = old.commentDepth;
 		this.afterDepth = old.afterDepth;
 		this.inString = old.inString;
@@ -81,7 +89,7 @@ public class Token {
 		this.inDefs = old.inDefs;
 	}
 
-	public void setNearTokens(ArrayList<Token> tokens, int mypos) {
+	public void setNearTokens(List<Token> tokens, int mypos) {
         after = null;
         before = null;
 
@@ -108,7 +116,19 @@ public class Token {
 	}
 	
 	public void setStr(String str) {
+		beforeChange();
 		this.str = str;
+		afterChange();
+	}
+
+	private void beforeChange() {
+		if( list != null )
+			list.countUse(this, -1);
+	}
+
+	private void afterChange() {
+		if( list != null )
+			list.countUse(this, 1);
 	}
 
 	public Token getNextNCToken() {
@@ -116,15 +136,20 @@ public class Token {
 	}
 
 	public int getStart() {
-		return pos;
+		int start = pos;
+
+		for( Token t = this; t != null; t = t.parent )
+			start += t.shift;
+
+		return start;
 	}
 
 	public int getEnd() {
-		return pos + str.length();
+		return getStart() + str.length();
 	}
 	
 	public void setPos(int pos) {
-		this.pos = pos;
+		this.pos += pos - getStart();
 	}
 
 	public String getStr() {
@@ -168,22 +193,30 @@ public class Token {
 	}
 
 	public void setInDefs(boolean b) {
+		beforeChange();
 		inDefs = b;
+		afterChange();
 	}
 
 	public void setCDepth(int before, int after) {
+		beforeChange();
 		commentDepth = before;
 		afterDepth = after;
+		afterChange();
 	}
 
 	public void setInString(boolean before, boolean after) {
+		beforeChange();
 		inString = before;
 		afterString = after;
+		afterChange();
 	}
 
 	public void setInDate(boolean before, boolean after) {
+		beforeChange();
 		inDate = before;
 		afterDate = after;
+		afterChange();
 	}
 
 	public boolean dbFieldValid(ArrayList<Record> records) {
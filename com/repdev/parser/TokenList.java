@@ -0,0 +1,385 @@
+/**
+ *  RepDev - RepGen IDE for Symitar
+ *  Copyright (C) 2007  Jake Poznanski, Ryan Schultz, Sean Delaney
+ *  http://repdev.org/ <support@repdev.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.repdev.parser;
+
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * The parser's token list. Works like an ArrayList of tokens in document order, but it's a balanced tree (treap)
+ * underneath, so the things the parser does on every keystroke are all O(log n):
+ * finding the tokens around an edit, adding and removing tokens in the middle, and moving every token after the
+ * edit over by the number of characters typed.
+ *
+ * Moving tokens is done by leaving an offset on the subtree instead of touching each token, Token.getStart()
+ * adds up the offsets on the way to the root. The tree links live in Token itself, so a token can only be
+ * in one TokenList at a time.
+ *
+ * get(i) is O(log n) too, use the iterator to go through the whole list.
+ *
+ * It also counts how many tokens use each name (outside of defines, strings, dates and comments), so the
+ * unused variable check is a lookup instead of a scan. Tokens report their own changes, see Token.list.
+ *
+ */
+public class TokenList extends AbstractList<Token> {
+	private static final Random random = new Random();
+
+	private Token root;
+
+	//Name -> number of tokens using it, see isUse()
+	private final HashMap<String, int[]> uses = new HashMap<String, int[]>();
+
+	//Results of split(), saves making an array at each level
+	private Token splitLeft, splitRight;
+
+	private static int size(Token t) {
+		return t == null ? 0 : t.size;
+	}
+
+	/**
+	 * Moves the offset waiting on t into t and onto its children
+	 */
+	private static void pushDown(Token t) {
+		if( t.shift != 0 ) {
+			t.pos += t.shift;
+
+			if( t.left != null )
+				t.left.shift += t.shift;
+			if( t.right != null )
+				t.right.shift += t.shift;
+
+			t.shift = 0;
+		}
+	}
+
+	private static void update(Token t) {
+		t.size = 1 + size(t.left) + size(t.right);
+
+		if( t.left != null )
+			t.left.parent = t;
+		if( t.right != null )
+			t.right.parent = t;
+	}
+
+	/**
+	 * Splits t into its first k tokens (splitLeft) and the rest (splitRight)
+	 */
+	private void split(Token t, int k) {
+		if( t == null ) {
+			splitLeft = splitRight = null;
+			return;
+		}
+
+		pushDown(t);
+
+		if( size(t.left) < k ) {
+			split(t.right, k - size(t.left) - 1);
+			t.right = splitLeft;
+			update(t);
+			splitLeft = t;
+		}
+		else {
+			split(t.left, k);
+			t.left = splitRight;
+			update(t);
+			splitRight = t;
+		}
+	}
+
+	private static Token merge(Token a, Token b) {
+		if( a == null )
+			return b;
+		if( b == null )
+			return a;
+
+		if( a.priority > b.priority ) {
+			pushDown(a);
+			a.right = merge(a.right, b);
+			update(a);
+			return a;
+		}
+
+		pushDown(b);
+		b.left = merge(a, b.left);
+		update(b);
+		return b;
+	}
+
+	private static boolean isUse(Token tok) {
+		return !tok.inDefs() && !tok.inDate() && !tok.inString() && tok.getCDepth() == 0;
+	}
+
+	/**
+	 * Adds (delta 1) or takes away (delta -1) tok from the use counts, called by Token around state changes
+	 */
+	void countUse(Token tok, int delta) {
+		if( !isUse(tok) )
+			return;
+
+		int[] count = uses.get(tok.getStr());
+
+		if( count == null ) {
+			if( delta < 0 )
+				return;
+
+			count = new int[1];
+			uses.put(tok.getStr(), count);
+		}
+
+		count[0] += delta;
+
+		if( count[0] <= 0 )
+			uses.remove(tok.getStr());
+	}
+
+	/**
+	 * @return Number of tokens named name outside of defines, strings, dates and comments
+	 */
+	public int getUseCount(String name) {
+		int[] count = uses.get(name);
+
+		return count == null ? 0 : count[0];
+	}
+
+	private void setRoot(Token t) {
+		root = t;
+
+		if( root != null )
+			root.parent = null;
+	}
+
+	public int size() {
+		return size(root);
+	}
+
+	public Token get(int index) {
+		if( index < 0 || index >= size() )
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+
+		Token t = root;
+
+		while( true ) {
+			int left = size(t.left);
+
+			if( index < left )
+				t = t.left;
+			else if( index == left )
+				return t;
+			else {
+				index -= left + 1;
+				t = t.right;
+			}
+		}
+	}
+
+	public void add(int index, Token tok) {
+		if( index < 0 || index > size() )
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+
+		tok.pos = tok.getStart();
+		tok.shift = 0;
+		tok.left = tok.right = tok.parent = null;
+		tok.size = 1;
+		tok.priority = random.nextInt();
+
+		split(root, index);
+		Token right = splitRight;
+		setRoot(merge(merge(splitLeft, tok), right));
+		modCount++;
+
+		tok.list = this;
+		countUse(tok, 1);
+	}
+
+	public Token remove(int index) {
+		Token tok = get(index);
+		int start = tok.getStart();
+
+		split(root, index);
+		Token left = splitLeft;
+		split(splitRight, 1);
+		setRoot(merge(left, splitRight));
+
+		tok.pos = start;
+		tok.shift = 0;
+		tok.left = tok.right = tok.parent = null;
+		tok.size = 1;
+		modCount++;
+
+		countUse(tok, -1);
+		tok.list = null;
+
+		return tok;
+	}
+
+	public void clear() {
+		for( Token tok : this )
+			tok.list = null;
+
+		root = null;
+		uses.clear();
+		modCount++;
+	}
+
+	public int indexOf(Object o) {
+		if( !(o instanceof Token) )
+			return -1;
+
+		Token t = (Token) o;
+		int index = size(t.left);
+
+		while( t.parent != null ) {
+			if( t == t.parent.right )
+				index += size(t.parent.left) + 1;
+
+			t = t.parent;
+		}
+
+		return t == root ? index : -1;
+	}
+
+	public int lastIndexOf(Object o) {
+		return indexOf(o);
+	}
+
+	public boolean contains(Object o) {
+		return indexOf(o) != -1;
+	}
+
+	public boolean remove(Object o) {
+		int index = indexOf(o);
+
+		if( index == -1 )
+			return false;
+
+		remove(index);
+		return true;
+	}
+
+	/**
+	 * Moves every token from index on over by delta characters
+	 */
+	public void shift(int from, int delta) {
+		Token t = root;
+		int base = 0;
+
+		while( t != null ) {
+			int index = base + size(t.left);
+
+			if( index >= from ) {
+				//This one and everything to the right of it
+				t.pos += delta;
+
+				if( t.right != null )
+					t.right.shift += delta;
+
+				t = t.left;
+			}
+			else {
+				base = index + 1;
+				t = t.right;
+			}
+		}
+	}
+
+	/**
+	 * @return Index of the first token that ends at or after offset, size() if there isn't one
+	 */
+	public int firstEndingAt(int offset) {
+		return search(offset, true);
+	}
+
+	/**
+	 * @return Index of the first token that starts after offset, size() if there isn't one
+	 */
+	public int firstStartingAfter(int offset) {
+		return search(offset, false);
+	}
+
+	private int search(int offset, boolean byEnd) {
+		Token t = root;
+		int base = 0, shift = 0, found = size();
+
+		while( t != null ) {
+			shift += t.shift;
+
+			int start = t.pos + shift;
+			boolean hit = byEnd ? start + t.length() >= offset : start > offset;
+
+			if( hit ) {
+				found = base + size(t.left);
+				t = t.left;
+			}
+			else {
+				base += size(t.left) + 1;
+				t = t.right;
+			}
+		}
+
+		return found;
+	}
+
+	private static Token successor(Token t) {
+		if( t.right != null ) {
+			t = t.right;
+
+			while( t.left != null )
+				t = t.left;
+
+			return t;
+		}
+
+		while( t.parent != null && t == t.parent.right )
+			t = t.parent;
+
+		return t.parent;
+	}
+
+	public Iterator<Token> iterator() {
+		return new Iterator<Token>(){
+			private Token next = root == null ? null : get(0);
+			private final int expected = modCount;
+
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			public Token next() {
+				if( modCount != expected )
+					throw new ConcurrentModificationException();
+
+				if( next == null )
+					throw new NoSuchElementException();
+
+				Token cur = next;
+				next = successor(cur);
+				return cur;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}